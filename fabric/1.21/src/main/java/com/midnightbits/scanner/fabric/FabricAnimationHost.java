@@ -3,6 +3,7 @@
 
 package com.midnightbits.scanner.fabric;
 
+import com.midnightbits.scanner.rt.core.fabric.BlockStateInfos;
 import com.midnightbits.scanner.rt.core.fabric.MinecraftClientCore;
 import com.midnightbits.scanner.sonar.Sonar;
 import com.midnightbits.scanner.sonar.graphics.AbstractAnimatorHost;
@@ -10,9 +11,14 @@ import com.midnightbits.scanner.sonar.graphics.ShimmerConsumer;
 import com.midnightbits.scanner.sonar.graphics.Shimmers;
 import com.midnightbits.scanner.utils.Clock;
 
+import net.fabricmc.fabric.api.client.event.lifecycle.v1.ClientChunkEvents;
+import net.fabricmc.fabric.api.client.event.lifecycle.v1.ClientLifecycleEvents;
 import net.fabricmc.fabric.api.client.event.lifecycle.v1.ClientTickEvents;
 import net.fabricmc.fabric.api.client.rendering.v1.WorldRenderContext;
+import net.fabricmc.fabric.api.client.networking.v1.ClientPlayConnectionEvents;
 import net.fabricmc.fabric.api.client.rendering.v1.WorldRenderEvents;
+import net.minecraft.block.BlockState;
+import net.minecraft.util.math.BlockPos;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -28,12 +34,38 @@ public class FabricAnimationHost extends AbstractAnimatorHost {
                 return;
 
             this.tick(Clock.currentTimeMillis());
-            if (this.source.remove(this.source.oldEchoes(new MinecraftClientCore(client))))
-                this.source.splitToNuggets();
+            this.source.maintain(new MinecraftClientCore(client));
+        });
+        ClientChunkEvents.CHUNK_UNLOAD.register((world, chunk) -> {
+            final var pos = chunk.getPos();
+            this.source.invalidateChunk(pos.x, pos.z);
+        });
+        ClientPlayConnectionEvents.DISCONNECT.register((handler, client) -> {
+            this.source.cancelPing();
+            Pixels.close();
+        });
+        ClientLifecycleEvents.CLIENT_STOPPING.register((client) -> {
+            this.source.cancelPing();
+            Pixels.close();
         });
         WorldRenderEvents.LAST.register(this::renderLevel);
     }
 
+    /**
+     * Called by the client world, before a block is replaced.
+     */
+    public void onBlockChanged(BlockPos pos, BlockState state) {
+        if (this.source == null)
+            return;
+
+        final var packed = pos.asLong();
+        final var echo = this.source.echoAt(packed);
+        if (echo == null || echo.id().equals(BlockStateInfos.INSTANCE.get(state).getId()))
+            return;
+
+        this.source.invalidate(packed);
+    }
+
     private static final class GatherShimmers implements ShimmerConsumer {
         List<Shimmers> cloud = new ArrayList<>();
 
@@ -46,6 +78,6 @@ public class FabricAnimationHost extends AbstractAnimatorHost {
     private void renderLevel(WorldRenderContext context) {
         final var shimmers = new GatherShimmers();
         this.run(shimmers);
-        Pixels.renderLevel(context, source.nuggets(), shimmers.cloud);
+        Pixels.renderLevel(context, source.culler(), source.pickIndex(), shimmers.cloud);
     }
 }
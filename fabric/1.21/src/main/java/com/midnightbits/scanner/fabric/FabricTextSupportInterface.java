@@ -11,4 +11,13 @@ public class FabricTextSupportInterface implements TextSupportInterface {
     public MutableText literal(String string) {
         return new FabricMutableText(net.minecraft.text.Text.literal(string));
     }
+
+    @Override
+    public MutableText translatable(String key, Object... args) {
+        final var unpacked = new Object[args.length];
+        for (int index = 0; index < args.length; ++index) {
+            unpacked[index] = args[index] instanceof FabricMutableText text ? text.unpack() : args[index];
+        }
+        return new FabricMutableText(net.minecraft.text.Text.translatable(key, unpacked));
+    }
 }
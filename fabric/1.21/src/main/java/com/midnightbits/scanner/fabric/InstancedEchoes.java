@@ -0,0 +1,249 @@
+// Copyright (c) 2024 Marcin Zdun
+// This code is licensed under MIT license (see LICENSE for details)
+
+package com.midnightbits.scanner.fabric;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+
+import com.midnightbits.scanner.sonar.graphics.EchoInstances;
+import org.jetbrains.annotations.Nullable;
+import org.joml.Matrix4f;
+import org.lwjgl.opengl.GL33C;
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.system.MemoryUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.mojang.blaze3d.platform.GlStateManager;
+
+import net.minecraft.client.gl.VertexBuffer;
+
+/**
+ * Draws {@link EchoInstances} with a shader, which expands a shared unit
+ * cube for every instance record and drops the sides and edges masked out
+ * by the record. The CPU only copies the records, 16 bytes per echo, into
+ * a stream buffer once a frame; both the faces and the edges are then drawn
+ * from the same upload.
+ *
+ * <p>
+ * The program talks to GL directly. Instead of asking GL for the bindings it
+ * replaces, which stalls the pipeline, it leaves the program, the vertex
+ * array and the array buffer unbound, the way the game's own buffers leave
+ * them after a draw, and tells the game its cached vertex buffer is gone,
+ * so the next draw binds its own again. If anything goes wrong while setting
+ * it up, {@link #create()} returns null and the caller keeps drawing through
+ * the vertex consumers.
+ */
+public final class InstancedEchoes implements AutoCloseable {
+    private static final Logger LOGGER = LoggerFactory.getLogger("InstancedEchoes");
+
+    private static final String VERTEX_SHADER = "/assets/resource-scanner/shaders/echo_instanced.vsh";
+    private static final String FRAGMENT_SHADER = "/assets/resource-scanner/shaders/echo_instanced.fsh";
+
+    private static final int CORNER = 0;
+    private static final int OFFSET = 1;
+    private static final int COLOR = 2;
+    private static final int MASKS = 3;
+
+    private static final int SIDES_SHIFT = 0;
+
+    private final int program;
+    private final int faceArray;
+    private final int edgeArray;
+    private final int faceCube;
+    private final int edgeCube;
+    private final int instanceBuffer;
+
+    private final int modelViewUniform;
+    private final int projectionUniform;
+    private final int originUniform;
+    private final int maskShiftUniform;
+    private final int linesUniform;
+    private final int highlightUniform;
+
+    private IntBuffer staging = null;
+    private int instanceCount = 0;
+
+    private InstancedEchoes(int program) {
+        this.program = program;
+        this.modelViewUniform = GL33C.glGetUniformLocation(program, "ModelViewMat");
+        this.projectionUniform = GL33C.glGetUniformLocation(program, "ProjMat");
+        this.originUniform = GL33C.glGetUniformLocation(program, "Origin");
+        this.maskShiftUniform = GL33C.glGetUniformLocation(program, "MaskShift");
+        this.linesUniform = GL33C.glGetUniformLocation(program, "Lines");
+        this.highlightUniform = GL33C.glGetUniformLocation(program, "HighlightColor");
+
+        this.instanceBuffer = GL33C.glGenBuffers();
+        this.faceCube = GL33C.glGenBuffers();
+        this.edgeCube = GL33C.glGenBuffers();
+        this.faceArray = vertexArray(faceCube, EchoInstances.CUBE_FACES, instanceBuffer);
+        this.edgeArray = vertexArray(edgeCube, EchoInstances.CUBE_EDGES, instanceBuffer);
+
+        VertexBuffer.unbind();
+        GlStateManager._glBindBuffer(GL33C.GL_ARRAY_BUFFER, 0);
+    }
+
+    public static @Nullable InstancedEchoes create() {
+        try {
+            final var vertex = compile(GL33C.GL_VERTEX_SHADER, VERTEX_SHADER);
+            final var fragment = compile(GL33C.GL_FRAGMENT_SHADER, FRAGMENT_SHADER);
+
+            final var program = GL33C.glCreateProgram();
+            GL33C.glAttachShader(program, vertex);
+            GL33C.glAttachShader(program, fragment);
+            GL33C.glBindAttribLocation(program, CORNER, "Corner");
+            GL33C.glBindAttribLocation(program, OFFSET, "Offset");
+            GL33C.glBindAttribLocation(program, COLOR, "Color");
+            GL33C.glBindAttribLocation(program, MASKS, "Masks");
+            GL33C.glBindFragDataLocation(program, 0, "fragColor");
+            GL33C.glLinkProgram(program);
+            GL33C.glDeleteShader(vertex);
+            GL33C.glDeleteShader(fragment);
+
+            if (GL33C.glGetProgrami(program, GL33C.GL_LINK_STATUS) == GL33C.GL_FALSE) {
+                final var log = GL33C.glGetProgramInfoLog(program);
+                GL33C.glDeleteProgram(program);
+                throw new IllegalStateException(log);
+            }
+
+            return new InstancedEchoes(program);
+        } catch (IOException | RuntimeException e) {
+            LOGGER.warn("Instanced echoes are not available, falling back to vertex buffers: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private static int compile(int type, String path) throws IOException {
+        final String source;
+        try (InputStream stream = InstancedEchoes.class.getResourceAsStream(path)) {
+            if (stream == null)
+                throw new IOException("Missing " + path);
+            source = new String(stream.readAllBytes(), StandardCharsets.UTF_8);
+        }
+
+        final var shader = GL33C.glCreateShader(type);
+        GL33C.glShaderSource(shader, source);
+        GL33C.glCompileShader(shader);
+        if (GL33C.glGetShaderi(shader, GL33C.GL_COMPILE_STATUS) == GL33C.GL_FALSE) {
+            final var log = GL33C.glGetShaderInfoLog(shader);
+            GL33C.glDeleteShader(shader);
+            throw new IllegalStateException(path + ": " + log);
+        }
+        return shader;
+    }
+
+    private static int vertexArray(int cube, float[] corners, int instances) {
+        final var array = GL33C.glGenVertexArrays();
+        GL33C.glBindVertexArray(array);
+
+        GL33C.glBindBuffer(GL33C.GL_ARRAY_BUFFER, cube);
+        GL33C.glBufferData(GL33C.GL_ARRAY_BUFFER, corners, GL33C.GL_STATIC_DRAW);
+        GL33C.glEnableVertexAttribArray(CORNER);
+        GL33C.glVertexAttribPointer(CORNER, 4, GL33C.GL_FLOAT, false, 4 * Float.BYTES, 0);
+
+        GL33C.glBindBuffer(GL33C.GL_ARRAY_BUFFER, instances);
+        GL33C.glEnableVertexAttribArray(OFFSET);
+        GL33C.glVertexAttribIPointer(OFFSET, 4, GL33C.GL_SHORT, EchoInstances.RECORD_BYTES, 0);
+        GL33C.glVertexAttribDivisor(OFFSET, 1);
+        GL33C.glEnableVertexAttribArray(COLOR);
+        GL33C.glVertexAttribPointer(COLOR, 4, GL33C.GL_UNSIGNED_BYTE, true, EchoInstances.RECORD_BYTES,
+                2 * Integer.BYTES);
+        GL33C.glVertexAttribDivisor(COLOR, 1);
+        GL33C.glEnableVertexAttribArray(MASKS);
+        GL33C.glVertexAttribIPointer(MASKS, 1, GL33C.GL_INT, EchoInstances.RECORD_BYTES, 3 * Integer.BYTES);
+        GL33C.glVertexAttribDivisor(MASKS, 1);
+
+        return array;
+    }
+
+    /**
+     * Copies the records into the instance buffer. The buffer is orphaned
+     * every frame, so the driver does not wait for the previous frame to be
+     * drawn.
+     */
+    public void upload(EchoInstances instances) {
+        final var ints = instances.size() * EchoInstances.RECORD_INTS;
+        if (staging == null || staging.capacity() < ints) {
+            if (staging != null)
+                MemoryUtil.memFree(staging);
+            staging = MemoryUtil.memAllocInt(Math.max(ints, 1024 * EchoInstances.RECORD_INTS));
+        }
+        staging.clear();
+        staging.put(instances.records(), 0, ints);
+        staging.flip();
+
+        GL33C.glBindBuffer(GL33C.GL_ARRAY_BUFFER, instanceBuffer);
+        GL33C.glBufferData(GL33C.GL_ARRAY_BUFFER, staging, GL33C.GL_STREAM_DRAW);
+        GlStateManager._glBindBuffer(GL33C.GL_ARRAY_BUFFER, 0);
+
+        instanceCount = instances.size();
+    }
+
+    /**
+     * Draws the faces of the uploaded instances, with the origin of their
+     * records given relative to the camera.
+     */
+    public void drawFaces(Matrix4f modelView, Matrix4f projection, float originX, float originY, float originZ) {
+        draw(modelView, projection, originX, originY, originZ, false, 0);
+    }
+
+    /**
+     * Draws the edges of the uploaded instances, with the highlighted ones in
+     * the given color.
+     */
+    public void drawEdges(Matrix4f modelView, Matrix4f projection, float originX, float originY, float originZ,
+            int highlight32) {
+        draw(modelView, projection, originX, originY, originZ, true, highlight32);
+    }
+
+    private void draw(Matrix4f modelView, Matrix4f projection, float originX, float originY, float originZ,
+            boolean lines, int highlight32) {
+        if (instanceCount == 0)
+            return;
+
+        GL33C.glUseProgram(program);
+        try (final var stack = MemoryStack.stackPush()) {
+            final var matrix = stack.mallocFloat(16);
+            GL33C.glUniformMatrix4fv(modelViewUniform, false, modelView.get(matrix));
+            GL33C.glUniformMatrix4fv(projectionUniform, false, projection.get(matrix));
+        }
+        GL33C.glUniform3f(originUniform, originX, originY, originZ);
+        GL33C.glUniform1i(maskShiftUniform, lines ? EchoInstances.EDGES_SHIFT : SIDES_SHIFT);
+        GL33C.glUniform1i(linesUniform, lines ? 1 : 0);
+        GL33C.glUniform4f(highlightUniform, (highlight32 >> 16 & 0xFF) / 255F, (highlight32 >> 8 & 0xFF) / 255F,
+                (highlight32 & 0xFF) / 255F, (highlight32 >>> 24) / 255F);
+
+        if (lines) {
+            GL33C.glBindVertexArray(edgeArray);
+            GL33C.glDrawArraysInstanced(GL33C.GL_LINES, 0, EchoInstances.CUBE_EDGES.length / 4, instanceCount);
+        } else {
+            GL33C.glBindVertexArray(faceArray);
+            GL33C.glDrawArraysInstanced(GL33C.GL_TRIANGLES, 0, EchoInstances.CUBE_FACES.length / 4, instanceCount);
+        }
+
+        VertexBuffer.unbind();
+        GlStateManager._glUseProgram(0);
+    }
+
+    /**
+     * Deletes the program, the vertex arrays and the buffers, and frees the
+     * staging memory. The object is not usable afterwards.
+     */
+    @Override
+    public void close() {
+        GL33C.glDeleteProgram(program);
+        GL33C.glDeleteVertexArrays(faceArray);
+        GL33C.glDeleteVertexArrays(edgeArray);
+        GL33C.glDeleteBuffers(faceCube);
+        GL33C.glDeleteBuffers(edgeCube);
+        GL33C.glDeleteBuffers(instanceBuffer);
+        if (staging != null) {
+            MemoryUtil.memFree(staging);
+            staging = null;
+        }
+        instanceCount = 0;
+    }
+}
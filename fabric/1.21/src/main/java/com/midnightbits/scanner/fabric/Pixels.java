@@ -6,11 +6,12 @@ package com.midnightbits.scanner.fabric;
 import java.util.List;
 
 import api.compat.ShaderCompat;
-import com.midnightbits.scanner.sonar.EchoNugget;
-import com.midnightbits.scanner.sonar.EchoState;
+import com.midnightbits.scanner.fabric.mixin.client.FrustumInvoker;
+import com.midnightbits.scanner.sonar.NuggetCuller;
+import com.midnightbits.scanner.sonar.PickIndex;
 import com.midnightbits.scanner.sonar.graphics.*;
 import net.minecraft.client.render.*;
-import net.minecraft.util.math.Box;
+import org.jetbrains.annotations.Nullable;
 import org.joml.Matrix4f;
 
 import com.mojang.blaze3d.platform.GlStateManager;
@@ -19,15 +20,33 @@ import com.mojang.blaze3d.systems.RenderSystem;
 import net.fabricmc.fabric.api.client.rendering.v1.WorldRenderContext;
 
 public class Pixels {
+    private static final double SHIMMER_ALPHA = .5;
+
+    private static final VertexBatch batch = new VertexBatch();
+    private static final NuggetCuller.Visible visible = new NuggetCuller.Visible();
+    private static final LevelOfDetail.Plan plan = new LevelOfDetail.Plan();
+    private static final EchoInstances instances = new EchoInstances();
+    private static final Matrix4f modelView = new Matrix4f();
+    @Nullable
+    private static InstancedEchoes instanced = null;
+    private static boolean instancedTried = false;
 
     private record GlProgramVertexConsumer(VertexConsumer buffer) implements GlProgramConsumer {
         @Override
         public void vertexColor(Matrix4f matrix, float x, float y, float z, int argb32) {
             buffer.vertex(matrix, x, y, z).color(argb32);
         }
+
+        @Override
+        public void vertices(Matrix4f matrix, float[] xyz, int[] argb32, int count) {
+            for (int index = 0, pos = 0; index < count; ++index, pos += 3) {
+                buffer.vertex(matrix, xyz[pos], xyz[pos + 1], xyz[pos + 2]).color(argb32[index]);
+            }
+        }
     }
 
-    public static void renderLevel(WorldRenderContext context, List<EchoNugget> nuggets, List<Shimmers> shimmers) {
+    public static void renderLevel(WorldRenderContext context, NuggetCuller culler, PickIndex pickIndex,
+            List<Shimmers> shimmers) {
         final var frustum = context.frustum();
         if (frustum == null) {
             return;
@@ -43,26 +62,32 @@ public class Pixels {
         final var camera = context.camera();
         final var cameraPos = camera.getPos().toVector3f();
 
-        final var frustumFilter = new FrustumFilter() {
-            @Override
-            public boolean contains(EchoState.AABB bounds) {
-                return frustum.isVisible(
-                        new Box(bounds.minX(), bounds.minY(), bounds.minZ(),
-                                bounds.maxX(), bounds.maxY(), bounds.maxZ()));
-            }
-        };
+        final var frustumInvoker = (FrustumInvoker) frustum;
+        final FrustumFilter frustumFilter = frustumInvoker::invokeIsVisible;
 
-        final var allShimmers = EchoNugget.group(Shimmers.toEchoStates(shimmers, .5));
+        culler.cull(frustumFilter, visible);
+        final var central = pickIndex.pick(visible, cameraPos, camera.getPitch(), camera.getYaw());
 
-        final var visibleNuggets = EchoNugget.filterVisible(nuggets, frustumFilter);
-        final var visibleShimmers = EchoNugget.filterVisible(allShimmers, frustumFilter);
-        final var central = EchoNugget.theThingImLookingAt(
-                visibleNuggets, cameraPos, camera.getPitch(), camera.getYaw());
-
-        if (visibleNuggets.isEmpty() && visibleShimmers.isEmpty()) {
+        if (visible.size() == 0 && shimmers.isEmpty()) {
             return;
         }
 
+        LevelOfDetail.DEFAULT.plan(visible, cameraPos, plan);
+
+        final var instancedEchoes = instanced();
+        final var centralNugget = central == null ? null : central.nugget();
+        final var originX = (int) Math.floor(cameraPos.x);
+        final var originY = (int) Math.floor(cameraPos.y);
+        final var originZ = (int) Math.floor(cameraPos.z);
+        if (instancedEchoes != null) {
+            instances.begin(originX, originY, originZ).add(plan, centralNugget);
+            // faces are drawn without the depth test, so they only blend
+            // right, when the furthest come first
+            instances.sortFurthestToClosest(cameraPos);
+            instancedEchoes.upload(instances);
+            modelView.set(RenderSystem.getModelViewMatrix()).mul(matrices.peek().getPositionMatrix());
+        }
+
         RenderSystem.disableDepthTest();
         RenderSystem.enableBlend();
         RenderSystem.blendFunc(
@@ -74,45 +99,66 @@ public class Pixels {
         final var tessellator = Tessellator.getInstance();
         {
             final var buffer = tessellator.begin(VertexFormat.DrawMode.TRIANGLES, VertexFormats.POSITION_COLOR);
-            final var glProgram = new GlProgramVertexConsumer(buffer);
+            final var glProgram = batch.begin(new GlProgramVertexConsumer(buffer));
 
-            for (final var nugget : visibleShimmers) {
-                nugget.draw(glProgram, matrices, cameraPos);
+            for (final var wave : shimmers) {
+                wave.draw(glProgram, matrices, cameraPos, SHIMMER_ALPHA);
             }
 
-            for (final var nugget : visibleNuggets) {
-                nugget.draw(glProgram, matrices, cameraPos);
-            }
+            plan.draw(glProgram, matrices, cameraPos, instancedEchoes == null);
 
+            batch.end();
             final var builtBuffer = buffer.endNullable();
             if (builtBuffer != null)
                 BufferRenderer.drawWithGlobalProgram(builtBuffer);
+
+            if (instancedEchoes != null) {
+                instancedEchoes.drawFaces(modelView, RenderSystem.getProjectionMatrix(), originX - cameraPos.x,
+                        originY - cameraPos.y, originZ - cameraPos.z);
+            }
         }
 
         {
             final var buffer = tessellator.begin(VertexFormat.DrawMode.DEBUG_LINES, VertexFormats.POSITION_COLOR);
-            final var glProgram = new GlProgramVertexConsumer(buffer);
-
-            for (final var nugget : visibleShimmers) {
-                nugget.sketch(glProgram, matrices, cameraPos);
-            }
+            final var glProgram = batch.begin(new GlProgramVertexConsumer(buffer));
 
-            final var centralNugget = central == null ? null : central.nugget();
-            for (final var nugget : visibleNuggets) {
-                if (nugget == centralNugget)
-                    continue;
-                nugget.sketch(glProgram, matrices, cameraPos);
+            for (final var wave : shimmers) {
+                wave.sketch(glProgram, matrices, cameraPos, SHIMMER_ALPHA);
             }
 
-            if (central != null) {
-                central.nugget().sketch(glProgram, matrices, cameraPos, Colors.OPAQUE | Colors.BLACK);
-            }
+            plan.sketch(glProgram, matrices, cameraPos, instancedEchoes == null, centralNugget,
+                    Colors.OPAQUE | Colors.BLACK);
 
+            batch.end();
             final var builtBuffer = buffer.endNullable();
             if (builtBuffer != null)
                 BufferRenderer.drawWithGlobalProgram(builtBuffer);
+
+            if (instancedEchoes != null) {
+                instancedEchoes.drawEdges(modelView, RenderSystem.getProjectionMatrix(), originX - cameraPos.x,
+                        originY - cameraPos.y, originZ - cameraPos.z, Colors.OPAQUE | Colors.BLACK);
+            }
         }
 
         RenderSystem.enableDepthTest();
     }
+
+    /**
+     * Releases the GL objects of the instanced drawing. The next frame sets
+     * them up again, if it needs them.
+     */
+    public static void close() {
+        if (instanced != null)
+            instanced.close();
+        instanced = null;
+        instancedTried = false;
+    }
+
+    private static @Nullable InstancedEchoes instanced() {
+        if (!instancedTried) {
+            instancedTried = true;
+            instanced = InstancedEchoes.create();
+        }
+        return instanced;
+    }
 }
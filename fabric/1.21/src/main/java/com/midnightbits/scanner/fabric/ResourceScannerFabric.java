@@ -9,8 +9,11 @@ import com.midnightbits.scanner.rt.core.ClientCore;
 import com.midnightbits.scanner.rt.core.KeyBindings;
 import com.midnightbits.scanner.rt.core.ScannerMod;
 import com.midnightbits.scanner.rt.core.Services;
+import com.midnightbits.scanner.rt.core.fabric.BlockStateInfos;
 
 import net.fabricmc.api.ClientModInitializer;
+import net.fabricmc.fabric.api.client.networking.v1.ClientPlayConnectionEvents;
+import net.fabricmc.fabric.api.event.lifecycle.v1.CommonLifecycleEvents;
 import net.minecraft.client.MinecraftClient;
 
 public class ResourceScannerFabric implements ClientModInitializer {
@@ -28,6 +31,9 @@ public class ResourceScannerFabric implements ClientModInitializer {
 
 		FabricAnimationHost.INSTANCE.initialize(scanner.getSonar());
 		FabricSoundManager.initialize();
+
+		CommonLifecycleEvents.TAGS_LOADED.register((registries, client) -> BlockStateInfos.INSTANCE.invalidate());
+		ClientPlayConnectionEvents.JOIN.register((handler, sender, client) -> BlockStateInfos.INSTANCE.invalidate());
 	}
 
 	private static void onSettings(ClientCore core) {
@@ -0,0 +1,18 @@
+// Copyright (c) 2024 Marcin Zdun
+// This code is licensed under MIT license (see LICENSE for details)
+
+package com.midnightbits.scanner.fabric.mixin.client;
+
+import net.minecraft.client.render.Frustum;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.gen.Invoker;
+
+/**
+ * Gives the culling the box test of the frustum without a {@code Box} built
+ * for each node and each block.
+ */
+@Mixin(Frustum.class)
+public interface FrustumInvoker {
+    @Invoker("isVisible")
+    boolean invokeIsVisible(double minX, double minY, double minZ, double maxX, double maxY, double maxZ);
+}
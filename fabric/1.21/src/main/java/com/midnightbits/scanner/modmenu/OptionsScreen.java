@@ -58,8 +58,9 @@ public class OptionsScreen extends SingleColumnOptions {
         final var blockRadius = settings.blockRadius();
         final var lifetime = settings.lifetime();
         final var interestingIds = settings.interestingIds();
+        final var verbose = settings.verbose();
 
-        this.settings = new Settings(blockDistance, blockRadius, lifetime, interestingIds);
+        this.settings = new Settings(blockDistance, blockRadius, lifetime, interestingIds, verbose);
     }
 
     static String optionKey(String id) {
@@ -112,6 +113,8 @@ public class OptionsScreen extends SingleColumnOptions {
         for (final var option : OPTIONS) {
             body.addOption(option.slider(retrieve, assign));
         }
+        body.addOption(SimpleOption.ofBoolean(optionKey("verbose"), settings.verbose(),
+                (value) -> settings = settings.withVerbose(value)));
 
         final var link = makeInventoryLink();
         if (link != null)
@@ -141,12 +144,7 @@ public class OptionsScreen extends SingleColumnOptions {
 
     @Override
     public void removed() {
-        final var blockDistance = settings.blockDistance();
-        final var blockRadius = settings.blockRadius();
-        final var lifetime = settings.lifetime();
-        final var interestingIds = settings.interestingIds();
-
-        Options.getInstance().setAll(blockDistance, blockRadius, lifetime, interestingIds);
+        Options.getInstance().setAll(settings, true);
         super.removed();
     }
 
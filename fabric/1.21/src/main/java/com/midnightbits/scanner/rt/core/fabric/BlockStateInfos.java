@@ -0,0 +1,59 @@
+// Copyright (c) 2024 Marcin Zdun
+// This code is licensed under MIT license (see LICENSE for details)
+
+package com.midnightbits.scanner.rt.core.fabric;
+
+import com.midnightbits.scanner.rt.core.Id;
+import com.midnightbits.scanner.sonar.graphics.Colors;
+
+import net.minecraft.block.Block;
+import net.minecraft.block.BlockState;
+
+/**
+ * Flyweight {@link MinecraftBlockInfo} objects, indexed by the raw id of
+ * their block state. Once a state was seen, looking it up again is a single
+ * array read. Tags may change with data packs, so the whole table is dropped
+ * whenever tags are reloaded or the player joins a world.
+ */
+public final class BlockStateInfos {
+    public static final BlockStateInfos INSTANCE = new BlockStateInfos();
+
+    private static final MinecraftBlockInfo[] EMPTY = new MinecraftBlockInfo[0];
+
+    private volatile MinecraftBlockInfo[] infos = EMPTY;
+    private volatile Id[] knownTags = null;
+
+    private BlockStateInfos() {
+    }
+
+    public MinecraftBlockInfo get(BlockState state) {
+        final var rawId = Block.getRawIdFromState(state);
+        var table = infos;
+        if (rawId >= table.length) {
+            final var grown = new MinecraftBlockInfo[Math.max(rawId + 1, Block.STATE_IDS.size())];
+            System.arraycopy(table, 0, grown, 0, table.length);
+            infos = table = grown;
+        }
+
+        var info = table[rawId];
+        if (info == null) {
+            info = new MinecraftBlockInfo(state, knownTags());
+            table[rawId] = info;
+        }
+        return info;
+    }
+
+    private Id[] knownTags() {
+        var tags = knownTags;
+        if (tags == null) {
+            tags = Colors.BLOCK_TAG_COLORS.keySet().toArray(new Id[0]);
+            knownTags = tags;
+        }
+        return tags;
+    }
+
+    public void invalidate() {
+        infos = EMPTY;
+        knownTags = null;
+    }
+}
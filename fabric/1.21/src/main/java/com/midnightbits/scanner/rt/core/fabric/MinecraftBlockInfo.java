@@ -3,9 +3,12 @@
 
 package com.midnightbits.scanner.rt.core.fabric;
 
+import java.util.BitSet;
+
 import com.midnightbits.scanner.rt.core.BlockInfo;
 import com.midnightbits.scanner.rt.core.Id;
 import com.midnightbits.scanner.rt.text.MutableText;
+import com.midnightbits.scanner.sonar.graphics.Colors;
 import com.midnightbits.scanner.utils.CacheableValue;
 
 import net.minecraft.block.Block;
@@ -13,38 +16,74 @@ import net.minecraft.block.BlockState;
 import net.minecraft.registry.Registries;
 import net.minecraft.registry.tag.TagKey;
 import net.minecraft.util.Identifier;
+import org.jetbrains.annotations.Nullable;
 
+/**
+ * Everything the scanner needs to know about a single block state, resolved
+ * once. Instances are shared through {@link BlockStateInfos}.
+ */
 public class MinecraftBlockInfo implements BlockInfo {
-    BlockState state;
-    Block block;
-    CacheableValue<Boolean> blockIsAir = CacheableValue.of(() -> state.isAir());
-    CacheableValue<Identifier> id = CacheableValue.of(() -> Registries.BLOCK.getId(block));
-    CacheableValue<MutableText> name = CacheableValue.of(() -> Minecraft.packText(block.getName()));
+    final BlockState state;
+    final Block block;
+    private final boolean air;
+    private final Identifier identifier;
+    private final Id id;
+    private final Id[] knownTags;
+    private final BitSet tags = new BitSet();
+    private final @Nullable Colors.Proxy tagColor;
+    private final CacheableValue<MutableText> name;
 
-    MinecraftBlockInfo(BlockState state, Block block) {
+    MinecraftBlockInfo(BlockState state, Id[] knownTags) {
         this.state = state;
-        this.block = block;
+        this.block = state.getBlock();
+        this.air = state.isAir();
+        this.identifier = Registries.BLOCK.getId(block);
+        this.id = Minecraft.idOf(identifier);
+        this.knownTags = knownTags;
+        this.name = CacheableValue.of(() -> Minecraft.packText(block.getName()));
+
+        for (int index = 0; index < knownTags.length; ++index) {
+            if (lookUpTag(knownTags[index]))
+                tags.set(index);
+        }
+
+        Colors.Proxy color = null;
+        for (final var entry : Colors.BLOCK_TAG_COLORS.entrySet()) {
+            if (inTag(entry.getKey())) {
+                color = entry.getValue();
+                break;
+            }
+        }
+        this.tagColor = color;
+    }
+
+    private boolean lookUpTag(Id tag) {
+        final var entry = Registries.ITEM.getEntry(identifier);
+        if (entry.isEmpty()) {
+            return false;
+        }
+
+        final var key = TagKey.of(Registries.ITEM.getKey(), Minecraft.identifierOf(tag));
+        return entry.get().isIn(key);
     }
 
     @Override
     public boolean isAir() {
-        return blockIsAir.get();
+        return air;
     }
 
     @Override
     public boolean inTag(Id id) {
-        final var entry = Registries.ITEM.getEntry(this.id.get());
-        if (entry.isEmpty()) {
-            return false;
+        for (int index = 0; index < knownTags.length; ++index) {
+            if (knownTags[index].equals(id))
+                return tags.get(index);
         }
-
-        final var key = TagKey.of(Registries.ITEM.getKey(), Minecraft.identifierOf(id));
-        return entry.get().isIn(key);
+        return lookUpTag(id);
     }
 
     @Override
     public Id getId() {
-        return Minecraft.idOf(id.get());
+        return id;
     }
 
     @Override
@@ -52,4 +91,8 @@ public class MinecraftBlockInfo implements BlockInfo {
         return name.get();
     }
 
+    @Override
+    public @Nullable Colors.Proxy getTagColor() {
+        return tagColor;
+    }
 }
@@ -3,19 +3,38 @@
 
 package com.midnightbits.scanner.rt.core.fabric;
 
+import java.util.Arrays;
+import java.util.Set;
+
 import com.midnightbits.scanner.rt.core.BlockInfo;
 import com.midnightbits.scanner.rt.core.ClientCore;
+import com.midnightbits.scanner.rt.core.Id;
 import com.midnightbits.scanner.rt.math.V3i;
 import com.midnightbits.scanner.rt.text.Text;
 
-import net.minecraft.block.Block;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
 import net.minecraft.block.BlockState;
+import net.minecraft.block.Blocks;
 import net.minecraft.client.MinecraftClient;
+import net.minecraft.client.world.ClientWorld;
 import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkSectionPos;
+import net.minecraft.world.chunk.ChunkSection;
+import net.minecraft.world.chunk.EmptyChunk;
 import org.jetbrains.annotations.Nullable;
 
 public class MinecraftClientCore implements ClientCore {
+    private static final int INITIAL_GROUPS = 16;
+    private static final int INITIAL_POSITIONS = 256;
+
     private final MinecraftClient client;
+    // positions of a batch, grouped by the chunk section they are in
+    private final Long2IntOpenHashMap groupOfSection = new Long2IntOpenHashMap();
+    private long[] groupSections = new long[INITIAL_GROUPS];
+    private int[] groupStarts = new int[INITIAL_GROUPS + 1];
+    private int[] groupFill = new int[INITIAL_GROUPS];
+    private int[] groupOf = new int[INITIAL_POSITIONS];
+    private int[] grouped = new int[INITIAL_POSITIONS];
 
     public MinecraftClientCore(MinecraftClient client) {
         this.client = client;
@@ -27,8 +46,118 @@ public class MinecraftClientCore implements ClientCore {
             return null;
         }
         BlockState state = client.world.getBlockState(new BlockPos(Minecraft.vec3iOf(pos)));
-        Block block = state == null ? null : state.getBlock();
-        return new MinecraftBlockInfo(state, block);
+        return BlockStateInfos.INSTANCE.get(state);
+    }
+
+    @Override
+    public boolean getBlockInfos(long[] positions, int count, BlockSink sink) {
+        final var world = client.world;
+        if (world == null) {
+            return false;
+        }
+
+        // every section touched by this batch is looked up once, and all of
+        // its blocks are read one after another
+        final var groups = groupBySection(positions, count);
+        for (int group = 0; group < groups; ++group) {
+            final var section = sectionAt(world, groupSections[group]);
+            for (int at = groupStarts[group]; at < groupStarts[group + 1]; ++at) {
+                final var index = grouped[at];
+                final var packed = positions[index];
+                final BlockState state;
+                if (section == null) {
+                    state = world.isOutOfHeightLimit(BlockPos.unpackLongY(packed))
+                            ? Blocks.VOID_AIR.getDefaultState()
+                            : Blocks.AIR.getDefaultState();
+                } else {
+                    state = section.getBlockState(BlockPos.unpackLongX(packed) & 15,
+                            BlockPos.unpackLongY(packed) & 15, BlockPos.unpackLongZ(packed) & 15);
+                }
+                sink.accept(index, BlockStateInfos.INSTANCE.get(state));
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Counting sort of the batch by chunk section: sections are numbered in
+     * the order they are first seen, and the indices of their positions are
+     * laid out one section after another in {@link #grouped}.
+     *
+     * @return number of sections touched by the batch
+     */
+    private int groupBySection(long[] positions, int count) {
+        if (groupOf.length < count) {
+            groupOf = new int[Math.max(count, groupOf.length * 2)];
+            grouped = new int[groupOf.length];
+        }
+
+        groupOfSection.clear();
+        var groups = 0;
+        for (int index = 0; index < count; ++index) {
+            final var key = ChunkSectionPos.fromBlockPos(positions[index]);
+            var group = groupOfSection.getOrDefault(key, -1);
+            if (group < 0) {
+                group = groups++;
+                if (group == groupSections.length) {
+                    groupSections = Arrays.copyOf(groupSections, group * 2);
+                    groupStarts = Arrays.copyOf(groupStarts, group * 2 + 1);
+                    groupFill = Arrays.copyOf(groupFill, group * 2);
+                }
+                groupOfSection.put(key, group);
+                groupSections[group] = key;
+                groupFill[group] = 0;
+            }
+            groupOf[index] = group;
+            ++groupFill[group];
+        }
+
+        groupStarts[0] = 0;
+        for (int group = 0; group < groups; ++group) {
+            groupStarts[group + 1] = groupStarts[group] + groupFill[group];
+            groupFill[group] = groupStarts[group];
+        }
+        for (int index = 0; index < count; ++index)
+            grouped[groupFill[groupOf[index]]++] = index;
+
+        return groups;
+    }
+
+    private static @Nullable ChunkSection sectionAt(ClientWorld world, long sectionKey) {
+        final var blockY = ChunkSectionPos.getBlockCoord(ChunkSectionPos.unpackY(sectionKey));
+        if (world.isOutOfHeightLimit(blockY)) {
+            return null;
+        }
+
+        final var chunk = world.getChunk(ChunkSectionPos.unpackX(sectionKey), ChunkSectionPos.unpackZ(sectionKey));
+        if (chunk instanceof EmptyChunk) {
+            return null;
+        }
+
+        final var section = chunk.getSectionArray()[world.getSectionIndex(blockY)];
+        return section.isEmpty() ? null : section;
+    }
+
+    @Override
+    public boolean sectionMayContain(int sectionX, int sectionY, int sectionZ, Set<Id> blocks) {
+        final var world = client.world;
+        if (world == null) {
+            return true;
+        }
+
+        final var blockY = ChunkSectionPos.getBlockCoord(sectionY);
+        if (world.isOutOfHeightLimit(blockY)) {
+            return false;
+        }
+
+        final var chunk = world.getChunk(sectionX, sectionZ);
+        if (chunk instanceof EmptyChunk) {
+            return false;
+        }
+
+        // checks the section's palette, not the 4096 blocks it holds
+        final var section = chunk.getSectionArray()[world.getSectionIndex(blockY)];
+        return section.hasAny(state -> blocks.contains(BlockStateInfos.INSTANCE.get(state).getId()));
     }
 
     @Override
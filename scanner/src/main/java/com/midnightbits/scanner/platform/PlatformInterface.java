@@ -10,6 +10,7 @@ import com.midnightbits.scanner.sonar.graphics.Colors;
 
 import java.nio.file.Path;
 import java.util.Map;
+import java.util.concurrent.Executor;
 
 public interface PlatformInterface {
     enum Sample {
@@ -36,6 +37,14 @@ public interface PlatformInterface {
 
     void playSample(Sample id);
 
+    /**
+     * Runs work, which must not block the client thread, like planning the
+     * next ping. Anything reading the world must stay on the client thread.
+     */
+    default Executor getBackgroundExecutor() {
+        return task -> Thread.ofVirtual().name("resource-scanner-worker").start(task);
+    }
+
     default Map<Id, Colors.Proxy> getBlockTagColors() {
         return ColorDefaults.BLOCK_TAG_COLORS;
     }
@@ -4,6 +4,8 @@
 package com.midnightbits.scanner.rt.core;
 
 import com.midnightbits.scanner.rt.text.MutableText;
+import com.midnightbits.scanner.sonar.graphics.Colors;
+import org.jetbrains.annotations.Nullable;
 
 public interface BlockInfo {
     boolean isAir();
@@ -13,4 +15,16 @@ public interface BlockInfo {
     Id getId();
 
     MutableText getName();
+
+    /**
+     * @return color of the first tag from {@link Colors#BLOCK_TAG_COLORS} this
+     *         block belongs to, or null, if it belongs to none of them
+     */
+    default @Nullable Colors.Proxy getTagColor() {
+        for (final var entry : Colors.BLOCK_TAG_COLORS.entrySet()) {
+            if (inTag(entry.getKey()))
+                return entry.getValue();
+        }
+        return null;
+    }
 }
@@ -3,13 +3,52 @@
 
 package com.midnightbits.scanner.rt.core;
 
+import com.midnightbits.scanner.rt.math.PackedPos;
 import com.midnightbits.scanner.rt.math.V3i;
 import com.midnightbits.scanner.rt.text.Text;
 import org.jetbrains.annotations.Nullable;
 
+import java.util.Set;
+
 public interface ClientCore {
+    interface BlockSink {
+        void accept(int index, BlockInfo info);
+    }
+
     @Nullable BlockInfo getBlockInfo(V3i pos);
 
+    /**
+     * Looks up the first {@code count} blocks from the list of packed
+     * positions (see {@link PackedPos}) and hands them to the sink, together
+     * with their index in the list. Implementations are free to resolve the
+     * positions in any order they see fit, e.g. one chunk section at a time,
+     * so the sink must not rely on the order of the calls.
+     *
+     * @return false, if the blocks could not be read (e.g. there is no world
+     *         to read from); some of the blocks may have been reported before
+     *         that, but the batch is not complete
+     */
+    default boolean getBlockInfos(long[] positions, int count, BlockSink sink) {
+        for (int index = 0; index < count; ++index) {
+            final var info = getBlockInfo(PackedPos.unpack(positions[index]));
+            if (info == null)
+                return false;
+            sink.accept(index, info);
+        }
+        return true;
+    }
+
+    /**
+     * Allows the scanner to skip whole 16&times;16&times;16 sections, which
+     * cannot contain any of the blocks it is looking for. The coordinates are
+     * section coordinates, i.e. block coordinates shifted right by four.
+     *
+     * @return false only if none of the blocks can be found in the section
+     */
+    default boolean sectionMayContain(int sectionX, int sectionY, int sectionZ, Set<Id> blocks) {
+        return true;
+    }
+
     @Nullable V3i getPlayerPos();
 
     float getCameraPitch();
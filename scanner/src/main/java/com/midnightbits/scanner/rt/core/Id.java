@@ -3,25 +3,52 @@
 
 package com.midnightbits.scanner.rt.core;
 
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.UnaryOperator;
 
+/**
+ * Namespaced identifier. All instances are interned, so two ids are equal only
+ * if they are the same object, and each id carries a small, dense integer
+ * {@link #getHandle() handle}, which can be used to index arrays and bitsets.
+ */
 public class Id {
    public static final char NAMESPACE_SEPARATOR = ':';
    public static final String DEFAULT_NAMESPACE = "minecraft";
    public static final String MOD_NAMESPACE = "resource-scanner";
    public static final String REALMS_NAMESPACE = "realms";
+   private static final ConcurrentMap<String, ConcurrentMap<String, Id>> POOL = new ConcurrentHashMap<>();
+   private static final AtomicInteger HANDLES = new AtomicInteger();
    private final String namespace;
    private final String path;
+   private final int handle;
+   private final int hash;
 
-   private Id(String namespace, String path) {
+   private Id(String namespace, String path, int handle) {
       assert isNamespaceValid(namespace);
       assert isPathValid(path);
       this.namespace = namespace;
       this.path = path;
+      this.handle = handle;
+      this.hash = 31 * namespace.hashCode() + path.hashCode();
+   }
+
+   private static Id intern(String namespace, String path) {
+      return POOL.computeIfAbsent(namespace, key -> new ConcurrentHashMap<>())
+            .computeIfAbsent(path, key -> new Id(namespace, path, HANDLES.getAndIncrement()));
+   }
+
+   /**
+    * @return number of distinct ids created so far; every handle is smaller
+    *         than this
+    */
+   public static int handleCount() {
+      return HANDLES.get();
    }
 
    private static Id ofValidated(String namespace, String path) {
-      return new Id(validateNamespace(namespace, path), validatePath(namespace, path));
+      return intern(validateNamespace(namespace, path), validatePath(namespace, path));
    }
 
    public static Id of(String namespace, String path) {
@@ -33,11 +60,11 @@ public class Id {
    }
 
    public static Id ofVanilla(String path) {
-      return new Id(DEFAULT_NAMESPACE, validatePath(DEFAULT_NAMESPACE, path));
+      return intern(DEFAULT_NAMESPACE, validatePath(DEFAULT_NAMESPACE, path));
    }
 
    public static Id ofMod(String path) {
-      return new Id(MOD_NAMESPACE, validatePath(MOD_NAMESPACE, path));
+      return intern(MOD_NAMESPACE, validatePath(MOD_NAMESPACE, path));
    }
 
    public static Id tryParse(String id) {
@@ -45,7 +72,7 @@ public class Id {
    }
 
    public static Id tryParse(String namespace, String path) {
-      return isNamespaceValid(namespace) && isPathValid(path) ? new Id(namespace, path) : null;
+      return isNamespaceValid(namespace) && isPathValid(path) ? intern(namespace, path) : null;
    }
 
    public static Id splitOn(String id, char delimiter) {
@@ -71,12 +98,12 @@ public class Id {
             return null;
          } else if (i != 0) {
             String string2 = id.substring(0, i);
-            return isNamespaceValid(string2) ? new Id(string2, string) : null;
+            return isNamespaceValid(string2) ? intern(string2, string) : null;
          } else {
-            return new Id(DEFAULT_NAMESPACE, string);
+            return intern(DEFAULT_NAMESPACE, string);
          }
       } else {
-         return isPathValid(id) ? new Id(DEFAULT_NAMESPACE, id) : null;
+         return isPathValid(id) ? intern(DEFAULT_NAMESPACE, id) : null;
       }
    }
 
@@ -88,8 +115,12 @@ public class Id {
       return this.namespace;
    }
 
+   public int getHandle() {
+      return this.handle;
+   }
+
    public Id withPath(String path) {
-      return new Id(this.namespace, validatePath(this.namespace, path));
+      return intern(this.namespace, validatePath(this.namespace, path));
    }
 
    public Id withPath(UnaryOperator<String> pathFunction) {
@@ -109,20 +140,18 @@ public class Id {
    }
 
    public boolean equals(Object o) {
-      if (this == o) {
-         return true;
-      } else if (!(o instanceof Id identifier)) {
-         return false;
-      } else {
-         return this.namespace.equals(identifier.namespace) && this.path.equals(identifier.path);
-      }
+      return this == o;
    }
 
    public int hashCode() {
-      return 31 * this.namespace.hashCode() + this.path.hashCode();
+      return this.hash;
    }
 
    public int compareTo(Id identifier) {
+      if (this == identifier) {
+         return 0;
+      }
+
       int i = this.path.compareTo(identifier.path);
       if (i == 0) {
          i = this.namespace.compareTo(identifier.namespace);
@@ -0,0 +1,56 @@
+// Copyright (c) 2024 Marcin Zdun
+// This code is licensed under MIT license (see LICENSE for details)
+
+package com.midnightbits.scanner.rt.core;
+
+import java.util.AbstractSet;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Immutable set of ids, answering {@link #contains(Object)} with a single
+ * bit test on the id's handle.
+ */
+public final class IdSet extends AbstractSet<Id> {
+    public static final IdSet EMPTY = new IdSet(List.of());
+
+    private final List<Id> ids;
+    private final BitSet handles = new BitSet();
+
+    private IdSet(Collection<Id> ids) {
+        this.ids = List.copyOf(new LinkedHashSet<>(ids));
+        for (final var id : this.ids)
+            handles.set(id.getHandle());
+    }
+
+    public static IdSet of(Collection<Id> ids) {
+        if (ids instanceof IdSet compiled)
+            return compiled;
+        return new IdSet(ids);
+    }
+
+    public boolean contains(Id id) {
+        return handles.get(id.getHandle());
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return o instanceof Id id && contains(id);
+    }
+
+    @NotNull
+    @Override
+    public Iterator<Id> iterator() {
+        return ids.iterator();
+    }
+
+    @Override
+    public int size() {
+        return ids.size();
+    }
+}
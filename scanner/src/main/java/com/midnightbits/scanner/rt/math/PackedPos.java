@@ -0,0 +1,52 @@
+// Copyright (c) 2024 Marcin Zdun
+// This code is licensed under MIT license (see LICENSE for details)
+
+package com.midnightbits.scanner.rt.math;
+
+/**
+ * Block coordinates packed into a single {@code long}, using the same layout
+ * as Minecraft's {@code BlockPos.asLong()}: 26 bits of X, 26 bits of Z and 12
+ * bits of Y.
+ */
+public final class PackedPos {
+    private static final int SIZE_BITS_XZ = 26;
+    private static final int SIZE_BITS_Y = 12;
+    private static final long BITS_X = (1L << SIZE_BITS_XZ) - 1L;
+    private static final long BITS_Y = (1L << SIZE_BITS_Y) - 1L;
+    private static final long BITS_Z = (1L << SIZE_BITS_XZ) - 1L;
+    private static final int BIT_SHIFT_Z = SIZE_BITS_Y;
+    private static final int BIT_SHIFT_X = SIZE_BITS_Y + SIZE_BITS_XZ;
+
+    public static long pack(int x, int y, int z) {
+        return ((long) x & BITS_X) << BIT_SHIFT_X | ((long) y & BITS_Y) | ((long) z & BITS_Z) << BIT_SHIFT_Z;
+    }
+
+    public static long pack(V3i pos) {
+        return pack(pos.getX(), pos.getY(), pos.getZ());
+    }
+
+    public static int x(long packed) {
+        return (int) (packed << 64 - BIT_SHIFT_X - SIZE_BITS_XZ >> 64 - SIZE_BITS_XZ);
+    }
+
+    public static int y(long packed) {
+        return (int) (packed << 64 - SIZE_BITS_Y >> 64 - SIZE_BITS_Y);
+    }
+
+    public static int z(long packed) {
+        return (int) (packed << 64 - BIT_SHIFT_Z - SIZE_BITS_XZ >> 64 - SIZE_BITS_XZ);
+    }
+
+    public static long add(long packed, int dx, int dy, int dz) {
+        if (dx == 0 && dy == 0 && dz == 0)
+            return packed;
+        return pack(x(packed) + dx, y(packed) + dy, z(packed) + dz);
+    }
+
+    public static V3i unpack(long packed) {
+        return new V3i(x(packed), y(packed), z(packed));
+    }
+
+    private PackedPos() {
+    }
+}
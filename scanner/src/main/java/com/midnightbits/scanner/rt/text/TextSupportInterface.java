@@ -5,4 +5,9 @@ package com.midnightbits.scanner.rt.text;
 
 public interface TextSupportInterface {
     MutableText literal(String string);
+
+    /**
+     * @param args arguments of the translation; these may be other texts
+     */
+    MutableText translatable(String key, Object... args);
 }
@@ -6,36 +6,134 @@ package com.midnightbits.scanner.sonar;
 import com.midnightbits.scanner.rt.core.Id;
 import com.midnightbits.scanner.rt.math.V3i;
 import com.midnightbits.scanner.sonar.graphics.*;
-import com.midnightbits.scanner.utils.LineOfBlocks;
-import org.jetbrains.annotations.NotNull;
-import org.jetbrains.annotations.Nullable;
-import org.joml.Vector3f;
 
 import java.util.*;
-import java.util.function.Consumer;
 import java.util.stream.Stream;
 
+import org.joml.Vector3f;
+
 public class EchoNugget {
     private final Map<V3i, EchoState> echoStates;
     public final Id id;
     private final EchoState.AABB bounds;
+    final EchoState[] items;
+    private NuggetMesh mesh = null;
+    private BoundsTree tree = null;
+    private DepthOrder depth = null;
+    private int blockVertices = -1;
 
     private EchoNugget(Id id, Map<V3i, EchoState> echoStates) {
         this.echoStates = echoStates;
         this.id = id;
         this.bounds = makeBounds(echoStates);
+        this.items = echoStates.values().toArray(new EchoState[0]);
     }
 
-    public void draw(GlProgramConsumer buffer, MatrixStack matrices, Vector3f camera) {
-        furthestToClosest(buffer, matrices, camera, EchoState::draw);
+    public EchoState.AABB getBounds() {
+        return bounds;
     }
 
-    public void sketch(GlProgramConsumer buffer, MatrixStack matrices, Vector3f camera) {
-        furthestToClosest(buffer, matrices, camera, EchoState::sketch);
+    public Collection<EchoState> echoes() {
+        return echoStates.values();
+    }
+
+    /**
+     * Echoes of a nugget do not change after grouping; regrouping creates new
+     * nuggets instead. The mesh is therefore built on first use and kept for
+     * as long as the nugget is alive.
+     *
+     * @return faces and edges of this nugget merged into rectangles and
+     *         segments, covering the same area as drawing each echo would
+     */
+    public NuggetMesh mesh() {
+        if (mesh == null)
+            mesh = GreedyMesher.mesh(echoStates.values());
+        return mesh;
+    }
+
+    /**
+     * Built on first use and kept with the nugget, for the same reason the
+     * mesh is.
+     *
+     * @return hierarchy of the blocks of this nugget, with the items of the
+     *         tree being indices into the echoes of the nugget
+     */
+    public BoundsTree tree() {
+        if (tree == null) {
+            final var boxes = new double[items.length * 6];
+            for (int index = 0; index < items.length; ++index) {
+                final var pos = items[index].position();
+                final var box = index * 6;
+                boxes[box] = pos.getX();
+                boxes[box + 1] = pos.getY();
+                boxes[box + 2] = pos.getZ();
+                boxes[box + 3] = pos.getX() + 1;
+                boxes[box + 4] = pos.getY() + 1;
+                boxes[box + 5] = pos.getZ() + 1;
+            }
+            tree = new BoundsTree(boxes);
+        }
+        return tree;
     }
 
-    public EchoState.AABB getBounds() {
-        return bounds;
+    /**
+     * Draws the faces of the echoes block by block, the furthest echo first,
+     * so their translucent faces blend the way the faces of the mesh do.
+     */
+    public void draw(GlProgramConsumer buffer, MatrixStack matrices, Vector3f camera) {
+        for (final var index : furthestToClosest(camera))
+            items[index].draw(buffer, matrices, camera);
+    }
+
+    public void sketch(GlProgramConsumer buffer, MatrixStack matrices, Vector3f camera) {
+        for (final var index : furthestToClosest(camera))
+            items[index].sketch(buffer, matrices, camera);
+    }
+
+    public void sketch(GlProgramConsumer buffer, MatrixStack matrices, Vector3f camera, int argb32) {
+        for (final var index : furthestToClosest(camera))
+            items[index].sketch(buffer, matrices, camera, argb32);
+    }
+
+    /**
+     * The order is kept with the nugget, for the same reason the mesh is, so
+     * the next frame only fixes the few echoes, which changed places.
+     */
+    private int[] furthestToClosest(Vector3f camera) {
+        if (depth == null) {
+            final var centers = new float[items.length * 3];
+            for (int index = 0; index < items.length; ++index) {
+                final var pos = items[index].position();
+                final var center = index * 3;
+                centers[center] = pos.getX() + .5F;
+                centers[center + 1] = pos.getY() + .5F;
+                centers[center + 2] = pos.getZ() + .5F;
+            }
+            depth = new DepthOrder(centers);
+        }
+        return depth.furthestToClosest(camera);
+    }
+
+    /**
+     * @return color of the echoes of this nugget, as all of them share the
+     *         same block
+     */
+    public Colors.Proxy color() {
+        return items.length == 0 ? new Colors.DirectValue(Colors.WHITE) : items[0].color();
+    }
+
+    /**
+     * @return number of vertices, the faces and edges of all the echoes take,
+     *         when drawn block by block
+     */
+    public int blockVertices() {
+        if (blockVertices < 0) {
+            var count = 0;
+            for (final var echo : items)
+                count += Integer.bitCount(echo.sides) * 6 + Integer.bitCount(echo.edges) * 2;
+            blockVertices = count;
+        }
+        return blockVertices;
     }
 
     private static EchoState.AABB makeBounds(Map<V3i, EchoState> echoStates) {
@@ -53,56 +151,6 @@ public class EchoNugget {
         return bounds;
     }
 
-    private interface DrawingFunction {
-        void apply(EchoState self, GlProgramConsumer buffer, MatrixStack matrices, Vector3f camera);
-    };
-
-    private void furthestToClosest(GlProgramConsumer buffer, MatrixStack matrices, Vector3f camera,
-            DrawingFunction fn) {
-        furthestToClosest(echoStates.values().stream(), buffer, matrices, camera, fn);
-    }
-
-    private static void furthestToClosest(Stream<EchoState> echoes, GlProgramConsumer buffer, MatrixStack matrices,
-            Vector3f camera,
-            DrawingFunction fn) {
-        final Consumer<Pixel> paint = (pixel) -> fn.apply(pixel.echoState(), buffer, matrices, camera);
-
-        echoes
-                .map((echo) -> Pixel.of(echo, camera))
-                .sorted((lhs, rhs) -> Double.compare(rhs.distanceSquared(), lhs.distanceSquared()))
-                .forEach(paint);
-    }
-
-    private List<Double> minMaxTo(Vector3f camera) {
-        final var sorted = echoStates.values().stream()
-                .map((echo) -> Pixel.of(echo, camera).distanceSquared())
-                .sorted((lhs, rhs) -> Double.compare(rhs, lhs)).iterator();
-
-        final var closest = sorted.next();
-        var furthest = closest;
-        while (sorted.hasNext()) {
-            furthest = sorted.next();
-        }
-        return List.of(closest, furthest);
-    }
-
-    private record Distance(EchoNugget nugget, List<Double> minMax) implements Comparable<Distance> {
-        @Override
-        public int compareTo(@NotNull Distance other) {
-            final var lhsMin = minMax.getFirst();
-            final var rhsMin = other.minMax.getFirst();
-            return Double.compare(rhsMin, lhsMin);
-        }
-    }
-
-    public static List<EchoNugget> sortForCamera(List<EchoNugget> nuggets, Vector3f camera) {
-        return nuggets.stream()
-                .map((nugget) -> new Distance(nugget, nugget.minMaxTo(camera)))
-                .sorted()
-                .map((dist) -> dist.nugget)
-                .toList();
-    }
-
     public static List<EchoNugget> group(Collection<EchoState> echoes) {
         final var result = new ArrayList<EchoNugget>();
         final var sorter = new TriColorSorter(echoes);
@@ -127,59 +175,6 @@ public class EchoNugget {
         return result;
     }
 
-    public static List<View> filterVisible(List<EchoNugget> nuggets, FrustumFilter frustum) {
-        return nuggets.stream()
-                .filter(frustum::contains)
-                .map(nugget -> {
-                    final var filtered = nugget.echoStates.values().stream().filter(frustum::contains).toList();
-                    return nugget.new View(filtered);
-                })
-                .toList();
-    }
-
-    public record TheThingImLookingAt(View nugget, EchoState echo) {
-    }
-
-    public static @Nullable TheThingImLookingAt theThingImLookingAt(List<View> views, Vector3f camera,
-            float cameraPitch, float cameraYaw) {
-        final var line = LineOfBlocks.fromCamera(new V3i((int) camera.x, (int) camera.y, (int) camera.z), cameraPitch,
-                cameraYaw, 1000);
-        for (final var pos : line.iterate()) {
-            for (final var view : views) {
-                for (final var echo : view.echoes) {
-                    if (echo.position.equals(pos)) {
-                        return new TheThingImLookingAt(view, echo);
-                    }
-
-                }
-            }
-        }
-
-        return null;
-    }
-
-    public class View {
-        private final List<EchoState> echoes;
-
-        View(List<EchoState> echoes) {
-            this.echoes = echoes;
-        }
-
-        EchoNugget parent() {
-            return EchoNugget.this;
-        }
-
-        public void draw(GlProgramConsumer buffer, MatrixStack matrices, Vector3f camera) {
-            furthestToClosest(echoes.stream(), buffer, matrices, camera, EchoState::draw);
-        }
-
-        public void sketch(GlProgramConsumer buffer, MatrixStack matrices, Vector3f camera) {
-            furthestToClosest(echoes.stream(), buffer, matrices, camera, EchoState::sketch);
-        }
-
-        public void sketch(GlProgramConsumer buffer, MatrixStack matrices, Vector3f camera, int argb32) {
-            furthestToClosest(echoes.stream(), buffer, matrices, camera,
-                    (echo, b, m, c) -> echo.sketch(b, m, c, argb32));
-        }
+    public record TheThingImLookingAt(EchoNugget nugget, EchoState echo) {
     }
 }
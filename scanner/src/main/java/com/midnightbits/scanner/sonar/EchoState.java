@@ -4,7 +4,6 @@
 package com.midnightbits.scanner.sonar;
 
 import com.midnightbits.scanner.rt.core.Id;
-import com.midnightbits.scanner.rt.core.ScannerMod;
 import com.midnightbits.scanner.rt.math.V3i;
 import com.midnightbits.scanner.sonar.graphics.Colors;
 import com.midnightbits.scanner.sonar.graphics.GlProgramConsumer;
@@ -12,15 +11,9 @@ import com.midnightbits.scanner.sonar.graphics.MatrixStack;
 import com.midnightbits.scanner.sonar.graphics.Pixel;
 import com.midnightbits.scanner.utils.Clock;
 import org.jetbrains.annotations.NotNull;
-import org.joml.Matrix4f;
 import org.joml.Vector3f;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
 public class EchoState implements Comparable<EchoState> {
-    private static final String TAG = ScannerMod.MOD_ID;
-    private static final Logger LOGGER = LoggerFactory.getLogger(TAG);
-
     public record Partial(V3i position, Echo echo) {
         public static Partial of(V3i position, Echo echo) {
             return new Partial(position, echo);
@@ -113,72 +106,22 @@ public class EchoState implements Comparable<EchoState> {
     }
 
     public void draw(GlProgramConsumer buffer, MatrixStack matrices, Vector3f camera) {
-        final var m = pushAndAlignWithCamera(matrices, camera);
-
         if (alpha == 0) {
             return;
         }
 
         final var argb32 = alpha | color().rgb24();
-
-        for (var side = 0; side < Pixel.triangles.length; ++side) {
-            final var flag = 1 << side;
-            if ((sides & flag) == 0) {
-                LOGGER.debug("[{}]: skipping: {}/{}", position, side, Pixel.side_names[side]);
-                continue;
-            }
-
-            final var wall = Pixel.triangles[side];
-            for (final var vertex : wall) {
-                vertex.apply(buffer, m, argb32);
-            }
-        }
-        LOGGER.debug("");
-
-        matrices.pop();
+        buffer.cube(matrices.peek().getPositionMatrix(), position.getX() - camera.x, position.getY() - camera.y,
+                position.getZ() - camera.z, sides, argb32);
     }
 
     public void sketch(GlProgramConsumer buffer, MatrixStack matrices, Vector3f camera) {
-        final var m = pushAndAlignWithCamera(matrices, camera);
-
-        final var validColor = Colors.OPAQUE | color().rgb24();
-
-        for (var index = 0; index < Pixel.edges.length; ++index) {
-            final var flag = 1 << index;
-            if ((edges & flag) == 0) {
-                LOGGER.debug("[{}]: skipping: {}/{}", position, index, Pixel.edge_names[index]);
-                continue;
-            }
-
-            Pixel.edges[index].apply(buffer, m, validColor);
-        }
-        LOGGER.debug("");
-
-        matrices.pop();
+        sketch(buffer, matrices, camera, Colors.OPAQUE | color().rgb24());
     }
 
     public void sketch(GlProgramConsumer buffer, MatrixStack matrices, Vector3f camera, int argb32) {
-        final var m = pushAndAlignWithCamera(matrices, camera);
-
-        for (var index = 0; index < Pixel.edges.length; ++index) {
-            final var flag = 1 << index;
-            if ((edges & flag) == 0) {
-                continue;
-            }
-
-            Pixel.edges[index].apply(buffer, m, argb32);
-        }
-
-        matrices.pop();
-    }
-
-    private Matrix4f pushAndAlignWithCamera(MatrixStack matrices, Vector3f camera) {
-        final var x = position().getX() - camera.x;
-        final var y = position().getY() - camera.y;
-        final var z = position().getZ() - camera.z;
-        matrices.push();
-        matrices.translate(x, y, z);
-        return matrices.peek().getPositionMatrix();
+        buffer.cubeEdges(matrices.peek().getPositionMatrix(), position.getX() - camera.x,
+                position.getY() - camera.y, position.getZ() - camera.z, edges, argb32);
     }
 
     public AABB getBounds() {
@@ -3,24 +3,54 @@
 
 package com.midnightbits.scanner.sonar;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
 import java.util.TreeSet;
 import java.util.function.Predicate;
-import java.util.stream.Stream;
 
 import com.midnightbits.scanner.rt.core.ClientCore;
+import com.midnightbits.scanner.rt.math.PackedPos;
 import com.midnightbits.scanner.rt.math.V3i;
 import com.midnightbits.scanner.utils.Clock;
+import com.midnightbits.scanner.utils.LongObjectHashMap;
 
 import org.jetbrains.annotations.NotNull;
 
+/**
+ * All the echoes still visible to the operator. Echoes are kept in the order
+ * of their ping time, which doubles as the expiry queue, and are indexed by
+ * their packed position, so a repeated ping replaces the previous echo without
+ * scanning the whole set. They are also bucketed by their chunk column, so an
+ * unloaded chunk only visits its own echoes.
+ *
+ * <p>
+ * Nuggets are maintained incrementally. Each evicted echo marks the nugget it
+ * belonged to as dirty, and each new echo is kept aside, marking the nuggets of
+ * its matching neighbours as dirty, since it may join them together. Then
+ * {@link #regroup()} rebuilds only the dirty nuggets, together with the new
+ * echoes; all the other nuggets, and the sides and edges of their echoes, are
+ * left untouched.
+ */
 public final class Echoes implements Iterable<EchoState> {
     private final TreeSet<EchoState> echoes = new TreeSet<>();
+    private final LongObjectHashMap<EchoState> byPosition = new LongObjectHashMap<>();
+    private final LongObjectHashMap<Set<EchoState>> byChunk = new LongObjectHashMap<>();
     private List<EchoNugget> nuggets = List.of();
+    private final LongObjectHashMap<EchoNugget> nuggetAt = new LongObjectHashMap<>();
+    private final Set<EchoNugget> dirty = Collections.newSetFromMap(new IdentityHashMap<>());
+    private final List<EchoState> ungrouped = new ArrayList<>();
+    private int nuggetsVersion = 0;
     public static final int ECHO_LIFETIME = 10000;
+    private static final int[][] NEIGHBOURS = {
+            { -1, 0, 0 }, { 1, 0, 0 }, { 0, -1, 0 }, { 0, 1, 0 }, { 0, 0, -1 }, { 0, 0, 1 },
+    };
 
     private int lifetime;
+    private EchoState revalidated = null;
 
     public Echoes(int lifetime) {
         this.lifetime = lifetime;
@@ -55,15 +85,132 @@ public final class Echoes implements Iterable<EchoState> {
      * @return resulting block
      */
     public EchoState echoFrom(EchoState.Partial partial) {
-        evictBlocks(stream().filter(b -> b.position().equals(partial.position())));
-
         EchoState echo = EchoState.echoFrom(partial);
+        final var previous = byPosition.put(PackedPos.pack(partial.position()), echo);
+        if (previous != null) {
+            echoes.remove(previous);
+            chunkOf(previous).remove(previous);
+            evicted(previous);
+        }
         echoes.add(echo);
+        chunkOf(echo).add(echo);
+        ungrouped.add(echo);
+        touchNeighbours(echo);
         return echo;
     }
 
     public boolean remove(Predicate<EchoState> whichOnes) {
-        return evictBlocks(stream().filter(whichOnes));
+        var removed = false;
+        final var it = echoes.iterator();
+        while (it.hasNext()) {
+            final var echo = it.next();
+            if (!whichOnes.test(echo)) {
+                continue;
+            }
+            it.remove();
+            unindex(echo);
+            evicted(echo);
+            removed = true;
+        }
+        return removed;
+    }
+
+    /**
+     * Removes the echo at the given position, if there is one.
+     *
+     * @param packed position of the block, as in {@link PackedPos#pack}
+     * @return true, if an echo was removed
+     */
+    public boolean invalidate(long packed) {
+        final var echo = byPosition.get(packed);
+        if (echo == null) {
+            return false;
+        }
+        echoes.remove(echo);
+        unindex(echo);
+        evicted(echo);
+        return true;
+    }
+
+    /**
+     * Removes all the echoes inside the given chunk column.
+     *
+     * @return true, if anything was removed
+     */
+    public boolean invalidateChunk(int chunkX, int chunkZ) {
+        final var bucket = byChunk.remove(chunkKey(chunkX, chunkZ));
+        if (bucket == null) {
+            return false;
+        }
+        for (final var echo : bucket) {
+            echoes.remove(echo);
+            byPosition.remove(PackedPos.pack(echo.position()));
+            evicted(echo);
+        }
+        return true;
+    }
+
+    /**
+     * Removes echoes older than the lifetime. Since the echoes are ordered by
+     * their ping time, only the expired ones are visited.
+     *
+     * @return true, if anything was removed
+     */
+    public boolean removeExpired() {
+        final var now = Clock.currentTimeMillis();
+        var removed = false;
+        while (!echoes.isEmpty() && now - echoes.first().pingTime() > lifetime) {
+            final var echo = echoes.pollFirst();
+            unindex(echo);
+            evicted(echo);
+            removed = true;
+        }
+        return removed;
+    }
+
+    public int size() {
+        return echoes.size();
+    }
+
+    public EchoState get(V3i position) {
+        return get(PackedPos.pack(position));
+    }
+
+    public EchoState get(long packed) {
+        return byPosition.get(packed);
+    }
+
+    /**
+     * Checks, if at most {@code budget} echoes still match the world, picking
+     * up after the echo checked last, and removes the ones, which do not. Over
+     * consecutive calls, all echoes are visited round-robin, so the cost of a
+     * single call does not depend on how many echoes are there.
+     *
+     * @return true, if anything was removed
+     */
+    public boolean revalidate(ClientCore client, int budget) {
+        var removed = false;
+        final var limit = Math.min(budget, echoes.size());
+        var it = revalidated == null ? echoes.iterator() : echoes.tailSet(revalidated, false).iterator();
+        for (int checked = 0; checked < limit; ++checked) {
+            if (!it.hasNext()) {
+                it = echoes.iterator();
+                if (!it.hasNext()) {
+                    break;
+                }
+            }
+
+            final var echo = it.next();
+            revalidated = echo;
+            if (!isStale(echo, client)) {
+                continue;
+            }
+            it.remove();
+            unindex(echo);
+            evicted(echo);
+            removed = true;
+        }
+        return removed;
     }
 
     public Predicate<EchoState> oldEchoes(ClientCore client) {
@@ -73,39 +220,161 @@ public final class Echoes implements Iterable<EchoState> {
             if (blockLifetime > lifetime) {
                 return true;
             }
-
-            final var info = client.getBlockInfo(block.position());
-            if (info == null) {
-                return true;
-            }
-            return !block.id().equals(info.getId());
+            return isStale(block, client);
         });
     }
 
+    private static boolean isStale(EchoState block, ClientCore client) {
+        final var info = client.getBlockInfo(block.position());
+        if (info == null) {
+            return true;
+        }
+        return !block.id().equals(info.getId());
+    }
+
     List<EchoNugget> nuggets() {
         return nuggets;
     }
 
+    /**
+     * @return number, which changes every time the list of nuggets does
+     */
+    public int nuggetsVersion() {
+        return nuggetsVersion;
+    }
+
     public void splitToNuggets() {
-        nuggets = EchoNugget.group(echoes);
+        regroup();
+    }
+
+    /**
+     * Rebuilds only the nuggets, which lost some of their echoes, or which
+     * touch any echo added since the last call. Other nuggets are kept as they
+     * are.
+     *
+     * @return true, if the list of nuggets changed
+     */
+    public boolean regroup() {
+        if (dirty.isEmpty() && ungrouped.isEmpty()) {
+            return false;
+        }
+
+        final var affected = new ArrayList<EchoState>();
+        final var result = new ArrayList<EchoNugget>(nuggets.size() + dirty.size());
+        for (final var nugget : nuggets) {
+            if (!dirty.contains(nugget)) {
+                result.add(nugget);
+                continue;
+            }
+
+            for (final var echo : nugget.echoes()) {
+                if (isLive(echo)) {
+                    affected.add(echo);
+                }
+            }
+        }
+        for (final var echo : ungrouped) {
+            if (isLive(echo)) {
+                affected.add(echo);
+            }
+        }
+
+        // all the pieces, which could end up connected, are grouped together
+        for (final var regrouped : EchoNugget.group(affected)) {
+            track(regrouped);
+            result.add(regrouped);
+        }
+
+        dirty.clear();
+        ungrouped.clear();
+        nuggets = result;
+        ++nuggetsVersion;
+        return true;
+    }
+
+    private static long chunkKey(int chunkX, int chunkZ) {
+        return ((long) chunkX << 32) | (chunkZ & 0xFFFFFFFFL);
     }
 
-    private Stream<EchoState> stream() {
-        return echoes.stream();
+    private Set<EchoState> chunkOf(EchoState echo) {
+        final var key = chunkKey(echo.position().getX() >> 4, echo.position().getZ() >> 4);
+        var bucket = byChunk.get(key);
+        if (bucket == null) {
+            bucket = Collections.newSetFromMap(new IdentityHashMap<>());
+            byChunk.put(key, bucket);
+        }
+        return bucket;
+    }
+
+    /**
+     * Drops the echo from the position index and from its chunk's bucket;
+     * the echo itself is left for the caller to remove from the queue.
+     */
+    private void unindex(EchoState echo) {
+        byPosition.remove(PackedPos.pack(echo.position()));
+        final var key = chunkKey(echo.position().getX() >> 4, echo.position().getZ() >> 4);
+        final var bucket = byChunk.get(key);
+        if (bucket != null && bucket.remove(echo) && bucket.isEmpty()) {
+            byChunk.remove(key);
+        }
+    }
+
+    private boolean isLive(EchoState echo) {
+        return byPosition.get(PackedPos.pack(echo.position())) == echo;
+    }
+
+    private void track(EchoNugget nugget) {
+        for (final var echo : nugget.echoes()) {
+            nuggetAt.put(PackedPos.pack(echo.position()), nugget);
+        }
     }
 
-    private boolean evictBlocks(Stream<EchoState> stream) {
-        final var oldSize = echoes.size();
-        List<EchoState> evictions = stream.toList();
-        for (EchoState evicted : evictions) {
-            echoes.remove(evicted);
+    private void touchNeighbours(EchoState echo) {
+        final var packed = PackedPos.pack(echo.position());
+        for (final var side : NEIGHBOURS) {
+            final var neighbour = PackedPos.add(packed, side[0], side[1], side[2]);
+            final var other = byPosition.get(neighbour);
+            if (other == null || !other.id().equals(echo.id())) {
+                continue;
+            }
+            final var nugget = nuggetAt.get(neighbour);
+            if (nugget != null) {
+                dirty.add(nugget);
+            }
+        }
+    }
+
+    private void evicted(EchoState echo) {
+        final var nugget = nuggetAt.remove(PackedPos.pack(echo.position()));
+        if (nugget != null) {
+            dirty.add(nugget);
         }
-        return oldSize != echoes.size();
     }
 
     @NotNull
     @Override
     public Iterator<EchoState> iterator() {
-        return echoes.iterator();
+        final var it = echoes.iterator();
+        return new Iterator<>() {
+            private EchoState current;
+
+            @Override
+            public boolean hasNext() {
+                return it.hasNext();
+            }
+
+            @Override
+            public EchoState next() {
+                current = it.next();
+                return current;
+            }
+
+            @Override
+            public void remove() {
+                it.remove();
+                unindex(current);
+                evicted(current);
+            }
+        };
     }
 }
@@ -0,0 +1,164 @@
+// Copyright (c) 2024 Marcin Zdun
+// This code is licensed under MIT license (see LICENSE for details)
+
+package com.midnightbits.scanner.sonar;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.function.Consumer;
+
+import com.midnightbits.scanner.sonar.graphics.BoundsTree;
+import com.midnightbits.scanner.sonar.graphics.FrustumFilter;
+
+/**
+ * Frustum culling over two levels of {@link BoundsTree}: one over the bounds
+ * of the nuggets and one inside each nugget, over its echoes. The tree of a
+ * nugget lives as long as the nugget does, so after a change only the new
+ * nuggets build their trees, and the top tree, over a few nugget boxes, is
+ * built again.
+ */
+public final class NuggetCuller {
+    public static final NuggetCuller EMPTY = new NuggetCuller(List.of());
+
+    private final EchoNugget[] nuggets;
+    private final IdentityHashMap<EchoNugget, Integer> indices;
+    private final BoundsTree tree;
+    private final BoundsTree.Ranges top = new BoundsTree.Ranges();
+    private int[] scratch = new int[16];
+
+    /**
+     * Nuggets and echoes, which passed the last culling. The object is meant
+     * to be kept and refilled every frame, so nothing is allocated once its
+     * arrays have grown to the size of the scene.
+     */
+    public static final class Visible {
+        private final BoundsTree.Ranges ranges = new BoundsTree.Ranges();
+        private NuggetCuller source = EMPTY;
+        private EchoNugget[] nuggets = new EchoNugget[16];
+        private int[] indices = new int[16];
+        private int[] firstRange = new int[17];
+        private int count = 0;
+
+        private void clear(NuggetCuller source) {
+            this.source = source;
+            ranges.clear();
+            Arrays.fill(nuggets, 0, count, null);
+            count = 0;
+        }
+
+        private void add(int index, int first) {
+            if (count == nuggets.length) {
+                nuggets = Arrays.copyOf(nuggets, count * 2);
+                indices = Arrays.copyOf(indices, count * 2);
+                firstRange = Arrays.copyOf(firstRange, count * 2 + 1);
+            }
+            nuggets[count] = source.nuggets[index];
+            indices[count] = index;
+            firstRange[count] = first;
+            firstRange[++count] = ranges.count();
+        }
+
+        public int size() {
+            return count;
+        }
+
+        public EchoNugget get(int index) {
+            return nuggets[index];
+        }
+
+        /**
+         * Calls the action with every echo of the visible nugget under the
+         * given index, which passed the culling, in the order of the slots of
+         * the nugget's tree.
+         */
+        public void forEachEcho(int index, Consumer<EchoState> action) {
+            final var nugget = nuggets[index];
+            final var tree = nugget.tree();
+            for (int range = firstRange[index]; range < firstRange[index + 1]; ++range) {
+                for (int slot = ranges.from(range); slot < ranges.to(range); ++slot)
+                    action.accept(nugget.items[tree.item(slot)]);
+            }
+        }
+
+        private int find(EchoNugget nugget) {
+            final var index = source.indices.get(nugget);
+            return index == null ? -1 : Arrays.binarySearch(indices, 0, count, index);
+        }
+
+        public boolean isVisible(EchoNugget nugget) {
+            return find(nugget) >= 0;
+        }
+
+        /**
+         * @return true, if the echo kept under the given index by the nugget
+         *         passed the culling
+         */
+        public boolean isVisible(EchoNugget nugget, int item) {
+            final var visible = find(nugget);
+            if (visible < 0)
+                return false;
+            return ranges.contains(firstRange[visible], firstRange[visible + 1], nugget.tree().slotOf(item));
+        }
+    }
+
+    public NuggetCuller(List<EchoNugget> nuggets) {
+        this.nuggets = nuggets.toArray(new EchoNugget[0]);
+        this.indices = new IdentityHashMap<>(this.nuggets.length);
+        for (int index = 0; index < this.nuggets.length; ++index)
+            this.indices.put(this.nuggets[index], index);
+        final var boxes = new double[this.nuggets.length * 6];
+        for (int index = 0; index < this.nuggets.length; ++index) {
+            final var bounds = this.nuggets[index].getBounds();
+            final var box = index * 6;
+            boxes[box] = bounds.minX();
+            boxes[box + 1] = bounds.minY();
+            boxes[box + 2] = bounds.minZ();
+            boxes[box + 3] = bounds.maxX();
+            boxes[box + 4] = bounds.maxY();
+            boxes[box + 5] = bounds.maxZ();
+        }
+        this.tree = new BoundsTree(boxes);
+    }
+
+    /**
+     * Refills {@code out} with the nuggets touching the frustum, in the order
+     * they were given in, each with the echoes, which touch it as well.
+     * Nuggets without any visible echo are left out.
+     */
+    public void cull(FrustumFilter frustum, Visible out) {
+        out.clear(this);
+        top.clear();
+        tree.cull(frustum, top);
+
+        // back to the order of the nuggets, which is the order they are drawn
+        // in; slots of the top tree follow the Morton order instead
+        var visible = 0;
+        for (int range = 0; range < top.count(); ++range)
+            visible += top.to(range) - top.from(range);
+        if (visible == 0)
+            return;
+
+        final var order = scratch(visible);
+        var pos = 0;
+        for (int range = 0; range < top.count(); ++range) {
+            for (int slot = top.from(range); slot < top.to(range); ++slot)
+                order[pos++] = tree.item(slot);
+        }
+        Arrays.sort(order, 0, visible);
+
+        for (int index = 0; index < visible; ++index) {
+            final var first = out.ranges.count();
+            out.ranges.seal();
+            nuggets[order[index]].tree().cull(frustum, out.ranges);
+            if (out.ranges.count() > first)
+                out.add(order[index], first);
+        }
+    }
+
+    private int[] scratch(int size) {
+        if (scratch.length < size)
+            scratch = new int[Math.max(size, scratch.length * 2)];
+        return scratch;
+    }
+}
@@ -0,0 +1,83 @@
+// Copyright (c) 2024 Marcin Zdun
+// This code is licensed under MIT license (see LICENSE for details)
+
+package com.midnightbits.scanner.sonar;
+
+import java.util.List;
+
+import com.midnightbits.scanner.rt.math.PackedPos;
+import com.midnightbits.scanner.rt.math.V3i;
+import com.midnightbits.scanner.utils.LineOfBlocks;
+import com.midnightbits.scanner.utils.LongIntHashMap;
+import com.midnightbits.scanner.utils.VoxelRay;
+import org.jetbrains.annotations.Nullable;
+import org.joml.Vector3f;
+
+/**
+ * Finds the echo under the crosshair. All the echoes of a list of nuggets are
+ * indexed by their packed position once, so following the line of sight
+ * costs one hash probe per block crossed, no matter how many echoes there
+ * are. The index is only rebuilt, when the list of nuggets changes.
+ */
+public final class PickIndex {
+    private static final int MISSING = -1;
+    private static final int REACH = 1000;
+
+    public static final PickIndex EMPTY = new PickIndex(List.of());
+
+    private final LongIntHashMap entries;
+    private final EchoNugget[] nuggets;
+    private final int[] items;
+
+    public PickIndex(List<EchoNugget> nuggets) {
+        var count = 0;
+        for (final var nugget : nuggets)
+            count += nugget.items.length;
+
+        this.entries = new LongIntHashMap(count);
+        this.nuggets = new EchoNugget[count];
+        this.items = new int[count];
+
+        var entry = 0;
+        for (final var nugget : nuggets) {
+            for (int item = 0; item < nugget.items.length; ++item) {
+                this.nuggets[entry] = nugget;
+                this.items[entry] = item;
+                this.entries.put(PackedPos.pack(nugget.items[item].position()), entry);
+                ++entry;
+            }
+        }
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return echo closest to the camera along its line of sight, which
+     *         passed the last culling, with the nugget it belongs to, or
+     *         null, if there is none in reach
+     */
+    public @Nullable EchoNugget.TheThingImLookingAt pick(NuggetCuller.Visible visible, Vector3f camera,
+            float cameraPitch, float cameraYaw) {
+        if (visible.size() == 0 || entries.size() == 0)
+            return null;
+
+        final var line = LineOfBlocks.fromCamera(new V3i((int) camera.x, (int) camera.y, (int) camera.z), cameraPitch,
+                cameraYaw, REACH);
+        final var found = new EchoNugget.TheThingImLookingAt[] { null };
+        VoxelRay.trace(line.from, line.to, (x, y, z) -> {
+            final var entry = entries.get(PackedPos.pack(x, y, z), MISSING);
+            if (entry == MISSING)
+                return true;
+
+            final var nugget = nuggets[entry];
+            if (!visible.isVisible(nugget, items[entry]))
+                return true;
+
+            found[0] = new EchoNugget.TheThingImLookingAt(nugget, nugget.items[items[entry]]);
+            return false;
+        });
+        return found[0];
+    }
+}
@@ -0,0 +1,68 @@
+// Copyright (c) 2024 Marcin Zdun
+// This code is licensed under MIT license (see LICENSE for details)
+
+package com.midnightbits.scanner.sonar;
+
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+
+import com.midnightbits.scanner.utils.ScanVolume;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Shells of a ping, produced by a background task and consumed by the client
+ * thread. The consumer may start as soon as the first shell is queued; an
+ * empty queue of an unfinished plan only means the worker is not there yet.
+ * A cancelled plan is exhausted at once, even if the worker still has a
+ * shell on its way.
+ */
+public final class ScanPlan {
+    private static final Logger LOGGER = LoggerFactory.getLogger("ScanPlan");
+
+    private final Queue<ScanVolume.RangedPositions> ready = new ConcurrentLinkedQueue<>();
+    private final CompletableFuture<Void> planned;
+    private volatile boolean cancelled = false;
+
+    public ScanPlan(Iterator<ScanVolume.RangedPositions> shells, Executor executor) {
+        planned = CompletableFuture.runAsync(() -> {
+            while (!cancelled && shells.hasNext())
+                ready.add(shells.next());
+        }, executor);
+        planned.whenComplete((ignored, error) -> {
+            if (error != null && !(error instanceof CancellationException))
+                LOGGER.error("Planning the ping failed", error);
+        });
+    }
+
+    /**
+     * @return next shell, or null, if it is not ready yet or there will be no
+     *         more shells
+     */
+    public @Nullable ScanVolume.RangedPositions poll() {
+        return cancelled ? null : ready.poll();
+    }
+
+    public boolean isExhausted() {
+        return cancelled || (planned.isDone() && ready.isEmpty());
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public void cancel() {
+        cancelled = true;
+        planned.cancel(false);
+        ready.clear();
+    }
+
+    public CompletableFuture<Void> planned() {
+        return planned;
+    }
+}
@@ -0,0 +1,111 @@
+// Copyright (c) 2024 Marcin Zdun
+// This code is licensed under MIT license (see LICENSE for details)
+
+package com.midnightbits.scanner.sonar;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.midnightbits.scanner.rt.core.Id;
+import com.midnightbits.scanner.rt.core.ScannerMod;
+import com.midnightbits.scanner.rt.core.Services;
+import com.midnightbits.scanner.rt.math.V3i;
+import com.midnightbits.scanner.rt.text.MutableText;
+import com.midnightbits.scanner.rt.text.Text;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Collects the blocks found by a single ping, so they can be reported with
+ * one message, once the ping is over: how many blocks of each kind were
+ * found, how far the nearest one is and in which direction. All the words
+ * of the message come from the translations.
+ */
+public final class ScanReport {
+    public static final String ENTRY = ScannerMod.translationKey("report", "entry");
+    public static final String ABOVE = directionKey("above");
+    public static final String BELOW = directionKey("below");
+    public static final String HERE = directionKey("here");
+    private static final String[] COMPASS = {
+            directionKey("n"), directionKey("ne"), directionKey("e"), directionKey("se"),
+            directionKey("s"), directionKey("sw"), directionKey("w"), directionKey("nw"),
+    };
+
+    public record Entry(Id id, MutableText name, int count, int distance, V3i nearest) {
+    }
+
+    private final V3i origin;
+    private final Map<Id, Entry> entries = new HashMap<>();
+
+    public ScanReport(V3i origin) {
+        this.origin = origin;
+    }
+
+    public void add(Id id, MutableText name, V3i pos, int distance) {
+        final var prev = entries.get(id);
+        if (prev == null) {
+            entries.put(id, new Entry(id, name, 1, distance, pos));
+            return;
+        }
+
+        final var closer = distance < prev.distance();
+        entries.put(id, new Entry(id, prev.name(), prev.count() + 1, closer ? distance : prev.distance(),
+                closer ? pos : prev.nearest()));
+    }
+
+    public boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+    public List<Entry> entries() {
+        return entries.values().stream()
+                .sorted(Comparator.comparingInt(Entry::distance).thenComparing(Entry::id, Id::compareTo))
+                .toList();
+    }
+
+    /**
+     * @return single line describing all the blocks found, or null, if
+     *         nothing was found
+     */
+    public @Nullable Text summary() {
+        if (entries.isEmpty())
+            return null;
+
+        final var message = Services.TEXT.literal("> ");
+        var first = true;
+        for (final var entry : entries()) {
+            if (!first)
+                message.append("; ");
+            first = false;
+            final var direction = Services.TEXT.translatable(direction(entry.nearest().subtract(origin)));
+            message.append(Services.TEXT.translatable(ENTRY, entry.count(), entry.name().formattedGold(),
+                    entry.distance(), direction));
+        }
+        return message;
+    }
+
+    public static String directionKey(String id) {
+        return ScannerMod.translationKey("report", "direction/" + id);
+    }
+
+    /**
+     * @return translation key of the direction, in which the offset points
+     */
+    public static String direction(V3i offset) {
+        final var dx = offset.getX();
+        final var dy = offset.getY();
+        final var dz = offset.getZ();
+        final var horizontal = Math.sqrt((double) dx * dx + (double) dz * dz);
+
+        if (Math.abs(dy) > 2 * horizontal)
+            return dy > 0 ? ABOVE : BELOW;
+        if (horizontal == 0)
+            return HERE;
+
+        // north is -Z, east is +X
+        final var degrees = Math.toDegrees(Math.atan2(dx, -dz));
+        final var sector = Math.floorMod(Math.round(degrees / 45), COMPASS.length);
+        return COMPASS[sector];
+    }
+}
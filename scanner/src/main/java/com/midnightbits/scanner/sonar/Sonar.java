@@ -18,33 +18,46 @@ import org.slf4j.helpers.MessageFormatter;
 
 import com.midnightbits.scanner.rt.core.ClientCore;
 import com.midnightbits.scanner.rt.core.Id;
+import com.midnightbits.scanner.rt.core.IdSet;
 import com.midnightbits.scanner.rt.core.Services;
+import com.midnightbits.scanner.rt.math.PackedPos;
 import com.midnightbits.scanner.rt.math.V3i;
-import com.midnightbits.scanner.utils.ConeOfBlocks;
+import com.midnightbits.scanner.utils.ConeTemplateCache;
+import com.midnightbits.scanner.utils.LongHashSet;
+import com.midnightbits.scanner.utils.ScanVolume;
 
 public final class Sonar {
     public static final int BLOCK_RADIUS = 2;
     public static final int BLOCK_DISTANCE = 16;
+    public static final int REVALIDATE_BUDGET = 32;
     public static Id[] INTERESTING_IDS = new Id[] {
             Id.ofVanilla("coal_ore"),
             Id.ofVanilla("deepslate_coal_ore"),
     };
 
     private final Echoes echoes;
+    private final ConeTemplateCache templates = new ConeTemplateCache();
     @Nullable
     private Reflections reflections;
     @Nullable
     private Consumer<EchoState> echoConsumer;
     private int blockDistance;
     private int blockRadius;
-    private Set<Id> blocks;
+    private IdSet blocks;
+    private boolean verbose = false;
+    @Nullable
+    private PickIndex pickIndex = null;
+    private int pickIndexVersion = 0;
+    @Nullable
+    private NuggetCuller culler = null;
+    private int cullerVersion = 0;
 
     private static final Logger LOGGER = LoggerFactory.getLogger("Sonar");
 
     public Sonar(int blockDistance, int blockRadius, int lifetime, Set<Id> interestingIds) {
         this.blockDistance = blockDistance;
         this.blockRadius = blockRadius;
-        this.blocks = interestingIds;
+        this.blocks = IdSet.of(interestingIds);
         this.echoes = new Echoes(lifetime);
     }
 
@@ -53,6 +66,7 @@ public final class Sonar {
                 settings.blockRadius(),
                 settings.lifetime(),
                 settings.interestingIds());
+        this.verbose = settings.verbose();
     }
 
     public Sonar() {
@@ -68,12 +82,17 @@ public final class Sonar {
                 settings.blockRadius(),
                 settings.lifetime(),
                 settings.interestingIds());
+        this.verbose = settings.verbose();
     }
 
     public void refresh(int blockDistance, int blockRadius, int lifetime, Set<Id> blocks) {
+        if (this.blockDistance != blockDistance || this.blockRadius != blockRadius) {
+            templates.clear();
+            cancelPing();
+        }
         this.blockDistance = blockDistance;
         this.blockRadius = blockRadius;
-        this.blocks = blocks;
+        this.blocks = IdSet.of(blocks);
         this.echoes.refresh(lifetime);
     }
 
@@ -81,23 +100,40 @@ public final class Sonar {
             @Nullable NotificationConsumer pingEnd) {
         if (reflections != null)
             return false;
-        reflections = Reflections.fromPlayerPov(client, blockDistance, blockRadius);
-        if (reflections == null)
+        final var current = Reflections.fromPlayerPov(client, templates, blockDistance, blockRadius, verbose);
+        if (current == null)
             return false;
+        reflections = current;
         pacer.registerCallback((now) -> {
-            if (!reflections.hasNextSlice()) {
+            if (reflections != current)
+                return false;
+            if (!current.hasNextSlice()) {
+                current.sendSummary();
                 reflections = null;
                 if (pingEnd != null)
                     pingEnd.apply();
                 return false;
             }
-            reflections.processSlice(waveConsumer, blocks);
+            current.processSlice(waveConsumer, blocks);
             return true;
         });
 
         return true;
     }
 
+    /**
+     * Stops the ping in flight, if there is one, together with the planning
+     * of its remaining shells. Called, when the ping is replaced by another
+     * one and when the world it was sent into goes away; the echoes found so
+     * far are kept, but no summary is sent.
+     */
+    public void cancelPing() {
+        if (reflections == null)
+            return;
+        reflections.cancel();
+        reflections = null;
+    }
+
     public void echoFrom(EchoState.Partial partial) {
         final var echo = echoes.echoFrom(partial);
         if (echoConsumer != null)
@@ -116,6 +152,36 @@ public final class Sonar {
         return echoes.nuggets();
     }
 
+    public int nuggetsVersion() {
+        return echoes.nuggetsVersion();
+    }
+
+    /**
+     * @return index of the echoes of current nuggets, rebuilt only after the
+     *         nuggets change
+     */
+    public PickIndex pickIndex() {
+        final var version = echoes.nuggetsVersion();
+        if (pickIndex == null || pickIndexVersion != version) {
+            pickIndex = new PickIndex(echoes.nuggets());
+            pickIndexVersion = version;
+        }
+        return pickIndex;
+    }
+
+    /**
+     * @return bounding volume hierarchy over current nuggets, rebuilt only
+     *         after the nuggets change
+     */
+    public NuggetCuller culler() {
+        final var version = echoes.nuggetsVersion();
+        if (culler == null || cullerVersion != version) {
+            culler = new NuggetCuller(echoes.nuggets());
+            cullerVersion = version;
+        }
+        return culler;
+    }
+
     public boolean remove(Predicate<EchoState> whichOnes) {
         return echoes.remove(whichOnes);
     }
@@ -124,78 +190,167 @@ public final class Sonar {
         return echoes.oldEchoes(client);
     }
 
+    public boolean removeExpired() {
+        return echoes.removeExpired();
+    }
+
+    /**
+     * Per-tick upkeep: drops expired echoes, checks the next
+     * {@link #REVALIDATE_BUDGET} echoes against the world and rebuilds the
+     * nuggets, which lost any echo.
+     *
+     * @return true, if the nuggets changed
+     */
+    public boolean maintain(ClientCore client) {
+        final var expired = echoes.removeExpired();
+        final var stale = echoes.revalidate(client, REVALIDATE_BUDGET);
+        return (expired || stale) && echoes.regroup();
+    }
+
+    public @Nullable EchoState echoAt(long packedPos) {
+        return echoes.get(packedPos);
+    }
+
+    /**
+     * Drops the echo at a block, which was changed in the world, regrouping
+     * only the nugget it belonged to.
+     *
+     * @return true, if an echo was removed
+     */
+    public boolean invalidate(long packedPos) {
+        if (!echoes.invalidate(packedPos))
+            return false;
+        echoes.regroup();
+        return true;
+    }
+
+    /**
+     * Drops all the echoes from a chunk column, which is no longer loaded.
+     *
+     * @return true, if any echo was removed
+     */
+    public boolean invalidateChunk(int chunkX, int chunkZ) {
+        if (!echoes.invalidateChunk(chunkX, chunkZ))
+            return false;
+        echoes.regroup();
+        return true;
+    }
+
     private static final class Reflections {
+        private static final int INITIAL_POSITIONS = 256;
         private final ClientCore client;
-        private final V3i center;
-        private final ConeOfBlocks.Slicer slices;
+        private final ScanPlan plan;
+        private final boolean verbose;
+        private final ScanReport report;
         private final Colors.Proxy VANILLA = new Colors.DirectValue(Colors.VANILLA);
         private final Map<Id, Echo> echoCache = new HashMap<>();
+        private long[] positions = new long[INITIAL_POSITIONS];
+        private final LongHashSet checkedSections = new LongHashSet();
+        private final LongHashSet promisingSections = new LongHashSet();
 
-        Reflections(ClientCore client, V3i center, int blockDistance, int blockRadius) {
+        Reflections(ClientCore client, V3i center, ConeTemplateCache templates, int blockDistance, int blockRadius,
+                boolean verbose) {
             this.client = client;
-            this.center = center;
-            this.slices = coneOfBlocksFromCamera(blockDistance, blockRadius).sliced();
+            this.verbose = verbose;
+            this.report = new ScanReport(center);
+            final var shells = templates
+                    .get(blockDistance, blockRadius, client.getCameraPitch(), client.getCameraYaw())
+                    .translated(center);
+            this.plan = new ScanPlan(shells, Services.PLATFORM.getBackgroundExecutor());
         }
 
         boolean hasNextSlice() {
-            return slices.hasNext();
+            return !plan.isExhausted();
         }
 
-        public void processSlice(ScanWaveConsumer waveConsumer, Set<Id> blocks) {
-            final var slice = slices.next();
-            final var dist = (int) Math.round((double) slice.distance() / ConeOfBlocks.Slicer.PRECISION);
+        void cancel() {
+            plan.cancel();
+        }
+
+        public void processSlice(ScanWaveConsumer waveConsumer, IdSet blocks) {
+            final var slice = plan.poll();
+            if (slice == null)
+                return;
+
+            final var dist = (int) Math.round((double) slice.distance() / ScanVolume.PRECISION);
             final Set<EchoState.Partial> echoes = new HashSet<>();
-            final var blockIds = blocks.stream().map(String::valueOf).collect(Collectors.joining(","));
 
-            for (final var pos : slice.items()) {
-                final var info = client.getBlockInfo(pos);
-                if (info == null) {
-                    break;
-                }
-                if (info.isAir()) {
-                    LOGGER.debug("({}) is air", pos);
-                    continue;
-                }
+            final var items = slice.items();
+            if (positions.length < items.size())
+                positions = new long[Math.max(items.size(), positions.length * 2)];
+            var count = 0;
+            for (int index = 0; index < items.size(); ++index) {
+                final var packed = items.getPacked(index);
+                if (sectionMayContain(packed, blocks))
+                    positions[count++] = packed;
+            }
 
-                final var id = info.getId();
-                if (!blocks.contains(id))
-                    continue;
-
-                LOGGER.debug("({}) > {}m {} ({})", pos, dist, id, blockIds);
-                var message = Services.TEXT
-                        .literal(MessageFormatter.format("> {}m ", dist).getMessage())
-                        .append(info.getName().formattedGold());
-                client.sendPlayerMessage(message, false);
-
-                echoCache.computeIfAbsent(id, (k) -> {
-                    var color = VANILLA;
-                    for (final var entry : Colors.BLOCK_TAG_COLORS.entrySet()) {
-                        if (info.inTag(entry.getKey())) {
-                            color = entry.getValue();
-                            break;
-                        }
+            if (count != 0) {
+                final var complete = client.getBlockInfos(positions, count, (index, info) -> {
+                    if (info.isAir())
+                        return;
+
+                    final var id = info.getId();
+                    if (!blocks.contains(id))
+                        return;
+
+                    final var pos = PackedPos.unpack(positions[index]);
+                    if (LOGGER.isDebugEnabled()) {
+                        final var blockIds = blocks.stream().map(String::valueOf).collect(Collectors.joining(","));
+                        LOGGER.debug("({}) > {}m {} ({})", pos, dist, id, blockIds);
+                    }
+
+                    if (verbose) {
+                        var message = Services.TEXT
+                                .literal(MessageFormatter.format("> {}m ", dist).getMessage())
+                                .append(info.getName().formattedGold());
+                        client.sendPlayerMessage(message, false);
+                    } else {
+                        report.add(id, info.getName(), pos, dist);
                     }
 
-                    return new Echo(k, color);
+                    echoCache.computeIfAbsent(id, (k) -> {
+                        final var color = info.getTagColor();
+                        return new Echo(k, color == null ? VANILLA : color);
+                    });
+
+                    echoes.add(new EchoState.Partial(pos, echoCache.get(id)));
                 });
 
-                echoes.add(new EchoState.Partial(pos, echoCache.get(id)));
+                // the world is gone; whatever was read is still shown, but
+                // there is nothing to read the rest of the ping from
+                if (!complete) {
+                    LOGGER.debug("Blocks at {}m could not be read, ending the ping", dist);
+                    plan.cancel();
+                }
             }
 
             waveConsumer.advance(slice.items(), echoes.stream().toList());
         }
 
-        static @Nullable Reflections fromPlayerPov(ClientCore client, int blockDistance, int blockRadius) {
+        void sendSummary() {
+            final var summary = report.summary();
+            if (summary != null)
+                client.sendPlayerMessage(summary, false);
+        }
+
+        private boolean sectionMayContain(long packed, IdSet blocks) {
+            final var sectionX = PackedPos.x(packed) >> 4;
+            final var sectionY = PackedPos.y(packed) >> 4;
+            final var sectionZ = PackedPos.z(packed) >> 4;
+            final var section = PackedPos.pack(sectionX, sectionY, sectionZ);
+            if (checkedSections.add(section) && client.sectionMayContain(sectionX, sectionY, sectionZ, blocks))
+                promisingSections.add(section);
+            return promisingSections.contains(section);
+        }
+
+        static @Nullable Reflections fromPlayerPov(ClientCore client, ConeTemplateCache templates, int blockDistance,
+                int blockRadius, boolean verbose) {
             final var pos = client.getPlayerPos();
             if (pos == null) {
                 return null;
             }
-            return new Reflections(client, pos, blockDistance, blockRadius);
-        }
-
-        private ConeOfBlocks coneOfBlocksFromCamera(int blockDistance, int blockRadius) {
-            return ConeOfBlocks.fromCamera(center, client.getCameraPitch(), client.getCameraYaw(),
-                    blockDistance, blockRadius);
+            return new Reflections(client, pos, templates, blockDistance, blockRadius, verbose);
         }
     };
 
@@ -0,0 +1,256 @@
+// Copyright (c) 2024 Marcin Zdun
+// This code is licensed under MIT license (see LICENSE for details)
+
+package com.midnightbits.scanner.sonar.graphics;
+
+import java.util.Arrays;
+
+/**
+ * Bounding volume hierarchy over a fixed set of boxes. The boxes are put in
+ * Morton order of their centers, so neighbours end up next to each other,
+ * and every node of the tree covers a contiguous range of that order.
+ * Culling skips every node outside the frustum together with all its
+ * children, and reports the boxes, which are visible, as ranges of
+ * {@link #item(int) slots}.
+ *
+ * <p>
+ * The tree never changes after it is built; a changed set of boxes gets a
+ * new tree. Culling does not allocate, once the {@link Ranges} it fills has
+ * grown large enough.
+ */
+public final class BoundsTree {
+    private static final int LEAF_SIZE = 4;
+    private static final int MORTON_BITS = 10;
+    private static final int MORTON_SCALE = (1 << MORTON_BITS) - 1;
+
+    /**
+     * Growable list of {@code [from, to)} ranges, kept between frames.
+     * Touching ranges are joined, when added, unless the list was sealed
+     * in between.
+     */
+    public static final class Ranges {
+        private int[] bounds = new int[32];
+        private int count = 0;
+        private int sealed = 0;
+
+        public void clear() {
+            count = 0;
+            sealed = 0;
+        }
+
+        /**
+         * Keeps the ranges added so far apart from the ones added next, e.g.
+         * when the next ranges count slots of another tree.
+         */
+        public void seal() {
+            sealed = count;
+        }
+
+        public int count() {
+            return count;
+        }
+
+        public int from(int range) {
+            return bounds[range * 2];
+        }
+
+        public int to(int range) {
+            return bounds[range * 2 + 1];
+        }
+
+        public void add(int from, int to) {
+            if (count > sealed && bounds[count * 2 - 1] == from) {
+                bounds[count * 2 - 1] = to;
+                return;
+            }
+            if (count * 2 == bounds.length)
+                bounds = Arrays.copyOf(bounds, bounds.length * 2);
+            bounds[count * 2] = from;
+            bounds[count * 2 + 1] = to;
+            ++count;
+        }
+
+        /**
+         * @return true, if the slot lies in any of the ranges from
+         *         {@code first} (inclusive) to {@code last} (exclusive)
+         */
+        public boolean contains(int first, int last, int slot) {
+            var lo = first;
+            var hi = last - 1;
+            while (lo <= hi) {
+                final var mid = (lo + hi) >>> 1;
+                if (slot < bounds[mid * 2])
+                    hi = mid - 1;
+                else if (slot >= bounds[mid * 2 + 1])
+                    lo = mid + 1;
+                else
+                    return true;
+            }
+            return false;
+        }
+    }
+
+    private final double[] boxes;
+    private final int[] items;
+    private final int[] slots;
+    private double[] nodeBounds;
+    private int[] nodeRanges;
+    private int[] nodeSkip;
+    private int nodeCount = 0;
+
+    /**
+     * @param boxes {@code minX, minY, minZ, maxX, maxY, maxZ} of each box
+     */
+    public BoundsTree(double[] boxes) {
+        this.boxes = boxes;
+        final var count = boxes.length / 6;
+        this.items = mortonOrder(boxes, count);
+        this.slots = new int[count];
+        for (int slot = 0; slot < count; ++slot)
+            slots[items[slot]] = slot;
+
+        final var maxNodes = Math.max(1, 2 * ((count + LEAF_SIZE - 1) / LEAF_SIZE));
+        nodeBounds = new double[maxNodes * 6];
+        nodeRanges = new int[maxNodes * 2];
+        nodeSkip = new int[maxNodes];
+        if (count > 0)
+            build(0, count);
+    }
+
+    public int size() {
+        return items.length;
+    }
+
+    /**
+     * @return index of the box, which is kept at the given slot
+     */
+    public int item(int slot) {
+        return items[slot];
+    }
+
+    /**
+     * @return slot, at which the box of the given index is kept
+     */
+    public int slotOf(int item) {
+        return slots[item];
+    }
+
+    /**
+     * Adds the ranges of slots of all the boxes the frustum contains.
+     * Nodes are visited in order of their slots, so the ranges come out
+     * sorted.
+     */
+    public void cull(FrustumFilter frustum, Ranges out) {
+        var node = 0;
+        while (node < nodeCount) {
+            final var box = node * 6;
+            if (!frustum.contains(nodeBounds[box], nodeBounds[box + 1], nodeBounds[box + 2], nodeBounds[box + 3],
+                    nodeBounds[box + 4], nodeBounds[box + 5])) {
+                node = nodeSkip[node];
+                continue;
+            }
+
+            final var from = nodeRanges[node * 2];
+            final var to = nodeRanges[node * 2 + 1];
+            if (to - from <= LEAF_SIZE) {
+                for (int slot = from; slot < to; ++slot) {
+                    final var item = items[slot] * 6;
+                    if (frustum.contains(boxes[item], boxes[item + 1], boxes[item + 2], boxes[item + 3],
+                            boxes[item + 4], boxes[item + 5]))
+                        out.add(slot, slot + 1);
+                }
+            }
+
+            // children follow their parent; a leaf has none
+            ++node;
+        }
+    }
+
+    private static int[] mortonOrder(double[] boxes, int count) {
+        var minX = Double.POSITIVE_INFINITY;
+        var minY = Double.POSITIVE_INFINITY;
+        var minZ = Double.POSITIVE_INFINITY;
+        var maxX = Double.NEGATIVE_INFINITY;
+        var maxY = Double.NEGATIVE_INFINITY;
+        var maxZ = Double.NEGATIVE_INFINITY;
+        for (int item = 0; item < count; ++item) {
+            final var box = item * 6;
+            minX = Math.min(minX, boxes[box] + boxes[box + 3]);
+            minY = Math.min(minY, boxes[box + 1] + boxes[box + 4]);
+            minZ = Math.min(minZ, boxes[box + 2] + boxes[box + 5]);
+            maxX = Math.max(maxX, boxes[box] + boxes[box + 3]);
+            maxY = Math.max(maxY, boxes[box + 1] + boxes[box + 4]);
+            maxZ = Math.max(maxZ, boxes[box + 2] + boxes[box + 5]);
+        }
+        final var extent = Math.max(maxX - minX, Math.max(maxY - minY, maxZ - minZ));
+        final var scale = extent > 0 ? MORTON_SCALE / extent : 0;
+
+        // twice the centers, so there is no division
+        final var keys = new long[count];
+        for (int item = 0; item < count; ++item) {
+            final var box = item * 6;
+            final var x = (int) ((boxes[box] + boxes[box + 3] - minX) * scale);
+            final var y = (int) ((boxes[box + 1] + boxes[box + 4] - minY) * scale);
+            final var z = (int) ((boxes[box + 2] + boxes[box + 5] - minZ) * scale);
+            final long code = spread(x) | (spread(y) << 1) | (spread(z) << 2);
+            keys[item] = (code << 31) | item;
+        }
+        Arrays.sort(keys);
+
+        final var order = new int[count];
+        for (int slot = 0; slot < count; ++slot)
+            order[slot] = (int) (keys[slot] & Integer.MAX_VALUE);
+        return order;
+    }
+
+    private static long spread(int value) {
+        long bits = value & MORTON_SCALE;
+        bits = (bits | (bits << 16)) & 0x030000FFL;
+        bits = (bits | (bits << 8)) & 0x0300F00FL;
+        bits = (bits | (bits << 4)) & 0x030C30C3L;
+        bits = (bits | (bits << 2)) & 0x09249249L;
+        return bits;
+    }
+
+    /**
+     * Nodes are kept in pre-order: the left child follows its parent, and
+     * each node remembers the node, which follows its whole subtree.
+     */
+    private int build(int from, int to) {
+        final var node = nodeCount++;
+        if (node * 6 >= nodeBounds.length) {
+            nodeBounds = Arrays.copyOf(nodeBounds, nodeBounds.length * 2);
+            nodeRanges = Arrays.copyOf(nodeRanges, nodeRanges.length * 2);
+            nodeSkip = Arrays.copyOf(nodeSkip, nodeSkip.length * 2);
+        }
+        nodeRanges[node * 2] = from;
+        nodeRanges[node * 2 + 1] = to;
+
+        final var box = node * 6;
+        Arrays.fill(nodeBounds, box, box + 3, Double.POSITIVE_INFINITY);
+        Arrays.fill(nodeBounds, box + 3, box + 6, Double.NEGATIVE_INFINITY);
+        if (to - from <= LEAF_SIZE) {
+            for (int slot = from; slot < to; ++slot) {
+                final var item = items[slot] * 6;
+                for (int axis = 0; axis < 3; ++axis) {
+                    nodeBounds[box + axis] = Math.min(nodeBounds[box + axis], boxes[item + axis]);
+                    nodeBounds[box + 3 + axis] = Math.max(nodeBounds[box + 3 + axis], boxes[item + 3 + axis]);
+                }
+            }
+        } else {
+            final var mid = (from + to) >>> 1;
+            final var left = build(from, mid);
+            final var right = build(mid, to);
+            for (final var child : new int[] { left, right }) {
+                for (int axis = 0; axis < 3; ++axis) {
+                    nodeBounds[box + axis] = Math.min(nodeBounds[box + axis], nodeBounds[child * 6 + axis]);
+                    nodeBounds[box + 3 + axis] = Math.max(nodeBounds[box + 3 + axis],
+                            nodeBounds[child * 6 + 3 + axis]);
+                }
+            }
+        }
+
+        nodeSkip[node] = nodeCount;
+        return node;
+    }
+}
@@ -0,0 +1,119 @@
+// Copyright (c) 2024 Marcin Zdun
+// This code is licensed under MIT license (see LICENSE for details)
+
+package com.midnightbits.scanner.sonar.graphics;
+
+import java.util.Arrays;
+
+import org.joml.Vector3f;
+
+/**
+ * Keeps a set of points ordered from the furthest to the closest to the
+ * camera, across frames. Between two frames the camera barely moves, so the
+ * previous order is almost right: it is kept as is, until the camera moves
+ * far enough, and then fixed with an insertion sort, which is linear for an
+ * almost sorted array. A jump, which moves too many points, falls back to a
+ * full sort.
+ *
+ * <p>
+ * Points at the same distance are kept in the order they were given, so the
+ * order does not depend on the path the camera took.
+ */
+public final class DepthOrder {
+    public static final float THRESHOLD = .25F;
+    private static final int MAX_SHIFTS_PER_POINT = 4;
+
+    private final float[] centers;
+    private final float[] distances;
+    private final int[] order;
+    private final Vector3f sortedFor = new Vector3f();
+    private boolean sorted = false;
+
+    /**
+     * @param centers points to keep in order, as {@code x, y, z} triples
+     */
+    public DepthOrder(float[] centers) {
+        this.centers = centers;
+        this.distances = new float[centers.length / 3];
+        this.order = new int[distances.length];
+    }
+
+    public int size() {
+        return order.length;
+    }
+
+    /**
+     * @return indices of the points, furthest first; the array is owned by
+     *         this object and changes with the next call
+     */
+    public int[] furthestToClosest(Vector3f camera) {
+        if (sorted && sortedFor.distanceSquared(camera) < THRESHOLD * THRESHOLD)
+            return order;
+
+        for (int index = 0; index < distances.length; ++index) {
+            final var pos = index * 3;
+            distances[index] = Vector3f.distanceSquared(centers[pos], centers[pos + 1], centers[pos + 2], camera.x,
+                    camera.y, camera.z);
+        }
+
+        if (!sorted || !insertionSort())
+            fullSort();
+
+        sorted = true;
+        sortedFor.set(camera);
+        return order;
+    }
+
+    /**
+     * @return square of the distance of the furthest point, as seen from the
+     *         camera the points were last sorted for
+     */
+    public float furthestDistanceSquared(Vector3f camera) {
+        final var indices = furthestToClosest(camera);
+        return indices.length == 0 ? 0 : distances[indices[0]];
+    }
+
+    /**
+     * @return key, which sorts in ascending order from the furthest distance
+     *         to the closest, with ties kept in the order of their indices
+     */
+    static long furthestFirstKey(float distance, int index) {
+        // distances are never negative, so their bits sort the same way the
+        // floats do; inverting them puts the furthest first
+        final var bits = Float.floatToIntBits(distance);
+        return ((long) (Integer.MAX_VALUE - bits) << 32) | index;
+    }
+
+    private boolean before(int lhs, int rhs) {
+        final var lhsDistance = distances[lhs];
+        final var rhsDistance = distances[rhs];
+        if (lhsDistance != rhsDistance)
+            return lhsDistance > rhsDistance;
+        return lhs < rhs;
+    }
+
+    private boolean insertionSort() {
+        var budget = (long) order.length * MAX_SHIFTS_PER_POINT;
+        for (int next = 1; next < order.length; ++next) {
+            final var item = order[next];
+            var hole = next;
+            while (hole > 0 && before(item, order[hole - 1])) {
+                if (--budget < 0)
+                    return false;
+                order[hole] = order[hole - 1];
+                --hole;
+            }
+            order[hole] = item;
+        }
+        return true;
+    }
+
+    private void fullSort() {
+        final var keys = new long[order.length];
+        for (int index = 0; index < keys.length; ++index)
+            keys[index] = furthestFirstKey(distances[index], index);
+        Arrays.sort(keys);
+        for (int index = 0; index < keys.length; ++index)
+            order[index] = (int) keys[index];
+    }
+}
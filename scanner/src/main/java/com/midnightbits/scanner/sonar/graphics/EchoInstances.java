@@ -0,0 +1,272 @@
+// Copyright (c) 2024 Marcin Zdun
+// This code is licensed under MIT license (see LICENSE for details)
+
+package com.midnightbits.scanner.sonar.graphics;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+import org.jetbrains.annotations.Nullable;
+import org.joml.Vector3f;
+
+import com.midnightbits.scanner.sonar.EchoNugget;
+import com.midnightbits.scanner.sonar.EchoState;
+
+/**
+ * Instance records of echoes, for a shader, which expands the unit cube on
+ * the GPU. A record takes 16 bytes, as four ints:
+ *
+ * <ol>
+ * <li>X (low half) and Y (high half) of the block, as shorts relative to the
+ * origin of the batch,</li>
+ * <li>Z of the block, the same way, with the high half left empty,</li>
+ * <li>color of the faces, as {@code alpha | rgb24},</li>
+ * <li>side mask in bits 0-5, edge mask in bits 6-17 and the
+ * {@link #HIGHLIGHT} flag.</li>
+ * </ol>
+ *
+ * <p>
+ * Read in little-endian order, the first two ints are an {@code ivec4} of
+ * shorts and the color is four normalized bytes, {@code b, g, r, a}.
+ * Positions are kept relative to the origin, so they stay exact far away
+ * from the world's center; echoes further than a short away from it are
+ * left out.
+ */
+public final class EchoInstances {
+    public static final int RECORD_INTS = 4;
+    public static final int RECORD_BYTES = RECORD_INTS * Integer.BYTES;
+
+    public static final int EDGES_SHIFT = 6;
+    public static final int SIDES_MASK = Pixel.ALL_SIDES;
+    public static final int EDGES_MASK = Pixel.ALL_EDGES << EDGES_SHIFT;
+
+    /**
+     * Edges of the record are drawn in the highlight color, instead of the
+     * opaque color of the echo.
+     */
+    public static final int HIGHLIGHT = 1 << 18;
+
+    /**
+     * Vertices of the unit cube shared by all the instances drawn with
+     * triangles, as {@code x, y, z, side} quads, six per side.
+     */
+    public static final float[] CUBE_FACES = withParts(Pixel.TRIANGLE_XYZ, 6);
+
+    /**
+     * Vertices of the unit cube shared by all the instances drawn with
+     * lines, as {@code x, y, z, edge} quads, two per edge.
+     */
+    public static final float[] CUBE_EDGES = withParts(Pixel.EDGE_XYZ, 2);
+
+    private static final int INITIAL_RECORDS = 1024;
+    private static final int SHORT_MASK = 0xFFFF;
+
+    private int[] records = new int[INITIAL_RECORDS * RECORD_INTS];
+    private int[] sorted = new int[INITIAL_RECORDS * RECORD_INTS];
+    private int count = 0;
+    private int originX = 0;
+    private int originY = 0;
+    private int originZ = 0;
+    private int flags = 0;
+    private final Consumer<EchoState> adder = this::addFlagged;
+    private int[] depthBlocks = new int[INITIAL_RECORDS * 3];
+    private int depthOriginX = 0;
+    private int depthOriginY = 0;
+    private int depthOriginZ = 0;
+    private DepthOrder depth = null;
+    private final Vector3f depthCamera = new Vector3f();
+
+    /**
+     * Starts a new batch. The records kept so far are dropped, but their
+     * array is kept, so a batch kept for the life of a renderer does not
+     * allocate, once it has grown to the size of a frame.
+     */
+    public EchoInstances begin(int originX, int originY, int originZ) {
+        this.originX = originX;
+        this.originY = originY;
+        this.originZ = originZ;
+        this.count = 0;
+        return this;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public int originX() {
+        return originX;
+    }
+
+    public int originY() {
+        return originY;
+    }
+
+    public int originZ() {
+        return originZ;
+    }
+
+    /**
+     * @return records of this batch; only the first {@link #size()} times
+     *         {@link #RECORD_INTS} values are valid
+     */
+    public int[] records() {
+        return records;
+    }
+
+    /**
+     * @return false, if the block is too far from the origin to be recorded
+     */
+    public boolean add(int x, int y, int z, int argb32, int sides, int edges, int flags) {
+        final var dx = x - originX;
+        final var dy = y - originY;
+        final var dz = z - originZ;
+        if (dx != (short) dx || dy != (short) dy || dz != (short) dz)
+            return false;
+
+        if ((count + 1) * RECORD_INTS > records.length)
+            records = Arrays.copyOf(records, records.length * 2);
+
+        final var record = count * RECORD_INTS;
+        records[record] = (dx & SHORT_MASK) | (dy << 16);
+        records[record + 1] = dz & SHORT_MASK;
+        records[record + 2] = argb32;
+        records[record + 3] = (sides & SIDES_MASK) | ((edges << EDGES_SHIFT) & EDGES_MASK) | flags;
+        ++count;
+        return true;
+    }
+
+    public boolean add(EchoState echo, int flags) {
+        final var pos = echo.position();
+        return add(pos.getX(), pos.getY(), pos.getZ(), echo.alpha | echo.color().rgb24(), echo.sides, echo.edges,
+                flags);
+    }
+
+    /**
+     * Records the echoes of the nuggets the plan draws block by block; the
+     * other levels are drawn by the plan itself.
+     */
+    public void add(LevelOfDetail.Plan plan, @Nullable EchoNugget highlighted) {
+        final var visible = plan.visible();
+        for (int index = 0; index < plan.size(); ++index) {
+            if (plan.level(index) != LevelOfDetail.BLOCKS)
+                continue;
+            flags = visible.get(index) == highlighted ? HIGHLIGHT : 0;
+            visible.forEachEcho(index, adder);
+        }
+        flags = 0;
+    }
+
+    private void addFlagged(EchoState echo) {
+        add(echo, flags);
+    }
+
+    /**
+     * Reorders the records, so the one furthest from the camera comes first.
+     * The shader draws the instances in the order of their records, so the
+     * translucent faces blend the same way the faces of a nugget mesh do.
+     * Records at the same distance keep the order they were added in.
+     *
+     * <p>
+     * The order is kept across the batches, as long as they record the same
+     * blocks in the same order, so the next frame only fixes the few blocks,
+     * which changed places, once the camera moved far enough.
+     */
+    public void sortFurthestToClosest(Vector3f camera) {
+        if (count < 2)
+            return;
+
+        if (!sameBlocks())
+            rebuildDepth();
+        if (sorted.length < records.length)
+            sorted = new int[records.length];
+
+        depthCamera.set(camera.x - depthOriginX, camera.y - depthOriginY, camera.z - depthOriginZ);
+        final var order = depth.furthestToClosest(depthCamera);
+        for (int pos = 0; pos < count; ++pos)
+            System.arraycopy(records, order[pos] * RECORD_INTS, sorted, pos * RECORD_INTS, RECORD_INTS);
+
+        final var previous = records;
+        records = sorted;
+        sorted = previous;
+    }
+
+    private boolean sameBlocks() {
+        if (depth == null || depth.size() != count)
+            return false;
+
+        for (int index = 0; index < count; ++index) {
+            final var block = index * 3;
+            if (depthBlocks[block] != originX + x(records, index)
+                    || depthBlocks[block + 1] != originY + y(records, index)
+                    || depthBlocks[block + 2] != originZ + z(records, index))
+                return false;
+        }
+        return true;
+    }
+
+    private void rebuildDepth() {
+        if (depthBlocks.length < count * 3)
+            depthBlocks = new int[Math.max(count * 3, depthBlocks.length * 2)];
+
+        // centers are kept relative to the origin of the batch the order was
+        // built for, so they stay exact far away from the world's center
+        depthOriginX = originX;
+        depthOriginY = originY;
+        depthOriginZ = originZ;
+        final var centers = new float[count * 3];
+        for (int index = 0; index < count; ++index) {
+            final var block = index * 3;
+            depthBlocks[block] = originX + x(records, index);
+            depthBlocks[block + 1] = originY + y(records, index);
+            depthBlocks[block + 2] = originZ + z(records, index);
+            centers[block] = x(records, index) + .5F;
+            centers[block + 1] = y(records, index) + .5F;
+            centers[block + 2] = z(records, index) + .5F;
+        }
+        depth = new DepthOrder(centers);
+    }
+
+    public static int x(int[] records, int index) {
+        return lowShort(records[index * RECORD_INTS]);
+    }
+
+    public static int y(int[] records, int index) {
+        return records[index * RECORD_INTS] >> 16;
+    }
+
+    public static int z(int[] records, int index) {
+        return lowShort(records[index * RECORD_INTS + 1]);
+    }
+
+    public static int argb32(int[] records, int index) {
+        return records[index * RECORD_INTS + 2];
+    }
+
+    public static int sides(int[] records, int index) {
+        return records[index * RECORD_INTS + 3] & SIDES_MASK;
+    }
+
+    public static int edges(int[] records, int index) {
+        return (records[index * RECORD_INTS + 3] & EDGES_MASK) >>> EDGES_SHIFT;
+    }
+
+    public static boolean isHighlighted(int[] records, int index) {
+        return (records[index * RECORD_INTS + 3] & HIGHLIGHT) != 0;
+    }
+
+    private static int lowShort(int packed) {
+        return (short) packed;
+    }
+
+    private static float[] withParts(float[] xyz, int verticesPerPart) {
+        final var vertices = xyz.length / 3;
+        final var result = new float[vertices * 4];
+        for (int vertex = 0; vertex < vertices; ++vertex) {
+            result[vertex * 4] = xyz[vertex * 3];
+            result[vertex * 4 + 1] = xyz[vertex * 3 + 1];
+            result[vertex * 4 + 2] = xyz[vertex * 3 + 2];
+            result[vertex * 4 + 3] = vertex / verticesPerPart;
+        }
+        return result;
+    }
+}
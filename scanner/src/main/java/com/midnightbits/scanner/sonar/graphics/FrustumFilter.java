@@ -10,8 +10,15 @@ public interface FrustumFilter {
     default boolean contains(EchoNugget nugget) {
         return contains(nugget.getBounds());
     }
+
     default boolean contains(EchoState echoState) {
-        return contains(echoState.getBounds());
+        final var pos = echoState.position();
+        return contains(pos.getX(), pos.getY(), pos.getZ(), pos.getX() + 1, pos.getY() + 1, pos.getZ() + 1);
+    }
+
+    default boolean contains(EchoState.AABB bounds) {
+        return contains(bounds.minX(), bounds.minY(), bounds.minZ(), bounds.maxX(), bounds.maxY(), bounds.maxZ());
     }
-    boolean contains(EchoState.AABB bounds);
+
+    boolean contains(double minX, double minY, double minZ, double maxX, double maxY, double maxZ);
 }
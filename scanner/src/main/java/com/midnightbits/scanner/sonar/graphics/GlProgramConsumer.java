@@ -7,4 +7,71 @@ import org.joml.Matrix4f;
 
 public interface GlProgramConsumer {
     void vertexColor(Matrix4f matrix, float x, float y, float z, int argb32);
+
+    /**
+     * Emits {@code count} vertices, starting with vertex {@code from} of the
+     * {@code x, y, z} triples, each moved by {@code dx, dy, dz}, all with the
+     * same color.
+     */
+    default void vertices(Matrix4f matrix, float dx, float dy, float dz, float[] xyz, int from, int count,
+            int argb32) {
+        final var end = (from + count) * 3;
+        for (int pos = from * 3; pos < end; pos += 3)
+            vertexColor(matrix, xyz[pos] + dx, xyz[pos + 1] + dy, xyz[pos + 2] + dz, argb32);
+    }
+
+    /**
+     * Emits first {@code count} vertices of the {@code x, y, z} triples, each
+     * with its own color.
+     */
+    default void vertices(Matrix4f matrix, float[] xyz, int[] argb32, int count) {
+        for (int index = 0; index < count; ++index)
+            vertexColor(matrix, xyz[index * 3], xyz[index * 3 + 1], xyz[index * 3 + 2], argb32[index]);
+    }
+
+    /**
+     * Emits triangles of the sides of a unit cube, which are present in the
+     * side mask, with the cube's lower corner at {@code x, y, z}.
+     */
+    default void cube(Matrix4f matrix, float x, float y, float z, int sides, int argb32) {
+        while (sides != 0) {
+            final var side = Integer.numberOfTrailingZeros(sides);
+            sides &= sides - 1;
+            vertices(matrix, x, y, z, Pixel.TRIANGLE_XYZ, side * 6, 6, argb32);
+        }
+    }
+
+    /**
+     * Emits lines of the edges of a unit cube, which are present in the edge
+     * mask, with the cube's lower corner at {@code x, y, z}.
+     */
+    default void cubeEdges(Matrix4f matrix, float x, float y, float z, int edges, int argb32) {
+        while (edges != 0) {
+            final var edge = Integer.numberOfTrailingZeros(edges);
+            edges &= edges - 1;
+            vertices(matrix, x, y, z, Pixel.EDGE_XYZ, edge * 2, 2, argb32);
+        }
+    }
+
+    /**
+     * Emits triangles of all the sides of a box, with its lower corner at
+     * {@code x, y, z} and the given size.
+     */
+    default void box(Matrix4f matrix, float x, float y, float z, float sizeX, float sizeY, float sizeZ,
+            int argb32) {
+        final var xyz = Pixel.TRIANGLE_XYZ;
+        for (int pos = 0; pos < xyz.length; pos += 3)
+            vertexColor(matrix, x + xyz[pos] * sizeX, y + xyz[pos + 1] * sizeY, z + xyz[pos + 2] * sizeZ, argb32);
+    }
+
+    /**
+     * Emits lines of all the edges of a box, with its lower corner at
+     * {@code x, y, z} and the given size.
+     */
+    default void boxEdges(Matrix4f matrix, float x, float y, float z, float sizeX, float sizeY, float sizeZ,
+            int argb32) {
+        final var xyz = Pixel.EDGE_XYZ;
+        for (int pos = 0; pos < xyz.length; pos += 3)
+            vertexColor(matrix, x + xyz[pos] * sizeX, y + xyz[pos + 1] * sizeY, z + xyz[pos + 2] * sizeZ, argb32);
+    }
 }
@@ -0,0 +1,245 @@
+// Copyright (c) 2024 Marcin Zdun
+// This code is licensed under MIT license (see LICENSE for details)
+
+package com.midnightbits.scanner.sonar.graphics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.midnightbits.scanner.rt.math.V3i;
+import com.midnightbits.scanner.sonar.EchoState;
+
+/**
+ * Builds a {@link NuggetMesh} from echoes, merging visible faces, which lie
+ * in the same plane, face the same way and have the same color, into maximal
+ * rectangles, and outline edges, which lie on the same line, into single
+ * segments.
+ *
+ * <p>
+ * The result covers exactly the same faces and lines {@link EchoState#draw}
+ * and {@link EchoState#sketch} would emit for each echo, but a flat wall of
+ * {@code n x m} blocks becomes two triangles instead of {@code 2nm}.
+ */
+public final class GreedyMesher {
+    // indexed by side, as in Pixel.triangles: Z0, Y0, Z1, Y1, X0, X1
+    static final int[] NORMAL_AXIS = { 2, 1, 2, 1, 0, 0 };
+    static final int[] NORMAL_OFFSET = { 0, 0, 1, 1, 0, 1 };
+    static final int[] U_AXIS = { 0, 0, 0, 0, 1, 1 };
+    static final int[] V_AXIS = { 1, 2, 1, 2, 2, 2 };
+
+    private static final int EDGES_PER_AXIS = 4;
+
+    private record Line(int axis, int a, int b, int color) {
+    }
+
+    private static final class IntList {
+        int[] items = new int[16];
+        int size = 0;
+
+        void add(int value) {
+            if (size == items.length)
+                items = Arrays.copyOf(items, size * 2);
+            items[size++] = value;
+        }
+    }
+
+    private final List<NuggetMesh.Material> materials = new ArrayList<>();
+    private final List<Colors.Proxy> lineColors = new ArrayList<>();
+    private final Map<Long, IntList> planes = new HashMap<>();
+    private final Map<Line, IntList> lines = new HashMap<>();
+    private int[] quads = new int[NuggetMesh.QUAD_INTS * 16];
+    private int quadCount = 0;
+    private int[] segments = new int[NuggetMesh.SEGMENT_INTS * 16];
+    private int segmentCount = 0;
+
+    public static NuggetMesh mesh(Collection<EchoState> echoes) {
+        if (echoes.isEmpty())
+            return NuggetMesh.EMPTY;
+        return new GreedyMesher().build(echoes);
+    }
+
+    private GreedyMesher() {
+    }
+
+    private NuggetMesh build(Collection<EchoState> echoes) {
+        var minX = Integer.MAX_VALUE;
+        var minY = Integer.MAX_VALUE;
+        var minZ = Integer.MAX_VALUE;
+        for (final var echo : echoes) {
+            minX = Math.min(minX, echo.position().getX());
+            minY = Math.min(minY, echo.position().getY());
+            minZ = Math.min(minZ, echo.position().getZ());
+        }
+        final var origin = new V3i(minX, minY, minZ);
+
+        final var pos = new int[3];
+        for (final var echo : echoes) {
+            pos[0] = echo.position().getX() - minX;
+            pos[1] = echo.position().getY() - minY;
+            pos[2] = echo.position().getZ() - minZ;
+            collectFaces(echo, pos);
+            collectEdges(echo, pos);
+        }
+
+        planes.forEach(this::mergePlane);
+        lines.forEach(this::mergeLine);
+
+        return new NuggetMesh(origin, quads, quadCount, List.copyOf(materials), segments, segmentCount,
+                List.copyOf(lineColors));
+    }
+
+    private void collectFaces(EchoState echo, int[] pos) {
+        if (echo.alpha == 0 || echo.sides == 0)
+            return;
+
+        final var material = materialOf(echo);
+        for (int side = 0; side < Pixel.triangles.length; ++side) {
+            if ((echo.sides & (1 << side)) == 0)
+                continue;
+
+            final var key = ((long) side << 32) | pos[NORMAL_AXIS[side]];
+            final var cells = planes.computeIfAbsent(key, k -> new IntList());
+            cells.add(pos[U_AXIS[side]]);
+            cells.add(pos[V_AXIS[side]]);
+            cells.add(material);
+        }
+    }
+
+    private void collectEdges(EchoState echo, int[] pos) {
+        if (echo.edges == 0)
+            return;
+
+        final var color = lineColorOf(echo.color());
+        for (int edgeIndex = 0; edgeIndex < Pixel.edges.length; ++edgeIndex) {
+            if ((echo.edges & (1 << edgeIndex)) == 0)
+                continue;
+
+            final var start = Pixel.edges[edgeIndex].start();
+            final var axis = edgeIndex / EDGES_PER_AXIS;
+            final int[] point = { pos[0] + start.x(), pos[1] + start.y(), pos[2] + start.z() };
+            final var line = new Line(axis, point[(axis + 1) % 3], point[(axis + 2) % 3], color);
+            lines.computeIfAbsent(line, k -> new IntList()).add(point[axis]);
+        }
+    }
+
+    private int materialOf(EchoState echo) {
+        for (int index = 0; index < materials.size(); ++index) {
+            final var material = materials.get(index);
+            if (material.alpha() == echo.alpha && material.color().equals(echo.color()))
+                return index;
+        }
+        materials.add(new NuggetMesh.Material(echo.color(), echo.alpha));
+        return materials.size() - 1;
+    }
+
+    private int lineColorOf(Colors.Proxy color) {
+        for (int index = 0; index < lineColors.size(); ++index) {
+            if (lineColors.get(index).equals(color))
+                return index;
+        }
+        lineColors.add(color);
+        return lineColors.size() - 1;
+    }
+
+    private void mergePlane(long key, IntList cells) {
+        final var side = (int) (key >>> 32);
+        final var plane = (int) key;
+
+        var minU = Integer.MAX_VALUE;
+        var minV = Integer.MAX_VALUE;
+        var maxU = Integer.MIN_VALUE;
+        var maxV = Integer.MIN_VALUE;
+        for (int index = 0; index < cells.size; index += 3) {
+            minU = Math.min(minU, cells.items[index]);
+            maxU = Math.max(maxU, cells.items[index]);
+            minV = Math.min(minV, cells.items[index + 1]);
+            maxV = Math.max(maxV, cells.items[index + 1]);
+        }
+
+        final var width = maxU - minU + 1;
+        final var height = maxV - minV + 1;
+
+        // zero is empty, so materials are stored shifted by one
+        final var grid = new int[width * height];
+        for (int index = 0; index < cells.size; index += 3) {
+            grid[(cells.items[index + 1] - minV) * width + cells.items[index] - minU] = cells.items[index + 2] + 1;
+        }
+
+        for (int v = 0; v < height; ++v) {
+            for (int u = 0; u < width; ++u) {
+                final var material = grid[v * width + u];
+                if (material == 0)
+                    continue;
+
+                var w = 1;
+                while (u + w < width && grid[v * width + u + w] == material)
+                    ++w;
+
+                var h = 1;
+                grow: while (v + h < height) {
+                    for (int k = 0; k < w; ++k) {
+                        if (grid[(v + h) * width + u + k] != material)
+                            break grow;
+                    }
+                    ++h;
+                }
+
+                for (int row = v; row < v + h; ++row)
+                    Arrays.fill(grid, row * width + u, row * width + u + w, 0);
+
+                addQuad(side, plane, u + minU, v + minV, w, h, material - 1);
+            }
+        }
+    }
+
+    private void mergeLine(Line line, IntList starts) {
+        final var items = Arrays.copyOf(starts.items, starts.size);
+        Arrays.sort(items);
+
+        var from = items[0];
+        var to = from + 1;
+        for (int index = 1; index < items.length; ++index) {
+            final var start = items[index];
+            if (start <= to) {
+                // touching or repeated
+                to = Math.max(to, start + 1);
+                continue;
+            }
+            addSegment(line, from, to - from);
+            from = start;
+            to = start + 1;
+        }
+        addSegment(line, from, to - from);
+    }
+
+    private void addQuad(int side, int plane, int u, int v, int width, int height, int material) {
+        if ((quadCount + 1) * NuggetMesh.QUAD_INTS > quads.length)
+            quads = Arrays.copyOf(quads, quads.length * 2);
+
+        final var offset = quadCount++ * NuggetMesh.QUAD_INTS;
+        quads[offset] = side;
+        quads[offset + 1 + NORMAL_AXIS[side]] = plane;
+        quads[offset + 1 + U_AXIS[side]] = u;
+        quads[offset + 1 + V_AXIS[side]] = v;
+        quads[offset + 4] = width;
+        quads[offset + 5] = height;
+        quads[offset + 6] = material;
+    }
+
+    private void addSegment(Line line, int start, int length) {
+        if ((segmentCount + 1) * NuggetMesh.SEGMENT_INTS > segments.length)
+            segments = Arrays.copyOf(segments, segments.length * 2);
+
+        final var offset = segmentCount++ * NuggetMesh.SEGMENT_INTS;
+        segments[offset] = line.axis();
+        segments[offset + 1 + line.axis()] = start;
+        segments[offset + 1 + (line.axis() + 1) % 3] = line.a();
+        segments[offset + 1 + (line.axis() + 2) % 3] = line.b();
+        segments[offset + 4] = length;
+        segments[offset + 5] = line.color();
+    }
+}
@@ -0,0 +1,290 @@
+// Copyright (c) 2024 Marcin Zdun
+// This code is licensed under MIT license (see LICENSE for details)
+
+package com.midnightbits.scanner.sonar.graphics;
+
+import java.util.Arrays;
+
+import org.jetbrains.annotations.Nullable;
+import org.joml.Vector3f;
+
+import com.midnightbits.scanner.sonar.EchoNugget;
+import com.midnightbits.scanner.sonar.NuggetCuller;
+
+/**
+ * Picks, for every visible nugget, how much of it to draw. Nuggets close to
+ * the camera are drawn {@link #BLOCKS block by block}, the ones further away
+ * as their merged {@link #HULL}, and the furthest as a single {@link #BOX}
+ * around them. Past the near distance, nuggets also fade out with distance.
+ *
+ * <p>
+ * On top of the distances, the plan keeps to a vertex budget: while the
+ * nuggets would take more vertices than the budget, the furthest ones are
+ * moved a level down, starting with boxes becoming {@link #HIDDEN}, so a
+ * frame takes about the same number of vertices, however many nuggets are
+ * around.
+ */
+public final class LevelOfDetail {
+    public static final int BLOCKS = 0;
+    public static final int HULL = 1;
+    public static final int BOX = 2;
+    public static final int HIDDEN = 3;
+
+    public static final int BOX_VERTICES = Pixel.TRIANGLE_XYZ.length / 3 + Pixel.EDGE_XYZ.length / 3;
+    public static final double MIN_FADE = .25;
+
+    public static final LevelOfDetail DEFAULT = new LevelOfDetail(24, 64, 128, 250_000);
+
+    private final double nearDistance;
+    private final double farDistance;
+    private final double fadeDistance;
+    private final int vertexBudget;
+
+    /**
+     * @param nearDistance nuggets closer than this are drawn block by block
+     *                     and never fade
+     * @param farDistance  nuggets further than this are drawn as boxes
+     * @param fadeDistance at this distance and further, nuggets are drawn
+     *                     with {@link #MIN_FADE} of their alpha
+     * @param vertexBudget number of vertices a plan tries to keep under
+     */
+    public LevelOfDetail(double nearDistance, double farDistance, double fadeDistance, int vertexBudget) {
+        this.nearDistance = nearDistance;
+        this.farDistance = Math.max(nearDistance, farDistance);
+        this.fadeDistance = Math.max(nearDistance, fadeDistance);
+        this.vertexBudget = vertexBudget;
+    }
+
+    public int levelFor(double distance) {
+        if (distance < nearDistance)
+            return BLOCKS;
+        return distance < farDistance ? HULL : BOX;
+    }
+
+    /**
+     * @return part of the alpha a nugget at this distance keeps
+     */
+    public double fade(double distance) {
+        if (distance <= nearDistance)
+            return 1;
+        if (distance >= fadeDistance)
+            return MIN_FADE;
+        final var step = (distance - nearDistance) / (fadeDistance - nearDistance);
+        return 1 - step * (1 - MIN_FADE);
+    }
+
+    /**
+     * @return alpha channel of {@code argb32}, scaled by the fade, in place
+     *         of the alpha byte
+     */
+    public static int fadeAlpha(int argb32, double fade) {
+        return (int) Math.round((argb32 >>> 24) * fade) << 24;
+    }
+
+    public static int vertices(EchoNugget nugget, int level) {
+        return switch (level) {
+            case BLOCKS -> nugget.blockVertices();
+            case HULL -> nugget.mesh().triangleVertices() + nugget.mesh().lineVertices();
+            case BOX -> BOX_VERTICES;
+            default -> 0;
+        };
+    }
+
+    /**
+     * @return distance from the camera to the closest point of the nugget's
+     *         bounds, or zero, if the camera is inside them
+     */
+    public static double distance(EchoNugget nugget, Vector3f camera) {
+        final var bounds = nugget.getBounds();
+        final var dx = Math.max(0, Math.max(bounds.minX() - camera.x, camera.x - bounds.maxX()));
+        final var dy = Math.max(0, Math.max(bounds.minY() - camera.y, camera.y - bounds.maxY()));
+        final var dz = Math.max(0, Math.max(bounds.minZ() - camera.z, camera.z - bounds.maxZ()));
+        return Math.sqrt(dx * dx + dy * dy + dz * dz);
+    }
+
+    /**
+     * Refills the plan for the nuggets, which passed the culling.
+     */
+    public void plan(NuggetCuller.Visible visible, Vector3f camera, Plan out) {
+        out.reset(visible);
+        final var count = visible.size();
+
+        var total = 0L;
+        for (int index = 0; index < count; ++index) {
+            final var nugget = visible.get(index);
+            final var distance = distance(nugget, camera);
+            final var level = levelFor(distance);
+            out.levels[index] = level;
+            out.fades[index] = fade(distance);
+            out.order[index] = DepthOrder.furthestFirstKey((float) distance, index);
+            total += vertices(nugget, level);
+        }
+
+        // the plan is drawn in this order, so it is sorted even under the
+        // budget
+        Arrays.sort(out.order, 0, count);
+
+        if (total > vertexBudget) {
+            // coarsest level first, so far boxes are hidden before any near
+            // nugget loses its blocks; each pass moves down the furthest
+            // nuggets of a level, which keeps the levels growing with the
+            // distance
+            var changed = true;
+            while (total > vertexBudget && changed) {
+                changed = false;
+                for (int from = BOX; from >= BLOCKS && total > vertexBudget; --from) {
+                    for (int pos = 0; pos < count && total > vertexBudget; ++pos) {
+                        final var index = (int) out.order[pos];
+                        if (out.levels[index] != from)
+                            continue;
+                        final var nugget = visible.get(index);
+                        total += vertices(nugget, from + 1) - vertices(nugget, from);
+                        out.levels[index] = from + 1;
+                        changed = true;
+                    }
+                }
+            }
+        }
+
+        out.vertices = total;
+    }
+
+    /**
+     * Level and fade of every nugget of a {@link NuggetCuller.Visible},
+     * under the same indices. Like the visible nuggets, the plan is meant to
+     * be kept and refilled every frame.
+     */
+    public static final class Plan {
+        private NuggetCuller.Visible visible = null;
+        private int[] levels = new int[16];
+        private double[] fades = new double[16];
+        private long[] order = new long[16];
+        private long vertices = 0;
+
+        private void reset(NuggetCuller.Visible visible) {
+            this.visible = visible;
+            this.vertices = 0;
+            if (levels.length < visible.size()) {
+                final var capacity = Math.max(visible.size(), levels.length * 2);
+                levels = new int[capacity];
+                fades = new double[capacity];
+                order = new long[capacity];
+            }
+        }
+
+        public NuggetCuller.Visible visible() {
+            return visible;
+        }
+
+        public int size() {
+            return visible == null ? 0 : visible.size();
+        }
+
+        public EchoNugget get(int index) {
+            return visible.get(index);
+        }
+
+        public int level(int index) {
+            return levels[index];
+        }
+
+        public double fade(int index) {
+            return fades[index];
+        }
+
+        /**
+         * @return vertices the planned nuggets take, counting nuggets drawn
+         *         block by block as if all their echoes were visible
+         */
+        public long vertices() {
+            return vertices;
+        }
+
+        /**
+         * Draws faces of the planned nuggets, the furthest first, so the
+         * translucent faces blend in the right order. Nuggets drawn block by
+         * block are left to the caller, unless {@code drawBlocks} is set; in
+         * that case they are drawn here, echo by echo.
+         */
+        public void draw(GlProgramConsumer buffer, MatrixStack matrices, Vector3f camera, boolean drawBlocks) {
+            for (int pos = 0; pos < size(); ++pos) {
+                final var index = (int) order[pos];
+                final var nugget = visible.get(index);
+                switch (levels[index]) {
+                    case BLOCKS -> {
+                        if (drawBlocks)
+                            nugget.draw(buffer, matrices, camera);
+                    }
+                    case HULL -> nugget.mesh().draw(buffer, matrices, camera,
+                            fadeAlpha(Colors.ECHO_ALPHA, fades[index]));
+                    case BOX -> box(buffer, matrices, camera, nugget,
+                            fadeAlpha(Colors.ECHO_ALPHA, fades[index]) | nugget.color().rgb24(), false);
+                    default -> {
+                    }
+                }
+            }
+        }
+
+        /**
+         * Draws edges of the planned nuggets, in the same order and with the
+         * same rule for nuggets drawn block by block as {@link #draw}. The
+         * highlighted nugget is drawn last, in the highlight color.
+         */
+        public void sketch(GlProgramConsumer buffer, MatrixStack matrices, Vector3f camera, boolean drawBlocks,
+                @Nullable EchoNugget highlighted, int highlight32) {
+            var highlightedIndex = -1;
+            for (int pos = 0; pos < size(); ++pos) {
+                final var index = (int) order[pos];
+                final var nugget = visible.get(index);
+                if (nugget == highlighted) {
+                    highlightedIndex = index;
+                    continue;
+                }
+
+                switch (levels[index]) {
+                    case BLOCKS -> {
+                        if (drawBlocks)
+                            nugget.sketch(buffer, matrices, camera);
+                    }
+                    case HULL -> nugget.mesh().sketchWithAlpha(buffer, matrices, camera,
+                            fadeAlpha(Colors.OPAQUE, fades[index]));
+                    case BOX -> box(buffer, matrices, camera, nugget,
+                            fadeAlpha(Colors.OPAQUE, fades[index]) | nugget.color().rgb24(), true);
+                    default -> {
+                    }
+                }
+            }
+
+            if (highlightedIndex < 0)
+                return;
+
+            final var nugget = visible.get(highlightedIndex);
+            switch (levels[highlightedIndex]) {
+                case BLOCKS -> {
+                    if (drawBlocks)
+                        nugget.sketch(buffer, matrices, camera, highlight32);
+                }
+                case HULL -> nugget.mesh().sketch(buffer, matrices, camera, highlight32);
+                case BOX -> box(buffer, matrices, camera, nugget, highlight32, true);
+                default -> {
+                }
+            }
+        }
+
+        private static void box(GlProgramConsumer buffer, MatrixStack matrices, Vector3f camera, EchoNugget nugget,
+                int argb32, boolean edges) {
+            final var bounds = nugget.getBounds();
+            final var m = matrices.peek().getPositionMatrix();
+            final var x = (float) (bounds.minX() - camera.x);
+            final var y = (float) (bounds.minY() - camera.y);
+            final var z = (float) (bounds.minZ() - camera.z);
+            final var sizeX = (float) (bounds.maxX() - bounds.minX());
+            final var sizeY = (float) (bounds.maxY() - bounds.minY());
+            final var sizeZ = (float) (bounds.maxZ() - bounds.minZ());
+            if (edges)
+                buffer.boxEdges(m, x, y, z, sizeX, sizeY, sizeZ, argb32);
+            else
+                buffer.box(m, x, y, z, sizeX, sizeY, sizeZ, argb32);
+        }
+    }
+}
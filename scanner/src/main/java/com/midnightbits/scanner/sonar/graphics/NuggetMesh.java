@@ -0,0 +1,237 @@
+// Copyright (c) 2024 Marcin Zdun
+// This code is licensed under MIT license (see LICENSE for details)
+
+package com.midnightbits.scanner.sonar.graphics;
+
+import java.util.List;
+
+import com.midnightbits.scanner.rt.math.V3i;
+import org.joml.Vector3f;
+
+/**
+ * Surface and outline of a group of echoes, as merged rectangles and line
+ * segments. Vertices are baked once, relative to the mesh origin, so the mesh
+ * does not depend on the camera and drawing it is only a matter of offsetting
+ * each vertex by the origin seen from the camera.
+ *
+ * <p>
+ * Colors are resolved once, when the mesh is built; the block colors come
+ * from the map palette, which does not change under a built mesh.
+ */
+public final class NuggetMesh {
+    public record Material(Colors.Proxy color, int alpha) {
+        public int argb32() {
+            return alpha | color.rgb24();
+        }
+    }
+
+    // side, x, y, z, width, height, material
+    static final int QUAD_INTS = 7;
+    // axis, x, y, z, length, color
+    static final int SEGMENT_INTS = 6;
+
+    public static final NuggetMesh EMPTY = new NuggetMesh(V3i.ZERO, new int[0], 0, List.of(), new int[0], 0,
+            List.of());
+
+    private final V3i origin;
+    private final int[] quads;
+    private final int quadCount;
+    private final int[] materialArgb;
+    private final int[] segments;
+    private final int segmentCount;
+    private final int[] lineRgb;
+    private final float[] faceXyz;
+    private final float[] lineXyz;
+    private DepthOrder depth = null;
+
+    NuggetMesh(V3i origin, int[] quads, int quadCount, List<Material> materials, int[] segments,
+            int segmentCount, List<Colors.Proxy> lineColors) {
+        this.origin = origin;
+        this.quads = quads;
+        this.quadCount = quadCount;
+        this.materialArgb = new int[materials.size()];
+        for (int index = 0; index < materialArgb.length; ++index)
+            materialArgb[index] = materials.get(index).argb32();
+        this.segments = segments;
+        this.segmentCount = segmentCount;
+        this.lineRgb = new int[lineColors.size()];
+        for (int index = 0; index < lineRgb.length; ++index)
+            lineRgb[index] = lineColors.get(index).rgb24();
+        this.faceXyz = bakeFaces();
+        this.lineXyz = bakeLines();
+    }
+
+    public V3i origin() {
+        return origin;
+    }
+
+    public int quadCount() {
+        return quadCount;
+    }
+
+    public int segmentCount() {
+        return segmentCount;
+    }
+
+    public int triangleVertices() {
+        return quadCount * 6;
+    }
+
+    public int lineVertices() {
+        return segmentCount * 2;
+    }
+
+    /**
+     * Emits two triangles per rectangle, back to front, if the rectangles
+     * differ in their colors, as translucent faces are blended in the order
+     * they are drawn.
+     */
+    public void draw(GlProgramConsumer buffer, MatrixStack matrices, Vector3f camera) {
+        if (quadCount == 0)
+            return;
+
+        draw(buffer, matrices, camera, ~0, 0);
+    }
+
+    /**
+     * Draws the faces with the alpha channel of every material replaced by
+     * the given one, e.g. for fading a mesh in and out without rebuilding
+     * it.
+     */
+    public void draw(GlProgramConsumer buffer, MatrixStack matrices, Vector3f camera, int alpha) {
+        if (quadCount == 0)
+            return;
+
+        draw(buffer, matrices, camera, Colors.RGB_MASK, alpha);
+    }
+
+    private void draw(GlProgramConsumer buffer, MatrixStack matrices, Vector3f camera, int keep, int alpha) {
+        final var m = matrices.peek().getPositionMatrix();
+        final var dx = origin.getX() - camera.x;
+        final var dy = origin.getY() - camera.y;
+        final var dz = origin.getZ() - camera.z;
+
+        if (materialArgb.length == 1) {
+            buffer.vertices(m, dx, dy, dz, faceXyz, 0, quadCount * 6, (materialArgb[0] & keep) | alpha);
+            return;
+        }
+
+        for (final var quad : furthestToClosest(camera)) {
+            final var argb32 = (materialArgb[quads[quad * QUAD_INTS + 6]] & keep) | alpha;
+            buffer.vertices(m, dx, dy, dz, faceXyz, quad * 6, 6, argb32);
+        }
+    }
+
+    public void sketch(GlProgramConsumer buffer, MatrixStack matrices, Vector3f camera) {
+        sketchWithAlpha(buffer, matrices, camera, Colors.OPAQUE);
+    }
+
+    /**
+     * Draws the edges in their own colors, but with the given alpha channel
+     * instead of an opaque one.
+     */
+    public void sketchWithAlpha(GlProgramConsumer buffer, MatrixStack matrices, Vector3f camera, int alpha) {
+        if (segmentCount == 0)
+            return;
+
+        final var m = matrices.peek().getPositionMatrix();
+        final var dx = origin.getX() - camera.x;
+        final var dy = origin.getY() - camera.y;
+        final var dz = origin.getZ() - camera.z;
+        for (int segment = 0; segment < segmentCount; ++segment) {
+            final var argb32 = alpha | lineRgb[segments[segment * SEGMENT_INTS + 5]];
+            buffer.vertices(m, dx, dy, dz, lineXyz, segment * 2, 2, argb32);
+        }
+    }
+
+    public void sketch(GlProgramConsumer buffer, MatrixStack matrices, Vector3f camera, int argb32) {
+        if (segmentCount == 0)
+            return;
+
+        final var m = matrices.peek().getPositionMatrix();
+        final var dx = origin.getX() - camera.x;
+        final var dy = origin.getY() - camera.y;
+        final var dz = origin.getZ() - camera.z;
+        buffer.vertices(m, dx, dy, dz, lineXyz, 0, segmentCount * 2, argb32);
+    }
+
+    /**
+     * The order is kept with the mesh, so the next frame only needs to fix
+     * the few rectangles, which changed places.
+     */
+    private int[] furthestToClosest(Vector3f camera) {
+        if (depth == null) {
+            final var centers = new float[quadCount * 3];
+            for (int quad = 0; quad < quadCount; ++quad) {
+                final var offset = quad * QUAD_INTS;
+                final var side = quads[offset];
+                final var center = quad * 3;
+                centers[center] = quads[offset + 1];
+                centers[center + 1] = quads[offset + 2];
+                centers[center + 2] = quads[offset + 3];
+                centers[center + GreedyMesher.NORMAL_AXIS[side]] += GreedyMesher.NORMAL_OFFSET[side];
+                centers[center + GreedyMesher.U_AXIS[side]] += quads[offset + 4] * .5F;
+                centers[center + GreedyMesher.V_AXIS[side]] += quads[offset + 5] * .5F;
+                centers[center] += origin.getX();
+                centers[center + 1] += origin.getY();
+                centers[center + 2] += origin.getZ();
+            }
+            depth = new DepthOrder(centers);
+        }
+        return depth.furthestToClosest(camera);
+    }
+
+    private float[] bakeFaces() {
+        final var vertices = new float[quadCount * 6 * 3];
+        final var corner = new int[3];
+        final var unit = new int[3];
+        var pos = 0;
+
+        for (int quad = 0; quad < quadCount; ++quad) {
+            final var offset = quad * QUAD_INTS;
+            final var side = quads[offset];
+            final var normal = GreedyMesher.NORMAL_AXIS[side];
+            final var u = GreedyMesher.U_AXIS[side];
+            final var v = GreedyMesher.V_AXIS[side];
+            final var width = quads[offset + 4];
+            final var height = quads[offset + 5];
+
+            // same winding as the unit faces in Pixel.triangles, stretched
+            for (final var vertex : Pixel.triangles[side]) {
+                unit[0] = vertex.x();
+                unit[1] = vertex.y();
+                unit[2] = vertex.z();
+                corner[0] = quads[offset + 1];
+                corner[1] = quads[offset + 2];
+                corner[2] = quads[offset + 3];
+                corner[normal] += unit[normal];
+                corner[u] += unit[u] * width;
+                corner[v] += unit[v] * height;
+                vertices[pos++] = corner[0];
+                vertices[pos++] = corner[1];
+                vertices[pos++] = corner[2];
+            }
+        }
+
+        return vertices;
+    }
+
+    private float[] bakeLines() {
+        final var vertices = new float[segmentCount * 2 * 3];
+        var pos = 0;
+
+        for (int segment = 0; segment < segmentCount; ++segment) {
+            final var offset = segment * SEGMENT_INTS;
+            final var axis = segments[offset];
+            final var length = segments[offset + 4];
+            vertices[pos++] = segments[offset + 1];
+            vertices[pos++] = segments[offset + 2];
+            vertices[pos++] = segments[offset + 3];
+            vertices[pos++] = segments[offset + 1] + (axis == 0 ? length : 0);
+            vertices[pos++] = segments[offset + 2] + (axis == 1 ? length : 0);
+            vertices[pos++] = segments[offset + 3] + (axis == 2 ? length : 0);
+        }
+
+        return vertices;
+    }
+}
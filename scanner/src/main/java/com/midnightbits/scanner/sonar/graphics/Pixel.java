@@ -127,4 +127,88 @@ public record Pixel(EchoState echoState, double distanceSquared) {
     public final static int ALL_EDGES = EDGE_FRONT_BOTTOM | EDGE_BACK_BOTTOM | EDGE_BACK_TOP | EDGE_FRONT_TOP |
             EDGE_FRONT_LEFT | EDGE_BACK_LEFT | EDGE_BACK_RIGHT | EDGE_FRONT_RIGHT |
             EDGE_LEFT_BOTTOM | EDGE_LEFT_TOP | EDGE_RIGHT_BOTTOM | EDGE_RIGHT_TOP;
+
+    /**
+     * Edges, both sides of which are visible, indexed by the side mask of a
+     * block. Such edges are always outlined.
+     */
+    public static final int[] FULL_EDGES = edgeTable(true);
+
+    /**
+     * Edges, only one side of which is visible, indexed by the side mask of a
+     * block. Such edges lie on a flat surface, or on an inner corner, and are
+     * only outlined, if the block diagonally across the edge does not outline
+     * it already.
+     */
+    public static final int[] PARTIAL_EDGES = edgeTable(false);
+
+    /**
+     * Offsets to the block sharing each edge with the given block from the
+     * other side, as {@code x, y, z} triples indexed by edge.
+     */
+    public static final int[] OPPOSITE_OFFSETS = oppositeOffsets();
+
+    /**
+     * Vertices of {@link #triangles}, as {@code x, y, z} triples, six per
+     * side, in the order of sides.
+     */
+    public static final float[] TRIANGLE_XYZ = flatten(triangles);
+
+    /**
+     * Start and end of each of the {@link #edges}, as {@code x, y, z}
+     * triples, two per edge.
+     */
+    public static final float[] EDGE_XYZ = flatten(edges);
+
+    private static int[] edgeTable(boolean full) {
+        final var table = new int[ALL_SIDES + 1];
+        for (int sides = 0; sides <= ALL_SIDES; ++sides) {
+            for (int edgeIndex = 0; edgeIndex < edges.length; ++edgeIndex) {
+                final var edge = edges[edgeIndex];
+                final var mask = edge.validSides(sides);
+                final var matches = full ? mask == edge.sides() : mask != 0 && mask != edge.sides();
+                if (matches)
+                    table[sides] |= 1 << edgeIndex;
+            }
+        }
+        return table;
+    }
+
+    private static int[] oppositeOffsets() {
+        final var offsets = new int[edges.length * 3];
+        for (int edgeIndex = 0; edgeIndex < edges.length; ++edgeIndex) {
+            final var edge = edges[edgeIndex];
+            final var movement = edge.start().sub(edges[edge.opposite()].start());
+            offsets[edgeIndex * 3] = movement.x();
+            offsets[edgeIndex * 3 + 1] = movement.y();
+            offsets[edgeIndex * 3 + 2] = movement.z();
+        }
+        return offsets;
+    }
+
+    private static float[] flatten(Vertex[][] faces) {
+        final var xyz = new float[faces.length * 6 * 3];
+        var pos = 0;
+        for (final var face : faces) {
+            for (final var vertex : face) {
+                xyz[pos++] = vertex.x();
+                xyz[pos++] = vertex.y();
+                xyz[pos++] = vertex.z();
+            }
+        }
+        return xyz;
+    }
+
+    private static float[] flatten(Edge[] lines) {
+        final var xyz = new float[lines.length * 2 * 3];
+        var pos = 0;
+        for (final var line : lines) {
+            for (final var vertex : new Vertex[] { line.start(), line.end() }) {
+                xyz[pos++] = vertex.x();
+                xyz[pos++] = vertex.y();
+                xyz[pos++] = vertex.z();
+            }
+        }
+        return xyz;
+    }
 }
@@ -6,21 +6,42 @@ package com.midnightbits.scanner.sonar.graphics;
 import com.midnightbits.scanner.rt.core.Id;
 import com.midnightbits.scanner.rt.math.V3i;
 import com.midnightbits.scanner.sonar.Echo;
+import com.midnightbits.scanner.sonar.EchoNugget;
 import com.midnightbits.scanner.sonar.EchoState;
 
-import java.util.Collection;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.stream.Stream;
+
+import org.joml.Vector3f;
 
 public class Shimmers {
     private final static Colors.Proxy SHIMMER_BLUE = new Colors.DirectValue(0x8080FF);
     private final static Echo shimmer = new Echo(Id.ofMod("shimmer-echo"), SHIMMER_BLUE);
 
     private final List<V3i> blocks;
+    private final NuggetMesh mesh;
     private double alpha = 0;
 
     public Shimmers(List<V3i> blocks) {
         this.blocks = blocks;
+        this.mesh = makeMesh(blocks);
+    }
+
+    /**
+     * The blocks of a slice never change, only their alpha does, so the
+     * sides and edges are chosen once, for fully opaque blocks, and the
+     * current alpha is applied when drawing.
+     */
+    private static NuggetMesh makeMesh(List<V3i> blocks) {
+        if (blocks.isEmpty())
+            return NuggetMesh.EMPTY;
+
+        final var echoes = new ArrayList<EchoState>(blocks.size());
+        for (final var nugget : EchoNugget.group(blocks.stream().map((pos) -> new EchoState(pos, shimmer, 0))))
+            echoes.addAll(nugget.echoes());
+        for (final var echo : echoes)
+            echo.alpha = Colors.OPAQUE;
+        return GreedyMesher.mesh(echoes);
     }
 
     public List<V3i> blocks() {
@@ -35,20 +56,27 @@ public class Shimmers {
         return alpha;
     }
 
-    public Stream<EchoState> toEchoStates(double alphaMax) {
+    public NuggetMesh mesh() {
+        return mesh;
+    }
+
+    /**
+     * @return alpha channel of the shimmer blocks, as seen through the
+     *         alphaMax, ready to be or-ed with an rgb24 color
+     */
+    public int alpha32(double alphaMax) {
         final var alphaChannel = (int) Math.round(255 * (this.alpha * alphaMax));
-        final var alpha = alphaChannel << 24;
-        if (alpha == 0) {
-            return Stream.of();
-        }
+        return alphaChannel << 24;
+    }
 
-        return blocks.stream()
-                .map((pos) -> new EchoState(pos, shimmer, 0))
-                .peek((state) -> state.alpha = alpha);
+    public void draw(GlProgramConsumer buffer, MatrixStack matrices, Vector3f camera, double alphaMax) {
+        final var alpha = alpha32(alphaMax);
+        if (alpha != 0)
+            mesh.draw(buffer, matrices, camera, alpha);
     }
 
-    public static Stream<EchoState> toEchoStates(List<Shimmers> waves, double alphaMax) {
-        return waves.stream()
-                .flatMap(wave -> wave.toEchoStates(alphaMax));
+    public void sketch(GlProgramConsumer buffer, MatrixStack matrices, Vector3f camera, double alphaMax) {
+        if (alpha32(alphaMax) != 0)
+            mesh.sketch(buffer, matrices, camera);
     }
 }
@@ -3,20 +3,30 @@
 
 package com.midnightbits.scanner.sonar.graphics;
 
-import com.midnightbits.scanner.rt.core.ScannerMod;
+import com.midnightbits.scanner.rt.math.PackedPos;
 import com.midnightbits.scanner.rt.math.V3i;
 import com.midnightbits.scanner.sonar.EchoState;
+import com.midnightbits.scanner.utils.LongIntHashMap;
+import com.midnightbits.scanner.utils.LongObjectHashMap;
 import org.jetbrains.annotations.NotNull;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
 import java.util.*;
-import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
+/**
+ * Splits echoes into groups of face-adjacent echoes of the same block, while
+ * removing the sides shared by two echoes of the same group and choosing,
+ * which edges of the remaining sides should be outlined.
+ *
+ * <p>
+ * All the groups are labeled up front, in one pass over the echoes sorted by
+ * position: echoes are looked up by their packed position and each one is
+ * visited once. Groups are then handed out in the order of their first echo,
+ * with their echoes visited in ascending order while choosing the edges.
+ */
 public class TriColorSorter implements Iterator<Map<V3i, EchoState>>, Iterable<Map<V3i, EchoState>> {
-    private static final String TAG = ScannerMod.MOD_ID;
-    private static final Logger LOGGER = LoggerFactory.getLogger(TAG);
+    private static final int MISSING = -1;
+    private static final int ANY_GROUP = -1;
 
     private record AdjacentSides(int x, int y, int z, int mine, int theirs) {
     }
@@ -30,103 +40,287 @@ public class TriColorSorter implements Iterator<Map<V3i, EchoState>>, Iterable<M
             new AdjacentSides(0, 0, 1, Pixel.SIDE_Z1, Pixel.SIDE_Z0),
     };
 
-    private final Map<V3i, EchoState> pool = new HashMap<>();
-    private final Deque<V3i> white;
+    private static final int[] OPPOSITE_EDGE_BITS = new int[Pixel.edges.length];
+
+    static {
+        for (int edge = 0; edge < Pixel.edges.length; ++edge)
+            OPPOSITE_EDGE_BITS[edge] = 1 << Pixel.edges[edge].opposite();
+    }
+
+    private final EchoState[] sorted;
+    private final long[] packed;
+    private final LongIntHashMap indices;
+    private final int[] edges;
+    private final int[] labels;
+    private final int[] members;
+    private final int[] starts;
+    private int nextGroup = 0;
 
     public TriColorSorter(Stream<EchoState> echoes) {
+        // the last echo at any given position is the one, which is grouped
+        final var pool = new LongObjectHashMap<EchoState>();
+        final var all = new ArrayList<EchoState>();
         echoes.forEach((echo) -> {
-            pool.put(echo.position(), echo);
+            pool.put(PackedPos.pack(echo.position()), echo);
             echo.sides = Pixel.ALL_SIDES;
+            all.add(echo);
         });
-        white = pool.keySet().stream().sorted().collect(Collectors.toCollection(ArrayDeque::new));
+
+        // primitive keys in the order of V3i.compareTo sort several times
+        // faster, than the echoes themselves with a comparator
+        final var keys = new long[all.size()];
+        var count = 0;
+        for (final var echo : all) {
+            if (pool.get(PackedPos.pack(echo.position())) == echo)
+                keys[count++] = orderKey(echo.position());
+        }
+        Arrays.sort(keys, 0, count);
+
+        sorted = new EchoState[pool.size()];
+        packed = new long[sorted.length];
+        edges = new int[sorted.length];
+        indices = new LongIntHashMap(sorted.length);
+        var unique = 0;
+        for (int pos = 0; pos < count; ++pos) {
+            // the same echo given twice is kept once
+            if (pos > 0 && keys[pos] == keys[pos - 1])
+                continue;
+            packed[unique] = packedOf(keys[pos]);
+            sorted[unique] = pool.get(packed[unique]);
+            indices.put(packed[unique], unique);
+            ++unique;
+        }
+
+        labels = new int[sorted.length];
+        final var groups = label();
+
+        // counting sort of the echoes by their group keeps them ascending
+        // inside each group
+        starts = new int[groups + 1];
+        for (final var group : labels)
+            ++starts[group + 1];
+        for (int group = 0; group < groups; ++group)
+            starts[group + 1] += starts[group];
+        members = new int[sorted.length];
+        final var cursor = Arrays.copyOf(starts, groups);
+        for (int index = 0; index < sorted.length; ++index)
+            members[cursor[labels[index]]++] = index;
     }
 
     public TriColorSorter(Collection<EchoState> echoes) {
         this(echoes.stream());
     }
 
-    public boolean hasNext() {
-        return !white.isEmpty();
+    private static final int ORDER_BITS_XZ = 26;
+    private static final int ORDER_BIAS_XZ = 1 << ORDER_BITS_XZ - 1;
+    private static final long ORDER_MASK_XZ = (1L << ORDER_BITS_XZ) - 1;
+
+    /**
+     * @return key, which sorts the same way the position does: by Y, then Z,
+     *         then X; X and Z are biased, so their bits sort as unsigned
+     */
+    private static long orderKey(V3i pos) {
+        return (long) pos.getY() << 2 * ORDER_BITS_XZ
+                | ((long) (pos.getZ() + ORDER_BIAS_XZ) & ORDER_MASK_XZ) << ORDER_BITS_XZ
+                | ((long) (pos.getX() + ORDER_BIAS_XZ) & ORDER_MASK_XZ);
     }
 
-    private Map<V3i, EchoState> moveFromWhiteToBlack() {
-        Deque<EchoState> grey = new ArrayDeque<>();
-        Map<V3i, EchoState> black = new HashMap<>();
+    private static long packedOf(long orderKey) {
+        final var y = (int) (orderKey >> 2 * ORDER_BITS_XZ);
+        final var z = (int) (orderKey >>> ORDER_BITS_XZ & ORDER_MASK_XZ) - ORDER_BIAS_XZ;
+        final var x = (int) (orderKey & ORDER_MASK_XZ) - ORDER_BIAS_XZ;
+        return PackedPos.pack(x, y, z);
+    }
 
-        final var nextWhite = pool.get(white.removeFirst());
-        grey.add(nextWhite);
-        while (!grey.isEmpty()) {
-            EchoState current = grey.removeFirst();
-            white.remove(current.position());
-            black.put(current.position(), current);
+    private int label() {
+        final var all = new int[sorted.length];
+        for (int index = 0; index < all.length; ++index)
+            all[index] = index;
+        final var occupancy = new Occupancy(ANY_GROUP, all, 0, all.length);
 
-            for (final var side : ADJACENT_SIDES) {
-                if ((current.sides & side.mine) == 0) {
-                    continue;
-                }
+        final var visited = new BitSet(sorted.length);
+        final var grey = new int[sorted.length];
+        var groups = 0;
 
-                final var neighbour = pool.get(current.position().add(side.x, side.y, side.z));
-                if (neighbour == null || !neighbour.id().equals(current.id())) {
-                    continue;
-                }
+        for (int first = 0; first < sorted.length; ++first) {
+            if (visited.get(first))
+                continue;
+
+            final var group = groups++;
+            var head = 0;
+            var tail = 0;
+            grey[tail++] = first;
+            visited.set(first);
+            labels[first] = group;
+
+            while (head < tail) {
+                final var index = grey[head++];
+                final var current = sorted[index];
+
+                for (final var side : ADJACENT_SIDES) {
+                    if ((current.sides & side.mine) == 0) {
+                        continue;
+                    }
 
-                current.sides &= ~side.mine;
-                neighbour.sides &= ~side.theirs;
-                grey.add(neighbour);
+                    final var other = occupancy.find(PackedPos.x(packed[index]) + side.x,
+                            PackedPos.y(packed[index]) + side.y, PackedPos.z(packed[index]) + side.z);
+                    if (other == MISSING) {
+                        continue;
+                    }
+                    final var neighbour = sorted[other];
+                    if (!neighbour.id().equals(current.id())) {
+                        continue;
+                    }
+
+                    current.sides &= ~side.mine;
+                    neighbour.sides &= ~side.theirs;
+                    if (!visited.get(other)) {
+                        visited.set(other);
+                        labels[other] = group;
+                        grey[tail++] = other;
+                    }
+                }
             }
         }
 
-        return black;
+        return groups;
+    }
+
+    public boolean hasNext() {
+        return nextGroup < starts.length - 1;
     }
 
     public Map<V3i, EchoState> next() {
-        final var black = moveFromWhiteToBlack();
+        if (!hasNext())
+            throw new NoSuchElementException();
 
-        final var sortedPos = black.keySet().stream().sorted().toList();
+        final var group = nextGroup++;
+        final var from = starts[group];
+        final var to = starts[group + 1];
 
-        for (final var pos : sortedPos) {
-            final var pixel = black.get(pos);
+        final var black = new HashMap<V3i, EchoState>((to - from) * 4 / 3 + 1);
+        for (int member = from; member < to; ++member) {
+            final var pixel = sorted[members[member]];
+            black.put(pixel.position(), pixel);
+        }
 
-            pixel.edges = 0;
-            for (int edgeIndex = 0; edgeIndex < Pixel.edges.length; ++edgeIndex) {
-                final var edge = Pixel.edges[edgeIndex];
+        // edges of the group, copied out of the echoes, so the loop below
+        // reads a flat array instead of following a reference per edge
+        for (int member = from; member < to; ++member)
+            edges[members[member]] = sorted[members[member]].edges;
 
-                final int mask = edge.validSides(pixel.sides);
-                if (mask == edge.sides()) {
-                    pixel.edges |= 1 << edgeIndex;
-                } else if (mask != 0) {
-                    final var oppositeIndex = edge.opposite();
-                    final var oppositeEdge = Pixel.edges[oppositeIndex];
-                    final var movement = edge.start().sub(oppositeEdge.start());
-                    final var oppositePos = pixel.position().add(movement.x(), movement.y(), movement.z());
-                    final var opposite = black.get(oppositePos);
+        final var occupancy = new Occupancy(group, members, from, to);
+        for (int member = from; member < to; ++member) {
+            final var index = members[member];
+            final var pixel = sorted[index];
+            final var x = PackedPos.x(packed[index]);
+            final var y = PackedPos.y(packed[index]);
+            final var z = PackedPos.z(packed[index]);
 
-                    if (opposite == null) {
-                        continue;
-                    }
+            // an edge with one side visible is outlined, unless the block
+            // across it (earlier in the group, or from the previous grouping,
+            // if later) outlines the same line already
+            var outlined = Pixel.FULL_EDGES[pixel.sides];
+            var partial = Pixel.PARTIAL_EDGES[pixel.sides];
+            while (partial != 0) {
+                final var edgeIndex = Integer.numberOfTrailingZeros(partial);
+                partial &= partial - 1;
 
-                    final int oppositeBit = 1 << oppositeIndex;
-                    if ((opposite.edges & oppositeBit) == 0) {
-                        pixel.edges |= 1 << edgeIndex;
-                        LOGGER.debug("{}",
-                                String.format(
-                                        "[%s] %2d (%d%d%d -> %d%d%d): %02x -> %2d -> (%d, %d, %d) -> %x/%x -> adding",
-                                        pos, edgeIndex,
-                                        edge.start().x(), edge.start().y(), edge.start().z(),
-                                        edge.end().x(), edge.end().y(), edge.end().z(),
-                                        edge.sides() - mask, oppositeIndex,
-                                        movement.x(), movement.y(), movement.z(),
-                                        opposite.edges,
-                                        opposite.edges & oppositeBit));
+                final var offset = edgeIndex * 3;
+                final var other = occupancy.find(x + Pixel.OPPOSITE_OFFSETS[offset],
+                        y + Pixel.OPPOSITE_OFFSETS[offset + 1], z + Pixel.OPPOSITE_OFFSETS[offset + 2]);
+                if (other == MISSING)
+                    continue;
 
-                    }
-                }
+                if ((edges[other] & OPPOSITE_EDGE_BITS[edgeIndex]) == 0)
+                    outlined |= 1 << edgeIndex;
             }
+            edges[index] = outlined;
+            pixel.edges = outlined;
         }
 
         return black;
     }
 
+    /**
+     * Finds echoes of a single group, or of {@link #ANY_GROUP}, by their
+     * position. Echoes, which fill enough of their bounding box, are copied
+     * to a dense grid of indices; sparse ones use the shared index of all
+     * the echoes instead.
+     */
+    private final class Occupancy {
+        private static final int MAX_SPARSENESS = 8;
+        private static final int MIN_GRID = 64;
+
+        private final int group;
+        private final int minX;
+        private final int minY;
+        private final int minZ;
+        private final int sizeX;
+        private final int sizeY;
+        private final int sizeZ;
+        private final int[] grid;
+
+        Occupancy(int group, int[] members, int from, int to) {
+            this.group = group;
+
+            var loX = Integer.MAX_VALUE;
+            var loY = Integer.MAX_VALUE;
+            var loZ = Integer.MAX_VALUE;
+            var hiX = Integer.MIN_VALUE;
+            var hiY = Integer.MIN_VALUE;
+            var hiZ = Integer.MIN_VALUE;
+            for (int member = from; member < to; ++member) {
+                final var pos = packed[members[member]];
+                loX = Math.min(loX, PackedPos.x(pos));
+                loY = Math.min(loY, PackedPos.y(pos));
+                loZ = Math.min(loZ, PackedPos.z(pos));
+                hiX = Math.max(hiX, PackedPos.x(pos));
+                hiY = Math.max(hiY, PackedPos.y(pos));
+                hiZ = Math.max(hiZ, PackedPos.z(pos));
+            }
+
+            minX = loX;
+            minY = loY;
+            minZ = loZ;
+            sizeX = hiX - loX + 1;
+            sizeY = hiY - loY + 1;
+            sizeZ = hiZ - loZ + 1;
+
+            final var volume = (long) sizeX * sizeY * sizeZ;
+            if (volume > Math.max(MIN_GRID, (long) (to - from) * MAX_SPARSENESS)) {
+                grid = null;
+                return;
+            }
+
+            // zero is empty, so indices are stored shifted by one
+            grid = new int[(int) volume];
+            for (int member = from; member < to; ++member) {
+                final var index = members[member];
+                final var pos = packed[index];
+                grid[cell(PackedPos.x(pos) - minX, PackedPos.y(pos) - minY, PackedPos.z(pos) - minZ)] = index + 1;
+            }
+        }
+
+        private int cell(int dx, int dy, int dz) {
+            return (dy * sizeZ + dz) * sizeX + dx;
+        }
+
+        int find(int x, int y, int z) {
+            if (grid == null) {
+                final var other = indices.get(PackedPos.pack(x, y, z), MISSING);
+                return other == MISSING || (group != ANY_GROUP && labels[other] != group) ? MISSING : other;
+            }
+
+            final var dx = x - minX;
+            final var dy = y - minY;
+            final var dz = z - minZ;
+            if (dx < 0 || dy < 0 || dz < 0 || dx >= sizeX || dy >= sizeY || dz >= sizeZ)
+                return MISSING;
+            return grid[cell(dx, dy, dz)] - 1;
+        }
+    }
+
     @Override
     public @NotNull Iterator<Map<V3i, EchoState>> iterator() {
         return this;
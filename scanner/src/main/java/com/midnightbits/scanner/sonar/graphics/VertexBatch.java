@@ -0,0 +1,101 @@
+// Copyright (c) 2024 Marcin Zdun
+// This code is licensed under MIT license (see LICENSE for details)
+
+package com.midnightbits.scanner.sonar.graphics;
+
+import java.util.Arrays;
+
+import org.joml.Matrix4f;
+
+/**
+ * Collects vertices into flat position and color arrays and hands them over
+ * to the target consumer in one {@link GlProgramConsumer#vertices(Matrix4f,
+ * float[], int[], int)} call per run of vertices sharing a matrix.
+ *
+ * <p>
+ * The arrays are kept between {@link #begin(GlProgramConsumer)} and
+ * {@link #end()}, so a batch kept for the life of a renderer does not
+ * allocate, once it has grown to the size of a frame.
+ */
+public final class VertexBatch implements GlProgramConsumer {
+    private static final int INITIAL_VERTICES = 1024;
+
+    private GlProgramConsumer target = null;
+    private Matrix4f matrix = null;
+    private float[] xyz = new float[INITIAL_VERTICES * 3];
+    private int[] colors = new int[INITIAL_VERTICES];
+    private int count = 0;
+
+    public VertexBatch begin(GlProgramConsumer target) {
+        this.target = target;
+        this.matrix = null;
+        this.count = 0;
+        return this;
+    }
+
+    public void end() {
+        flush();
+        target = null;
+        matrix = null;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    private void flush() {
+        if (count > 0)
+            target.vertices(matrix, xyz, colors, count);
+        count = 0;
+    }
+
+    private void reserve(Matrix4f matrix, int vertices) {
+        if (matrix != this.matrix) {
+            flush();
+            this.matrix = matrix;
+        }
+
+        final var needed = count + vertices;
+        if (needed <= colors.length)
+            return;
+
+        var capacity = colors.length;
+        while (capacity < needed)
+            capacity <<= 1;
+        xyz = Arrays.copyOf(xyz, capacity * 3);
+        colors = Arrays.copyOf(colors, capacity);
+    }
+
+    @Override
+    public void vertexColor(Matrix4f matrix, float x, float y, float z, int argb32) {
+        reserve(matrix, 1);
+        final var pos = count * 3;
+        xyz[pos] = x;
+        xyz[pos + 1] = y;
+        xyz[pos + 2] = z;
+        colors[count++] = argb32;
+    }
+
+    @Override
+    public void vertices(Matrix4f matrix, float dx, float dy, float dz, float[] xyz, int from, int count,
+            int argb32) {
+        reserve(matrix, count);
+        var dst = this.count * 3;
+        final var end = (from + count) * 3;
+        for (int src = from * 3; src < end; src += 3) {
+            this.xyz[dst++] = xyz[src] + dx;
+            this.xyz[dst++] = xyz[src + 1] + dy;
+            this.xyz[dst++] = xyz[src + 2] + dz;
+        }
+        Arrays.fill(colors, this.count, this.count + count, argb32);
+        this.count += count;
+    }
+
+    @Override
+    public void vertices(Matrix4f matrix, float[] xyz, int[] argb32, int count) {
+        reserve(matrix, count);
+        System.arraycopy(xyz, 0, this.xyz, this.count * 3, count * 3);
+        System.arraycopy(argb32, 0, colors, this.count, count);
+        this.count += count;
+    }
+}
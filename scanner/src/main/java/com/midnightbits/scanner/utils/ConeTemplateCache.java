@@ -0,0 +1,161 @@
+// Copyright (c) 2024 Marcin Zdun
+// This code is licensed under MIT license (see LICENSE for details)
+
+package com.midnightbits.scanner.utils;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import com.midnightbits.scanner.rt.math.V3i;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Keeps a small number of already rasterized scan volumes, built around
+ * {@link V3i#ZERO} and keyed by distance, radius and the camera direction
+ * rounded to {@link #ANGLE_STEP} degrees. A ping only needs to move the
+ * template to where the player stands, instead of rasterizing the whole
+ * volume again.
+ */
+public final class ConeTemplateCache {
+    public static final int CAPACITY = 8;
+    public static final int ANGLE_STEP = 1;
+    private static final int FULL_CIRCLE = 360 / ANGLE_STEP;
+
+    public record Key(int blockDistance, int blockRadius, int pitch, int yaw) {
+        public static Key of(int blockDistance, int blockRadius, float cameraPitch, float cameraYaw) {
+            final var pitch = Math.round(cameraPitch / ANGLE_STEP);
+            var yaw = Math.floorMod(Math.round(cameraYaw / ANGLE_STEP), FULL_CIRCLE);
+            if (yaw > FULL_CIRCLE / 2)
+                yaw -= FULL_CIRCLE;
+            return new Key(blockDistance, blockRadius, pitch, yaw);
+        }
+
+        public float cameraPitch() {
+            return (float) (pitch * ANGLE_STEP);
+        }
+
+        public float cameraYaw() {
+            return (float) (yaw * ANGLE_STEP);
+        }
+    }
+
+    /**
+     * Shells of a {@link ScanVolume} built around {@link V3i#ZERO}. The volume
+     * is only rasterized as far as any of the cursors has read, so the first
+     * ping in a new direction still gets its shells as they are produced.
+     * Cursors may be read from a background thread, so reading and extending
+     * the shells is guarded by the template.
+     */
+    public static final class Template {
+        private static final int INITIAL_CAPACITY = 1024;
+        private static final int INITIAL_SHELLS = 64;
+
+        private ScanVolume source;
+        private long[] positions = new long[INITIAL_CAPACITY];
+        private int[] shellStarts = new int[INITIAL_SHELLS + 1];
+        private int[] shellDistances = new int[INITIAL_SHELLS];
+        private int shellCount = 0;
+
+        Template(Key key) {
+            source = ScanVolume.fromCamera(V3i.ZERO, key.cameraPitch(), key.cameraYaw(),
+                    key.blockDistance(), key.blockRadius());
+        }
+
+        public synchronized boolean isComplete() {
+            return source == null;
+        }
+
+        public Iterator<ScanVolume.RangedPositions> translated(V3i origin) {
+            return new Cursor(origin);
+        }
+
+        private boolean pull() {
+            if (source == null)
+                return false;
+            if (!source.hasNext()) {
+                source = null;
+                return false;
+            }
+
+            final var shell = source.next();
+            final var items = shell.items();
+            final var from = shellStarts[shellCount];
+            final var to = from + items.size();
+            if (to > positions.length)
+                positions = Arrays.copyOf(positions, Math.max(to, positions.length * 2));
+            if (shellCount == shellDistances.length) {
+                shellDistances = Arrays.copyOf(shellDistances, shellCount * 2);
+                shellStarts = Arrays.copyOf(shellStarts, shellCount * 2 + 1);
+            }
+            for (int index = 0; index < items.size(); ++index)
+                positions[from + index] = items.getPacked(index);
+
+            shellDistances[shellCount] = shell.distance();
+            shellStarts[++shellCount] = to;
+            return true;
+        }
+
+        private final class Cursor implements Iterator<ScanVolume.RangedPositions> {
+            private final V3i origin;
+            private int index = 0;
+
+            Cursor(V3i origin) {
+                this.origin = origin;
+            }
+
+            @Override
+            public boolean hasNext() {
+                synchronized (Template.this) {
+                    return index < shellCount || pull();
+                }
+            }
+
+            @Override
+            public ScanVolume.RangedPositions next() {
+                synchronized (Template.this) {
+                    return nextShell();
+                }
+            }
+
+            private ScanVolume.RangedPositions nextShell() {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+                final var items = new PackedPositions(positions, shellStarts[index], shellStarts[index + 1],
+                        origin.getX(), origin.getY(), origin.getZ());
+                final var result = new ScanVolume.RangedPositions(shellDistances[index], items);
+                ++index;
+                return result;
+            }
+        }
+    }
+
+    private final Map<Key, Template> templates = new LinkedHashMap<>(CAPACITY, .75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, Template> eldest) {
+            return size() > CAPACITY;
+        }
+    };
+
+    public @NotNull Template get(int blockDistance, int blockRadius, float cameraPitch, float cameraYaw) {
+        return get(Key.of(blockDistance, blockRadius, cameraPitch, cameraYaw));
+    }
+
+    public @NotNull Template get(Key key) {
+        return templates.computeIfAbsent(key, Template::new);
+    }
+
+    public boolean contains(Key key) {
+        return templates.containsKey(key);
+    }
+
+    public int size() {
+        return templates.size();
+    }
+
+    public void clear() {
+        templates.clear();
+    }
+}
@@ -0,0 +1,116 @@
+// Copyright (c) 2024 Marcin Zdun
+// This code is licensed under MIT license (see LICENSE for details)
+
+package com.midnightbits.scanner.utils;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing set of primitive {@code long} values with linear probing.
+ * Zero is used to mark free slots, so it is tracked with a separate flag.
+ */
+public final class LongHashSet {
+    private static final int MIN_CAPACITY = 16;
+
+    private long[] keys;
+    private int mask;
+    private int size;
+    private int threshold;
+    private boolean hasZero;
+
+    public LongHashSet() {
+        this(MIN_CAPACITY);
+    }
+
+    public LongHashSet(int expected) {
+        allocate(capacityFor(expected));
+    }
+
+    static int capacityFor(int expected) {
+        var capacity = MIN_CAPACITY;
+        while (capacity * 3 / 4 < expected)
+            capacity <<= 1;
+        return capacity;
+    }
+
+    static int mix(long key) {
+        final var h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ h >>> 32);
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        mask = capacity - 1;
+        threshold = capacity * 3 / 4;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean contains(long key) {
+        if (key == 0)
+            return hasZero;
+
+        var index = mix(key) & mask;
+        while (true) {
+            final var current = keys[index];
+            if (current == 0)
+                return false;
+            if (current == key)
+                return true;
+            index = (index + 1) & mask;
+        }
+    }
+
+    /**
+     * @return true, if the key was not in the set before
+     */
+    public boolean add(long key) {
+        if (key == 0) {
+            if (hasZero)
+                return false;
+            hasZero = true;
+            ++size;
+            return true;
+        }
+
+        var index = mix(key) & mask;
+        while (true) {
+            final var current = keys[index];
+            if (current == 0)
+                break;
+            if (current == key)
+                return false;
+            index = (index + 1) & mask;
+        }
+
+        keys[index] = key;
+        if (++size > threshold)
+            rehash(keys.length << 1);
+        return true;
+    }
+
+    public void clear() {
+        Arrays.fill(keys, 0);
+        hasZero = false;
+        size = 0;
+    }
+
+    private void rehash(int capacity) {
+        final var prev = keys;
+        allocate(capacity);
+        for (final var key : prev) {
+            if (key == 0)
+                continue;
+            var index = mix(key) & mask;
+            while (keys[index] != 0)
+                index = (index + 1) & mask;
+            keys[index] = key;
+        }
+    }
+}
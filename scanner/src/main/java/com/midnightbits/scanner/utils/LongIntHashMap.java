@@ -0,0 +1,127 @@
+// Copyright (c) 2024 Marcin Zdun
+// This code is licensed under MIT license (see LICENSE for details)
+
+package com.midnightbits.scanner.utils;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing map from primitive {@code long} keys to {@code int} values,
+ * with linear probing. Zero is used to mark free slots, so its value is kept
+ * in a separate field. There is no removal; the map is meant to be filled,
+ * queried and then dropped or cleared.
+ */
+public final class LongIntHashMap {
+    private long[] keys;
+    private int[] values;
+    private int mask;
+    private int size;
+    private int threshold;
+    private boolean hasZero;
+    private int zeroValue;
+
+    public LongIntHashMap() {
+        this(0);
+    }
+
+    public LongIntHashMap(int expected) {
+        allocate(LongHashSet.capacityFor(expected));
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new int[capacity];
+        mask = capacity - 1;
+        threshold = capacity * 3 / 4;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean containsKey(long key) {
+        if (key == 0)
+            return hasZero;
+
+        var index = LongHashSet.mix(key) & mask;
+        while (true) {
+            final var current = keys[index];
+            if (current == 0)
+                return false;
+            if (current == key)
+                return true;
+            index = (index + 1) & mask;
+        }
+    }
+
+    /**
+     * @return value stored under the key, or {@code missing}, if there is none
+     */
+    public int get(long key, int missing) {
+        if (key == 0)
+            return hasZero ? zeroValue : missing;
+
+        var index = LongHashSet.mix(key) & mask;
+        while (true) {
+            final var current = keys[index];
+            if (current == 0)
+                return missing;
+            if (current == key)
+                return values[index];
+            index = (index + 1) & mask;
+        }
+    }
+
+    public void put(long key, int value) {
+        if (key == 0) {
+            if (!hasZero)
+                ++size;
+            hasZero = true;
+            zeroValue = value;
+            return;
+        }
+
+        var index = LongHashSet.mix(key) & mask;
+        while (true) {
+            final var current = keys[index];
+            if (current == 0)
+                break;
+            if (current == key) {
+                values[index] = value;
+                return;
+            }
+            index = (index + 1) & mask;
+        }
+
+        keys[index] = key;
+        values[index] = value;
+        if (++size > threshold)
+            rehash(keys.length << 1);
+    }
+
+    public void clear() {
+        Arrays.fill(keys, 0);
+        hasZero = false;
+        size = 0;
+    }
+
+    private void rehash(int capacity) {
+        final var prevKeys = keys;
+        final var prevValues = values;
+        allocate(capacity);
+        for (int prev = 0; prev < prevKeys.length; ++prev) {
+            final var key = prevKeys[prev];
+            if (key == 0)
+                continue;
+            var index = LongHashSet.mix(key) & mask;
+            while (keys[index] != 0)
+                index = (index + 1) & mask;
+            keys[index] = key;
+            values[index] = prevValues[prev];
+        }
+    }
+}
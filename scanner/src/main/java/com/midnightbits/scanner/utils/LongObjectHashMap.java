@@ -0,0 +1,182 @@
+// Copyright (c) 2024 Marcin Zdun
+// This code is licensed under MIT license (see LICENSE for details)
+
+package com.midnightbits.scanner.utils;
+
+import java.util.Arrays;
+import java.util.function.BiConsumer;
+
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Open-addressing map from primitive {@code long} keys to objects, with
+ * linear probing. Zero is used to mark free slots, so its value is kept in a
+ * separate field. Removal shifts the following entries back, so there are no
+ * tombstones to clean up.
+ */
+public final class LongObjectHashMap<V> {
+    private long[] keys;
+    private Object[] values;
+    private int mask;
+    private int size;
+    private int threshold;
+    private boolean hasZero;
+    private Object zeroValue;
+
+    public LongObjectHashMap() {
+        this(0);
+    }
+
+    public LongObjectHashMap(int expected) {
+        allocate(LongHashSet.capacityFor(expected));
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new Object[capacity];
+        mask = capacity - 1;
+        threshold = capacity * 3 / 4;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    private int indexOf(long key) {
+        var index = LongHashSet.mix(key) & mask;
+        while (true) {
+            final var current = keys[index];
+            if (current == 0)
+                return -1;
+            if (current == key)
+                return index;
+            index = (index + 1) & mask;
+        }
+    }
+
+    public boolean containsKey(long key) {
+        return key == 0 ? hasZero : indexOf(key) >= 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    public @Nullable V get(long key) {
+        if (key == 0)
+            return (V) zeroValue;
+        final var index = indexOf(key);
+        return index < 0 ? null : (V) values[index];
+    }
+
+    /**
+     * @return previous value stored under the key, if any
+     */
+    @SuppressWarnings("unchecked")
+    public @Nullable V put(long key, V value) {
+        if (key == 0) {
+            final var prev = (V) zeroValue;
+            if (!hasZero)
+                ++size;
+            hasZero = true;
+            zeroValue = value;
+            return prev;
+        }
+
+        var index = LongHashSet.mix(key) & mask;
+        while (true) {
+            final var current = keys[index];
+            if (current == 0)
+                break;
+            if (current == key) {
+                final var prev = (V) values[index];
+                values[index] = value;
+                return prev;
+            }
+            index = (index + 1) & mask;
+        }
+
+        keys[index] = key;
+        values[index] = value;
+        if (++size > threshold)
+            rehash(keys.length << 1);
+        return null;
+    }
+
+    /**
+     * @return value, which was stored under the key, if any
+     */
+    @SuppressWarnings("unchecked")
+    public @Nullable V remove(long key) {
+        if (key == 0) {
+            if (!hasZero)
+                return null;
+            final var prev = (V) zeroValue;
+            hasZero = false;
+            zeroValue = null;
+            --size;
+            return prev;
+        }
+
+        var index = indexOf(key);
+        if (index < 0)
+            return null;
+
+        final var prev = (V) values[index];
+        --size;
+
+        // move back every entry of this run, which would not be found after
+        // the hole was left in its probe sequence
+        var hole = index;
+        while (true) {
+            index = (index + 1) & mask;
+            final var current = keys[index];
+            if (current == 0)
+                break;
+            final var home = LongHashSet.mix(current) & mask;
+            if (((index - home) & mask) >= ((index - hole) & mask)) {
+                keys[hole] = current;
+                values[hole] = values[index];
+                hole = index;
+            }
+        }
+        keys[hole] = 0;
+        values[hole] = null;
+        return prev;
+    }
+
+    @SuppressWarnings("unchecked")
+    public void forEach(BiConsumer<Long, V> action) {
+        if (hasZero)
+            action.accept(0L, (V) zeroValue);
+        for (int index = 0; index < keys.length; ++index) {
+            if (keys[index] != 0)
+                action.accept(keys[index], (V) values[index]);
+        }
+    }
+
+    public void clear() {
+        Arrays.fill(keys, 0);
+        Arrays.fill(values, null);
+        hasZero = false;
+        zeroValue = null;
+        size = 0;
+    }
+
+    private void rehash(int capacity) {
+        final var prevKeys = keys;
+        final var prevValues = values;
+        allocate(capacity);
+        for (int prev = 0; prev < prevKeys.length; ++prev) {
+            final var key = prevKeys[prev];
+            if (key == 0)
+                continue;
+            var index = LongHashSet.mix(key) & mask;
+            while (keys[index] != 0)
+                index = (index + 1) & mask;
+            keys[index] = key;
+            values[index] = prevValues[prev];
+        }
+    }
+}
@@ -82,7 +82,11 @@ public final class Options extends EventEmitterOf.Impl<Settings.Event> {
     }
 
     public void setAll(int blockDistance, int blockRadius, int lifetime, Set<Id> interestingIds, boolean notify) {
-        settings = new Settings(blockDistance, blockRadius, lifetime, interestingIds);
+        setAll(new Settings(blockDistance, blockRadius, lifetime, interestingIds), notify);
+    }
+
+    public void setAll(Settings settings, boolean notify) {
+        this.settings = settings;
         store();
         if (notify) {
             dispatchSettingsEvent(settings);
@@ -0,0 +1,60 @@
+// Copyright (c) 2024 Marcin Zdun
+// This code is licensed under MIT license (see LICENSE for details)
+
+package com.midnightbits.scanner.utils;
+
+import java.util.AbstractList;
+import java.util.RandomAccess;
+
+import com.midnightbits.scanner.rt.math.PackedPos;
+import com.midnightbits.scanner.rt.math.V3i;
+
+/**
+ * Read-only window over a range of packed positions, optionally moved by a
+ * fixed offset. Nothing is copied; {@link V3i} objects are only created when
+ * the list is accessed through the {@link java.util.List} interface.
+ */
+public final class PackedPositions extends AbstractList<V3i> implements RandomAccess {
+    private static final long[] EMPTY_ARRAY = new long[0];
+    public static final PackedPositions EMPTY = new PackedPositions(EMPTY_ARRAY, 0, 0);
+
+    private final long[] positions;
+    private final int from;
+    private final int to;
+    private final int dx;
+    private final int dy;
+    private final int dz;
+
+    public PackedPositions(long[] positions, int from, int to, int dx, int dy, int dz) {
+        this.positions = positions;
+        this.from = from;
+        this.to = to;
+        this.dx = dx;
+        this.dy = dy;
+        this.dz = dz;
+    }
+
+    public PackedPositions(long[] positions, int from, int to) {
+        this(positions, from, to, 0, 0, 0);
+    }
+
+    public static PackedPositions of(long... positions) {
+        return new PackedPositions(positions, 0, positions.length);
+    }
+
+    public long getPacked(int index) {
+        return PackedPos.add(positions[from + index], dx, dy, dz);
+    }
+
+    @Override
+    public V3i get(int index) {
+        if (index < 0 || index >= size())
+            throw new IndexOutOfBoundsException(index);
+        return PackedPos.unpack(getPacked(index));
+    }
+
+    @Override
+    public int size() {
+        return to - from;
+    }
+}
@@ -0,0 +1,337 @@
+// Copyright (c) 2024 Marcin Zdun
+// This code is licensed under MIT license (see LICENSE for details)
+
+package com.midnightbits.scanner.utils;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import com.midnightbits.scanner.rt.math.PackedPos;
+import com.midnightbits.scanner.rt.math.V3d;
+import com.midnightbits.scanner.rt.math.V3i;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Spherical sector in front of the operator, produced one distance shell at a
+ * time. The sector has its apex at the operator, its axis along the camera
+ * and it widens by the block radius over the block distance; it is capped
+ * with a sphere going through the end of the axis, so no block is further
+ * away than the block distance the scan was asked for.
+ *
+ * <p>
+ * A block belongs to the sector, if it is not behind the operator, its center
+ * is not further from the operator than the end of the axis, and its center
+ * is at most half a block diagonal outside the cone's side. The sector is
+ * convex, so it crosses every {@code (x, y)} column of its bounding box in a
+ * single run of {@code z}; these runs are found once, when the volume is
+ * created. Every shell then solves the sphere equation for {@code z} only in
+ * the columns reaching into it, so there is no tracing, no de-duplication
+ * and no sorting; apart from the runs, which grow with the sector's cross
+ * section, only the current shell is kept in memory.
+ */
+public final class ScanVolume implements Iterator<ScanVolume.RangedPositions>, Iterable<ScanVolume.RangedPositions> {
+    /**
+     * Shells are keyed by their distance from the operator, in
+     * {@code 1 / PRECISION} of a block.
+     */
+    public static final int PRECISION = 4;
+    private static final double HALF_DIAGONAL = Math.sqrt(3) / 2;
+    private static final int INITIAL_CAPACITY = 256;
+
+    private final V3i operator;
+    private final long axisX;
+    private final long axisY;
+    private final long axisZ;
+    private final long axisLength2;
+    private final int radius;
+    private final long reach2;
+    private final int minX;
+    private final int maxX;
+    private final int minY;
+    private final int maxY;
+    private final int minZ;
+    private final int maxZ;
+
+    // non-empty columns, ordered by x, then y
+    private final int[] columnX;
+    private final int[] columnY;
+    private final int[] columnFromZ;
+    private final int[] columnToZ;
+    // column indices, ordered by the distance to the closest block of each
+    // column, kept in the upper half
+    private final long[] byNearest;
+
+    private long nextDistance2 = 0;
+    private int nextColumn = 0;
+    private int[] active = new int[INITIAL_CAPACITY];
+    private int activeCount = 0;
+    private long[] scratch = new long[INITIAL_CAPACITY];
+    private RangedPositions pending = null;
+
+    public static ScanVolume fromCamera(V3i operator, V3d camera, int distance, int radius) {
+        final var offset = V3i.ofRounded(camera.multiply(distance));
+        return new ScanVolume(operator, offset, radius);
+    }
+
+    public static ScanVolume fromCamera(V3i operator, float cameraPitch, float cameraYaw, int distance, int radius) {
+        return fromCamera(operator, V3d.fromPolar(cameraPitch, cameraYaw), distance, radius);
+    }
+
+    public ScanVolume(V3i operator, V3i offset, int radius) {
+        this.operator = operator;
+        this.axisX = offset.getX();
+        this.axisY = offset.getY();
+        this.axisZ = offset.getZ();
+        this.axisLength2 = axisX * axisX + axisY * axisY + axisZ * axisZ;
+        this.radius = radius;
+        this.reach2 = axisLength2;
+
+        final var reach = Math.sqrt(reach2);
+        final var opening = axisLength2 == 0 ? 0 : Math.atan2(radius, Math.sqrt(axisLength2));
+        minX = -extent(-axisX, reach, opening);
+        maxX = extent(axisX, reach, opening);
+        minY = -extent(-axisY, reach, opening);
+        maxY = extent(axisY, reach, opening);
+        minZ = -extent(-axisZ, reach, opening);
+        maxZ = extent(axisZ, reach, opening);
+
+        final var columns = (maxX - minX + 1) * (maxY - minY + 1);
+        final var xs = new int[columns];
+        final var ys = new int[columns];
+        final var fromZ = new int[columns];
+        final var toZ = new int[columns];
+        final var nearest = new long[columns];
+        var count = 0;
+        for (int x = minX; x <= maxX; ++x) {
+            for (int y = minY; y <= maxY; ++y) {
+                if (!findRun(x, y, fromZ, toZ, count))
+                    continue;
+                xs[count] = x;
+                ys[count] = y;
+                final var nearZ = Math.max(fromZ[count], Math.min(toZ[count], 0));
+                final var near2 = (long) x * x + (long) y * y + (long) nearZ * nearZ;
+                nearest[count] = (near2 << 32) | count;
+                ++count;
+            }
+        }
+
+        columnX = Arrays.copyOf(xs, count);
+        columnY = Arrays.copyOf(ys, count);
+        columnFromZ = Arrays.copyOf(fromZ, count);
+        columnToZ = Arrays.copyOf(toZ, count);
+        byNearest = Arrays.copyOf(nearest, count);
+        Arrays.sort(byNearest);
+    }
+
+    private int extent(long axisComponent, double reach, double opening) {
+        if (axisLength2 == 0)
+            return 0;
+        final var angle = Math.acos(axisComponent / Math.sqrt(axisLength2));
+        final var farthest = angle <= opening ? reach : reach * Math.max(0, Math.cos(angle - opening));
+        return (int) Math.ceil(farthest + HALF_DIAGONAL);
+    }
+
+    /**
+     * Finds the run of blocks of the {@code (x, y)} column, which are inside
+     * the sector, and stores its ends under the index.
+     *
+     * @return false, if the column misses the sector
+     */
+    private boolean findRun(int x, int y, int[] fromZ, int[] toZ, int index) {
+        final var xy2 = (long) x * x + (long) y * y;
+        if (xy2 > reach2)
+            return false;
+
+        // the sphere...
+        final var sphere = isqrt(reach2 - xy2);
+        var lo = Math.max(minZ, -sphere);
+        var hi = Math.min(maxZ, sphere);
+
+        // ...and the half-space in front of the operator
+        final var flat = x * axisX + y * axisY;
+        if (axisZ > 0)
+            lo = Math.max(lo, -Math.floorDiv(flat, axisZ));
+        else if (axisZ < 0)
+            hi = Math.min(hi, Math.floorDiv(flat, -axisZ));
+        else if (flat < 0)
+            return false;
+        if (lo > hi)
+            return false;
+
+        // distance to the cone's side is convex along the column, so the
+        // point furthest inside the cone is found by a ternary search...
+        var left = lo;
+        var right = hi;
+        while (right - left > 2) {
+            final var third = (right - left) / 3;
+            if (depth(x, y, left + third) < depth(x, y, right - third))
+                left += third + 1;
+            else
+                right -= third + 1;
+        }
+        var inside = left;
+        for (long z = left + 1; z <= right; ++z) {
+            if (depth(x, y, z) > depth(x, y, inside))
+                inside = z;
+        }
+        if (!contains(x, y, (int) inside))
+            return false;
+
+        // ...and the ends of the run by bisection from there
+        var outside = lo - 1;
+        var first = inside;
+        while (first - outside > 1) {
+            final var middle = (first + outside) >> 1;
+            if (contains(x, y, (int) middle))
+                first = middle;
+            else
+                outside = middle;
+        }
+        outside = hi + 1;
+        var last = inside;
+        while (outside - last > 1) {
+            final var middle = (last + outside) >> 1;
+            if (contains(x, y, (int) middle))
+                last = middle;
+            else
+                outside = middle;
+        }
+
+        fromZ[index] = (int) first;
+        toZ[index] = (int) last;
+        return true;
+    }
+
+    /**
+     * @return how far inside the widened cone the block is; negative values
+     *         are outside of it
+     */
+    private double depth(long x, long y, long z) {
+        if (axisLength2 == 0)
+            return x == 0 && y == 0 && z == 0 ? 0 : -1;
+        final var distance2 = x * x + y * y + z * z;
+        final var dot = x * axisX + y * axisY + z * axisZ;
+        final var perpendicular2 = distance2 - (double) dot * dot / axisLength2;
+        final var limit = (double) dot * radius / axisLength2 + HALF_DIAGONAL;
+        return limit - Math.sqrt(Math.max(0, perpendicular2));
+    }
+
+    public static int distanceKey(long distance2) {
+        return (int) Math.round(Math.sqrt(distance2) * PRECISION);
+    }
+
+    public boolean contains(int x, int y, int z) {
+        final long distance2 = (long) x * x + (long) y * y + (long) z * z;
+        if (distance2 > reach2)
+            return false;
+        if (distance2 == 0)
+            return true;
+        if (axisLength2 == 0)
+            return false;
+
+        final var dot = x * axisX + y * axisY + z * axisZ;
+        if (dot < 0)
+            return false;
+
+        final var perpendicular2 = distance2 - (double) dot * dot / axisLength2;
+        final var limit = (double) dot * radius / axisLength2 + HALF_DIAGONAL;
+        return perpendicular2 <= limit * limit;
+    }
+
+    @NotNull
+    @Override
+    public Iterator<RangedPositions> iterator() {
+        return this;
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (pending == null && nextDistance2 <= reach2) {
+            final var lo = nextDistance2;
+            final var key = distanceKey(lo);
+            var hi = lo;
+            while (hi < reach2 && distanceKey(hi + 1) == key)
+                ++hi;
+            nextDistance2 = hi + 1;
+
+            final var count = rasterize(lo, hi);
+            if (count > 0)
+                pending = new RangedPositions(key, PackedPositions.of(Arrays.copyOf(scratch, count)));
+        }
+        return pending != null;
+    }
+
+    @Override
+    public RangedPositions next() {
+        if (!hasNext())
+            throw new NoSuchElementException();
+        final var result = pending;
+        pending = null;
+        return result;
+    }
+
+    private int rasterize(long lo, long hi) {
+        while (nextColumn < byNearest.length && (byNearest[nextColumn] >>> 32) <= hi) {
+            if (activeCount == active.length)
+                active = Arrays.copyOf(active, activeCount * 2);
+            active[activeCount++] = (int) byNearest[nextColumn++];
+        }
+        // columns are numbered in x, then y order; keeping the active ones in
+        // that order keeps the order of blocks within a shell
+        Arrays.sort(active, 0, activeCount);
+
+        var count = 0;
+        var kept = 0;
+        for (int index = 0; index < activeCount; ++index) {
+            final var column = active[index];
+            final var x = columnX[column];
+            final var y = columnY[column];
+            final var fromZ = columnFromZ[column];
+            final var toZ = columnToZ[column];
+            final var xy2 = (long) x * x + (long) y * y;
+
+            final var zMax = (int) isqrt(hi - xy2);
+            final var zMin = lo <= xy2 ? 0 : (int) ceilSqrt(lo - xy2);
+            if (zMin <= zMax) {
+                // both halves of the z range, in ascending z
+                for (int z = Math.max(-zMax, fromZ); z <= Math.min(-zMin, toZ); ++z)
+                    count = append(count, x, y, z);
+                for (int z = Math.max(Math.max(zMin, 1), fromZ); z <= Math.min(zMax, toZ); ++z)
+                    count = append(count, x, y, z);
+            }
+
+            // a column stays active, until its furthest block is behind
+            final var farZ = Math.max(Math.abs(fromZ), Math.abs(toZ));
+            if (xy2 + (long) farZ * farZ > hi)
+                active[kept++] = column;
+        }
+        activeCount = kept;
+
+        return count;
+    }
+
+    private int append(int count, int x, int y, int z) {
+        if (count == scratch.length)
+            scratch = Arrays.copyOf(scratch, count * 2);
+        scratch[count] = PackedPos.pack(operator.getX() + x, operator.getY() + y, operator.getZ() + z);
+        return count + 1;
+    }
+
+    private static long isqrt(long value) {
+        var root = (long) Math.sqrt(value);
+        while (root * root > value)
+            --root;
+        while ((root + 1) * (root + 1) <= value)
+            ++root;
+        return root;
+    }
+
+    private static long ceilSqrt(long value) {
+        final var root = isqrt(value);
+        return root * root == value ? root : root + 1;
+    }
+
+    public record RangedPositions(int distance, PackedPositions items) {
+    }
+}
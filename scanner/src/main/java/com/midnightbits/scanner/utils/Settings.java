@@ -13,18 +13,28 @@ import com.midnightbits.scanner.rt.core.Id;
 import com.midnightbits.scanner.sonar.Echoes;
 import org.jetbrains.annotations.Nullable;
 
-public record Settings(int blockDistance, int blockRadius, int lifetime, Set<Id> interestingIds) {
+/**
+ * @param verbose if true, every block found is reported as soon as the wave
+ *                reaches it; otherwise, a single summary is sent at the end
+ *                of each ping
+ */
+public record Settings(int blockDistance, int blockRadius, int lifetime, Set<Id> interestingIds,
+        boolean verbose) {
 
     private static final Gson GSON = new Gson();
 
     private record JsonSettings(int blockDistance, int blockRadius, @Nullable Double lifetime,
-            String[] interestingIds) {
+            String[] interestingIds, @Nullable Boolean verbose) {
     };
 
+    public Settings(int blockDistance, int blockRadius, int lifetime, Set<Id> interestingIds) {
+        this(blockDistance, blockRadius, lifetime, interestingIds, false);
+    }
+
     String serialize() {
         final var ids = interestingIds.stream().map(Id::toString).sorted().toArray(String[]::new);
         final var lifetimeInSec = lifetime / 1000.0;
-        return GSON.toJson(new JsonSettings(blockDistance, blockRadius, lifetimeInSec, ids));
+        return GSON.toJson(new JsonSettings(blockDistance, blockRadius, lifetimeInSec, ids, verbose));
     }
 
     static Settings deserialize(String content) {
@@ -37,26 +47,31 @@ public record Settings(int blockDistance, int blockRadius, int lifetime, Set<Id>
             var ids = Arrays.stream(settings.interestingIds).map(Id::of).collect(Collectors.toSet());
             var lifetime = settings.lifetime == null ? Echoes.ECHO_LIFETIME
                     : (int) (settings.lifetime * 1000 + .5);
-            return new Settings(settings.blockDistance, settings.blockRadius, lifetime, ids);
+            final var verbose = settings.verbose != null && settings.verbose;
+            return new Settings(settings.blockDistance, settings.blockRadius, lifetime, ids, verbose);
         } catch (JsonSyntaxException e) {
             return null;
         }
     }
 
     public Settings withBlockDistance(int value) {
-        return new Settings(value, blockRadius, lifetime, interestingIds);
+        return new Settings(value, blockRadius, lifetime, interestingIds, verbose);
     }
 
     public Settings withBlockRadius(int value) {
-        return new Settings(blockDistance, value, lifetime, interestingIds);
+        return new Settings(blockDistance, value, lifetime, interestingIds, verbose);
     }
 
     public Settings withLifetime(int value) {
-        return new Settings(blockDistance, blockRadius, value, interestingIds);
+        return new Settings(blockDistance, blockRadius, value, interestingIds, verbose);
     }
 
     public Settings withIds(Set<Id> value) {
-        return new Settings(blockDistance, blockRadius, lifetime, value);
+        return new Settings(blockDistance, blockRadius, lifetime, value, verbose);
+    }
+
+    public Settings withVerbose(boolean value) {
+        return new Settings(blockDistance, blockRadius, lifetime, interestingIds, value);
     }
 
     public static class Event extends com.midnightbits.scanner.rt.event.Event {
@@ -0,0 +1,135 @@
+// Copyright (c) 2024 Marcin Zdun
+// This code is licensed under MIT license (see LICENSE for details)
+
+package com.midnightbits.scanner.utils;
+
+import com.midnightbits.scanner.rt.math.V3i;
+
+/**
+ * Amanatides&ndash;Woo traversal of all the blocks crossed by a segment going
+ * from the center of one block to the center of another. Crossings are
+ * compared with integer arithmetic, so there is no drift over long rays.
+ * Whenever the segment goes exactly through an edge or a corner, all the
+ * blocks touching that edge or corner are reported as well (supercover), so
+ * diagonal rays have no gaps.
+ *
+ * <p>
+ * Nothing is allocated while walking the ray; each block is handed to the
+ * {@link Visitor} as three ints.
+ */
+public final class VoxelRay {
+    @FunctionalInterface
+    public interface Visitor {
+        /**
+         * @return false, if the traversal should stop at this block
+         */
+        boolean visit(int x, int y, int z);
+    }
+
+    private static final int AXIS_X = 1;
+    private static final int AXIS_Y = 2;
+    private static final int AXIS_Z = 4;
+
+    /**
+     * @return number of visited blocks, including the one, which stopped the
+     *         traversal
+     */
+    public static int trace(V3i from, V3i to, Visitor visitor) {
+        return trace(from.getX(), from.getY(), from.getZ(), to.getX(), to.getY(), to.getZ(), visitor);
+    }
+
+    public static int trace(int x, int y, int z, int toX, int toY, int toZ, Visitor visitor) {
+        final long nx = Math.abs(toX - x);
+        final long ny = Math.abs(toY - y);
+        final long nz = Math.abs(toZ - z);
+        final var sx = toX < x ? -1 : 1;
+        final var sy = toY < y ? -1 : 1;
+        final var sz = toZ < z ? -1 : 1;
+
+        // k-th boundary on an axis is crossed at t = (2k - 1) / 2n; comparing
+        // two crossings is comparing (2ka - 1) * nb with (2kb - 1) * na
+        long kx = nx == 0 ? 0 : 1;
+        long ky = ny == 0 ? 0 : 1;
+        long kz = nz == 0 ? 0 : 1;
+
+        var visited = 1;
+        if (!visitor.visit(x, y, z))
+            return visited;
+
+        while (kx != 0 || ky != 0 || kz != 0) {
+            var axes = 0;
+            long bestNum = 0;
+            long bestDen = 1;
+
+            if (kx != 0) {
+                axes = AXIS_X;
+                bestNum = 2 * kx - 1;
+                bestDen = nx;
+            }
+
+            if (ky != 0) {
+                final var num = 2 * ky - 1;
+                final var order = axes == 0 ? -1 : Long.compare(num * bestDen, bestNum * ny);
+                if (order < 0) {
+                    axes = AXIS_Y;
+                    bestNum = num;
+                    bestDen = ny;
+                } else if (order == 0) {
+                    axes |= AXIS_Y;
+                }
+            }
+
+            if (kz != 0) {
+                final var num = 2 * kz - 1;
+                final var order = axes == 0 ? -1 : Long.compare(num * bestDen, bestNum * nz);
+                if (order < 0) {
+                    axes = AXIS_Z;
+                } else if (order == 0) {
+                    axes |= AXIS_Z;
+                }
+            }
+
+            final var dx = (axes & AXIS_X) != 0 ? sx : 0;
+            final var dy = (axes & AXIS_Y) != 0 ? sy : 0;
+            final var dz = (axes & AXIS_Z) != 0 ? sz : 0;
+
+            final var crossed = Integer.bitCount(axes);
+            if (crossed > 1) {
+                // the segment touches an edge or a corner; visit every block
+                // around it, which is closer than the one diagonally
+                // opposite, single steps first
+                for (int bits = 1; bits < crossed; ++bits) {
+                    for (int partial = 1; partial < axes; ++partial) {
+                        if ((partial & axes) != partial || Integer.bitCount(partial) != bits)
+                            continue;
+                        ++visited;
+                        if (!visitor.visit(
+                                x + ((partial & AXIS_X) != 0 ? dx : 0),
+                                y + ((partial & AXIS_Y) != 0 ? dy : 0),
+                                z + ((partial & AXIS_Z) != 0 ? dz : 0)))
+                            return visited;
+                    }
+                }
+            }
+
+            x += dx;
+            y += dy;
+            z += dz;
+            if (dx != 0)
+                kx = kx == nx ? 0 : kx + 1;
+            if (dy != 0)
+                ky = ky == ny ? 0 : ky + 1;
+            if (dz != 0)
+                kz = kz == nz ? 0 : kz + 1;
+
+            ++visited;
+            if (!visitor.visit(x, y, z))
+                return visited;
+        }
+
+        return visited;
+    }
+
+    private VoxelRay() {
+    }
+}
@@ -0,0 +1,55 @@
+// Copyright (c) 2024 Marcin Zdun
+// This code is licensed under MIT license (see LICENSE for details)
+
+package com.midnightbits.scanner.rt.core.test;
+
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import com.midnightbits.scanner.rt.core.Id;
+import com.midnightbits.scanner.rt.core.IdSet;
+
+public class IdTest {
+    @Test
+    void idsAreInterned() {
+        final var parsed = Id.of("minecraft:diamond_ore");
+        Assertions.assertSame(Id.ofVanilla("diamond_ore"), parsed);
+        Assertions.assertSame(Id.of("minecraft", "diamond_ore"), parsed);
+        Assertions.assertSame(Id.tryParse("diamond_ore"), parsed);
+        Assertions.assertSame(Id.ofVanilla("iron_ore").withPath("diamond_ore"), parsed);
+        Assertions.assertEquals(parsed.getHandle(), Id.of("diamond_ore").getHandle());
+        Assertions.assertTrue(parsed.getHandle() < Id.handleCount());
+
+        final var other = Id.of("resource-scanner:diamond_ore");
+        Assertions.assertNotSame(parsed, other);
+        Assertions.assertNotEquals(parsed, other);
+        Assertions.assertNotEquals(parsed.getHandle(), other.getHandle());
+    }
+
+    @Test
+    void orderIsStillByName() {
+        final var coal = Id.ofVanilla("coal_ore");
+        final var iron = Id.ofVanilla("iron_ore");
+        final var modIron = Id.ofMod("iron_ore");
+
+        Assertions.assertTrue(coal.compareTo(iron) < 0);
+        Assertions.assertTrue(iron.compareTo(coal) > 0);
+        Assertions.assertTrue(iron.compareTo(modIron) < 0);
+        Assertions.assertEquals(0, iron.compareTo(Id.of("iron_ore")));
+    }
+
+    @Test
+    void idSetChecksHandles() {
+        final var set = IdSet.of(List.of(Id.ofVanilla("gold_ore"), Id.ofVanilla("coal_ore"), Id.ofVanilla("gold_ore")));
+        Assertions.assertEquals(2, set.size());
+        Assertions.assertTrue(set.contains(Id.of("gold_ore")));
+        Assertions.assertTrue(set.contains((Object) Id.of("coal_ore")));
+        Assertions.assertFalse(set.contains(Id.ofVanilla("iron_ore")));
+        Assertions.assertFalse(set.contains((Object) "minecraft:gold_ore"));
+        Assertions.assertEquals(Set.of(Id.ofVanilla("gold_ore"), Id.ofVanilla("coal_ore")), set);
+        Assertions.assertSame(set, IdSet.of(set));
+    }
+}
@@ -0,0 +1,126 @@
+// Copyright (c) 2024 Marcin Zdun
+// This code is licensed under MIT license (see LICENSE for details)
+
+package com.midnightbits.scanner.sonar.graphics.test;
+
+import java.util.Random;
+import java.util.TreeSet;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import com.midnightbits.scanner.sonar.graphics.BoundsTree;
+import com.midnightbits.scanner.sonar.graphics.FrustumFilter;
+
+public class BoundsTreeTest {
+    private static double[] randomBoxes(Random random, int count) {
+        final var boxes = new double[count * 6];
+        for (int box = 0; box < boxes.length; box += 6) {
+            for (int axis = 0; axis < 3; ++axis) {
+                final var min = random.nextInt(64);
+                boxes[box + axis] = min;
+                boxes[box + 3 + axis] = min + 1 + random.nextInt(3);
+            }
+        }
+        return boxes;
+    }
+
+    private static FrustumFilter window(double x, double y, double z, double size) {
+        return (minX, minY, minZ, maxX, maxY, maxZ) -> maxX > x && minX < x + size && maxY > y
+                && minY < y + size && maxZ > z && minZ < z + size;
+    }
+
+    private static TreeSet<Integer> culled(BoundsTree tree, FrustumFilter frustum) {
+        final var ranges = new BoundsTree.Ranges();
+        tree.cull(frustum, ranges);
+
+        final var items = new TreeSet<Integer>();
+        var last = -1;
+        for (int range = 0; range < ranges.count(); ++range) {
+            Assertions.assertTrue(ranges.from(range) > last, "ranges are sorted and apart");
+            Assertions.assertTrue(ranges.to(range) > ranges.from(range));
+            last = ranges.to(range);
+            for (int slot = ranges.from(range); slot < ranges.to(range); ++slot) {
+                Assertions.assertTrue(ranges.contains(0, ranges.count(), slot));
+                items.add(tree.item(slot));
+            }
+        }
+        return items;
+    }
+
+    @Test
+    void emptyTreeCullsNothing() {
+        final var tree = new BoundsTree(new double[0]);
+        final var ranges = new BoundsTree.Ranges();
+        tree.cull((minX, minY, minZ, maxX, maxY, maxZ) -> true, ranges);
+        Assertions.assertEquals(0, tree.size());
+        Assertions.assertEquals(0, ranges.count());
+    }
+
+    @Test
+    void slotsAndItemsMatch() {
+        final var tree = new BoundsTree(randomBoxes(new Random(0x736c6f74), 300));
+        Assertions.assertEquals(300, tree.size());
+        final var seen = new TreeSet<Integer>();
+        for (int slot = 0; slot < tree.size(); ++slot) {
+            Assertions.assertEquals(slot, tree.slotOf(tree.item(slot)));
+            seen.add(tree.item(slot));
+        }
+        Assertions.assertEquals(300, seen.size());
+    }
+
+    @Test
+    void cullsSameBoxesAsBruteForce() {
+        final var random = new Random(0x62766821);
+        final var boxes = randomBoxes(random, 1000);
+        final var tree = new BoundsTree(boxes);
+
+        for (int round = 0; round < 100; ++round) {
+            final var frustum = window(random.nextInt(70) - 5, random.nextInt(70) - 5, random.nextInt(70) - 5,
+                    random.nextInt(40));
+
+            final var expected = new TreeSet<Integer>();
+            for (int item = 0; item < boxes.length / 6; ++item) {
+                final var box = item * 6;
+                if (frustum.contains(boxes[box], boxes[box + 1], boxes[box + 2], boxes[box + 3], boxes[box + 4],
+                        boxes[box + 5]))
+                    expected.add(item);
+            }
+
+            Assertions.assertEquals(expected, culled(tree, frustum), "round " + round);
+        }
+    }
+
+    @Test
+    void skipsWholeSubtrees() {
+        final var random = new Random(0x736b6970);
+        final var tree = new BoundsTree(randomBoxes(random, 4000));
+
+        final var window = window(0, 0, 0, 8);
+        final var calls = new int[] { 0 };
+        final FrustumFilter counting = (minX, minY, minZ, maxX, maxY, maxZ) -> {
+            ++calls[0];
+            return window.contains(minX, minY, minZ, maxX, maxY, maxZ);
+        };
+
+        final var visible = culled(tree, counting);
+        Assertions.assertFalse(visible.isEmpty());
+        Assertions.assertTrue(calls[0] < tree.size() / 4, "calls: " + calls[0]);
+    }
+
+    @Test
+    void sealedRangesAreNotJoined() {
+        final var ranges = new BoundsTree.Ranges();
+        ranges.add(0, 2);
+        ranges.add(2, 3);
+        Assertions.assertEquals(1, ranges.count());
+        ranges.seal();
+        ranges.add(3, 5);
+        Assertions.assertEquals(2, ranges.count());
+        Assertions.assertEquals(3, ranges.from(1));
+        Assertions.assertEquals(5, ranges.to(1));
+        Assertions.assertTrue(ranges.contains(1, 2, 4));
+        Assertions.assertFalse(ranges.contains(1, 2, 2));
+        Assertions.assertTrue(ranges.contains(0, 1, 2));
+    }
+}
@@ -0,0 +1,99 @@
+// Copyright (c) 2024 Marcin Zdun
+// This code is licensed under MIT license (see LICENSE for details)
+
+package com.midnightbits.scanner.sonar.graphics.test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.joml.Vector3f;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import com.midnightbits.scanner.sonar.graphics.DepthOrder;
+
+public class DepthOrderTest {
+    private static float[] randomCenters(Random random, int count) {
+        final var centers = new float[count * 3];
+        for (int index = 0; index < centers.length; ++index)
+            centers[index] = random.nextInt(32) + .5F;
+        return centers;
+    }
+
+    private static int[] expected(float[] centers, Vector3f camera) {
+        final var count = centers.length / 3;
+        final var distances = new float[count];
+        final var order = new Integer[count];
+        for (int index = 0; index < count; ++index) {
+            order[index] = index;
+            distances[index] = new Vector3f(centers[index * 3], centers[index * 3 + 1], centers[index * 3 + 2])
+                    .distanceSquared(camera);
+        }
+        // stable, so ties keep their original order
+        Arrays.sort(order, (lhs, rhs) -> Float.compare(distances[rhs], distances[lhs]));
+        return Arrays.stream(order).mapToInt(Integer::intValue).toArray();
+    }
+
+    @Test
+    void emptyOrderIsEmpty() {
+        final var depth = new DepthOrder(new float[0]);
+        Assertions.assertEquals(0, depth.size());
+        Assertions.assertEquals(0, depth.furthestToClosest(new Vector3f()).length);
+        Assertions.assertEquals(0, depth.furthestDistanceSquared(new Vector3f()));
+    }
+
+    @Test
+    void followsMovingCamera() {
+        final var random = new Random(0x64657074);
+        final var centers = randomCenters(random, 500);
+        final var depth = new DepthOrder(centers);
+
+        final var camera = new Vector3f(-5, 10, 3);
+        final var sortedFor = new Vector3f(camera);
+        var previous = depth.furthestToClosest(camera).clone();
+        Assertions.assertArrayEquals(expected(centers, camera), previous);
+
+        for (int frame = 0; frame < 200; ++frame) {
+            camera.add(random.nextFloat() * .4F - .1F, random.nextFloat() * .2F - .1F, random.nextFloat() * .4F - .2F);
+            final var actual = depth.furthestToClosest(camera).clone();
+
+            if (camera.distance(sortedFor) < DepthOrder.THRESHOLD) {
+                Assertions.assertArrayEquals(previous, actual, "frame " + frame);
+            } else {
+                Assertions.assertArrayEquals(expected(centers, camera), actual, "frame " + frame);
+                sortedFor.set(camera);
+            }
+            previous = actual;
+        }
+    }
+
+    @Test
+    void keepsOrderForSmallMoves() {
+        final var random = new Random(0x736d616c);
+        final var centers = randomCenters(random, 100);
+        final var depth = new DepthOrder(centers);
+
+        final var camera = new Vector3f(16, 16, 16);
+        final var first = depth.furthestToClosest(camera).clone();
+        Assertions.assertArrayEquals(expected(centers, camera), first);
+
+        final var nearby = new Vector3f(camera).add(DepthOrder.THRESHOLD / 2, 0, 0);
+        Assertions.assertArrayEquals(first, depth.furthestToClosest(nearby));
+    }
+
+    @Test
+    void survivesJumps() {
+        final var random = new Random(0x6a756d70);
+        final var centers = randomCenters(random, 2000);
+        final var depth = new DepthOrder(centers);
+
+        for (int jump = 0; jump < 20; ++jump) {
+            final var camera = new Vector3f(random.nextFloat() * 200 - 100, random.nextFloat() * 200 - 100,
+                    random.nextFloat() * 200 - 100);
+            Assertions.assertArrayEquals(expected(centers, camera), depth.furthestToClosest(camera));
+            final var furthest = expected(centers, camera)[0];
+            Assertions.assertEquals(new Vector3f(centers[furthest * 3], centers[furthest * 3 + 1],
+                    centers[furthest * 3 + 2]).distanceSquared(camera), depth.furthestDistanceSquared(camera));
+        }
+    }
+}
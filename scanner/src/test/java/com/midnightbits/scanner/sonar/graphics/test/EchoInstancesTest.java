@@ -0,0 +1,287 @@
+// Copyright (c) 2024 Marcin Zdun
+// This code is licensed under MIT license (see LICENSE for details)
+
+package com.midnightbits.scanner.sonar.graphics.test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import com.midnightbits.scanner.rt.core.Id;
+import com.midnightbits.scanner.rt.math.V3i;
+import com.midnightbits.scanner.sonar.Echo;
+import com.midnightbits.scanner.sonar.EchoNugget;
+import com.midnightbits.scanner.sonar.EchoState;
+import com.midnightbits.scanner.sonar.NuggetCuller;
+import com.midnightbits.scanner.sonar.graphics.Colors;
+import com.midnightbits.scanner.sonar.graphics.DepthOrder;
+import com.midnightbits.scanner.sonar.graphics.EchoInstances;
+import com.midnightbits.scanner.sonar.graphics.GlProgramConsumer;
+import com.midnightbits.scanner.sonar.graphics.MatrixStack;
+import com.midnightbits.scanner.sonar.graphics.Pixel;
+import com.midnightbits.scanner.utils.test.gl.VertexTape;
+
+public class EchoInstancesTest {
+    private static final Echo coal = Echo.of(Id.ofVanilla("coal_ore"), new Colors.DirectValue(0x123456));
+    private static final Echo iron = Echo.of(Id.ofVanilla("iron_ore"), new Colors.DirectValue(0xABCDEF));
+    private static final int HIGHLIGHT = Colors.OPAQUE | Colors.BLACK;
+
+    private static List<EchoState> randomEchoes(Random random, int count) {
+        final var echoes = new ArrayList<EchoState>();
+        final var taken = new HashSet<V3i>();
+        while (echoes.size() < count) {
+            final var pos = new V3i(random.nextInt(20) - 10, random.nextInt(20) - 10, random.nextInt(20) - 10);
+            if (!taken.add(pos))
+                continue;
+            echoes.add(new EchoState(pos, random.nextBoolean() ? coal : iron, 0, random.nextInt(Pixel.ALL_SIDES + 1),
+                    random.nextInt(Pixel.ALL_EDGES + 1), random.nextInt(4) == 0 ? 0 : Colors.ECHO_ALPHA));
+        }
+        return echoes;
+    }
+
+    /**
+     * Expands the records the way the instancing shader does, one unit cube
+     * per record, skipping the faces of records without any alpha.
+     */
+    private static void drawFaces(GlProgramConsumer buffer, EchoInstances instances, Vector3f camera) {
+        final var matrix = new Matrix4f();
+        final var records = instances.records();
+        for (int index = 0; index < instances.size(); ++index) {
+            final var argb32 = EchoInstances.argb32(records, index);
+            if ((argb32 & Colors.OPAQUE) == 0)
+                continue;
+            buffer.cube(matrix, instances.originX() + EchoInstances.x(records, index) - camera.x,
+                    instances.originY() + EchoInstances.y(records, index) - camera.y,
+                    instances.originZ() + EchoInstances.z(records, index) - camera.z,
+                    EchoInstances.sides(records, index), argb32);
+        }
+    }
+
+    /**
+     * Expands the edges of the records the way the instancing shader does,
+     * with the opaque color of the echo, or the highlight color.
+     */
+    private static void drawEdges(GlProgramConsumer buffer, EchoInstances instances, Vector3f camera,
+            int highlight32) {
+        final var matrix = new Matrix4f();
+        final var records = instances.records();
+        for (int index = 0; index < instances.size(); ++index) {
+            final var argb32 = EchoInstances.isHighlighted(records, index) ? highlight32
+                    : Colors.OPAQUE | (EchoInstances.argb32(records, index) & Colors.RGB_MASK);
+            buffer.cubeEdges(matrix, instances.originX() + EchoInstances.x(records, index) - camera.x,
+                    instances.originY() + EchoInstances.y(records, index) - camera.y,
+                    instances.originZ() + EchoInstances.z(records, index) - camera.z,
+                    EchoInstances.edges(records, index), argb32);
+        }
+    }
+
+    @Test
+    void recordTakesSixteenBytes() {
+        Assertions.assertEquals(16, EchoInstances.RECORD_BYTES);
+        Assertions.assertEquals(36 * 4, EchoInstances.CUBE_FACES.length);
+        Assertions.assertEquals(24 * 4, EchoInstances.CUBE_EDGES.length);
+    }
+
+    @Test
+    void recordsUnpackToTheirFields() {
+        final var instances = new EchoInstances().begin(1000, -60, -3000);
+        Assertions.assertTrue(instances.add(1000 - 32768, 100, -3000 + 32767, 0x80123456, Pixel.SIDE_X1,
+                Pixel.EDGE_RIGHT_TOP, 0));
+        Assertions.assertTrue(instances.add(1001, -61, -2999, 0xFFABCDEF, Pixel.ALL_SIDES, Pixel.ALL_EDGES,
+                EchoInstances.HIGHLIGHT));
+        Assertions.assertEquals(2, instances.size());
+
+        final var records = instances.records();
+        Assertions.assertEquals(-32768, EchoInstances.x(records, 0));
+        Assertions.assertEquals(160, EchoInstances.y(records, 0));
+        Assertions.assertEquals(32767, EchoInstances.z(records, 0));
+        Assertions.assertEquals(0x80123456, EchoInstances.argb32(records, 0));
+        Assertions.assertEquals(Pixel.SIDE_X1, EchoInstances.sides(records, 0));
+        Assertions.assertEquals(Pixel.EDGE_RIGHT_TOP, EchoInstances.edges(records, 0));
+        Assertions.assertFalse(EchoInstances.isHighlighted(records, 0));
+
+        Assertions.assertEquals(1, EchoInstances.x(records, 1));
+        Assertions.assertEquals(-1, EchoInstances.y(records, 1));
+        Assertions.assertEquals(1, EchoInstances.z(records, 1));
+        Assertions.assertEquals(0xFFABCDEF, EchoInstances.argb32(records, 1));
+        Assertions.assertEquals(Pixel.ALL_SIDES, EchoInstances.sides(records, 1));
+        Assertions.assertEquals(Pixel.ALL_EDGES, EchoInstances.edges(records, 1));
+        Assertions.assertTrue(EchoInstances.isHighlighted(records, 1));
+
+        // the high half of Z is left for later; the shader reads it as the
+        // fourth component of the offset
+        Assertions.assertEquals(0, records[1] >>> 16);
+        Assertions.assertEquals(0, records[EchoInstances.RECORD_INTS + 1] >>> 16);
+    }
+
+    @Test
+    void farBlocksAreLeftOut() {
+        final var instances = new EchoInstances().begin(0, 0, 0);
+        Assertions.assertFalse(instances.add(32768, 0, 0, Colors.ECHO_ALPHA, Pixel.ALL_SIDES, 0, 0));
+        Assertions.assertFalse(instances.add(0, -32769, 0, Colors.ECHO_ALPHA, Pixel.ALL_SIDES, 0, 0));
+        Assertions.assertFalse(instances.add(0, 0, 40000, Colors.ECHO_ALPHA, Pixel.ALL_SIDES, 0, 0));
+        Assertions.assertEquals(0, instances.size());
+
+        instances.begin(30000, 0, 0);
+        Assertions.assertTrue(instances.add(32768, 0, 0, Colors.ECHO_ALPHA, Pixel.ALL_SIDES, 0, 0));
+        Assertions.assertEquals(1, instances.size());
+    }
+
+    @Test
+    void expandsLikeTheEchoes() {
+        final var echoes = randomEchoes(new Random(0x696e7374), 300);
+        final var camera = new Vector3f(2.25F, -1.5F, 7.75F);
+        final var instances = new EchoInstances().begin(2, -2, 7);
+        for (final var echo : echoes)
+            Assertions.assertTrue(instances.add(echo, 0));
+        Assertions.assertEquals(echoes.size(), instances.size());
+
+        final var faces = VertexTape.capture(buffer -> {
+            final var matrices = new MatrixStack(new Matrix4f());
+            for (final var echo : echoes)
+                echo.draw(buffer, matrices, camera);
+        });
+        final var edges = VertexTape.capture(buffer -> {
+            final var matrices = new MatrixStack(new Matrix4f());
+            for (final var echo : echoes)
+                echo.sketch(buffer, matrices, camera);
+        });
+
+        Assertions.assertEquals(faces.vertices(),
+                VertexTape.capture(buffer -> drawFaces(buffer, instances, camera)).vertices());
+        Assertions.assertEquals(edges.vertices(),
+                VertexTape.capture(buffer -> drawEdges(buffer, instances, camera, HIGHLIGHT)).vertices());
+    }
+
+    @Test
+    void recordsCulledEchoesWithHighlight() {
+        final var echoes = randomEchoes(new Random(0x63756c6c), 200);
+        final var nuggets = EchoNugget.group(echoes);
+        final var culled = new NuggetCuller.Visible();
+        new NuggetCuller(nuggets).cull((minX, minY, minZ, maxX, maxY, maxZ) -> maxX > 0, culled);
+        Assertions.assertTrue(culled.size() > 1);
+
+        final var highlighted = culled.get(1);
+        final var instances = new EchoInstances().begin(0, 0, 0);
+        for (int index = 0; index < culled.size(); ++index) {
+            final var flags = culled.get(index) == highlighted ? EchoInstances.HIGHLIGHT : 0;
+            culled.forEachEcho(index, echo -> instances.add(echo, flags));
+        }
+
+        var expected = 0;
+        var expectedHighlighted = 0;
+        var highlightedVertices = 0;
+        for (final var echo : echoes) {
+            if (echo.position().getX() < 0)
+                continue;
+            ++expected;
+            if (highlighted.echoes().contains(echo)) {
+                ++expectedHighlighted;
+                highlightedVertices += 2 * Integer.bitCount(echo.edges);
+            }
+        }
+        Assertions.assertEquals(expected, instances.size());
+
+        var actualHighlighted = 0;
+        for (int index = 0; index < instances.size(); ++index) {
+            Assertions.assertTrue(EchoInstances.x(instances.records(), index) >= 0);
+            if (EchoInstances.isHighlighted(instances.records(), index))
+                ++actualHighlighted;
+        }
+        Assertions.assertEquals(expectedHighlighted, actualHighlighted);
+
+        final var edges = VertexTape.capture(buffer -> drawEdges(buffer, instances, new Vector3f(), HIGHLIGHT));
+        Assertions.assertEquals(highlightedVertices,
+                edges.vertices().stream().filter(vertex -> vertex.argb32() == HIGHLIGHT).count());
+    }
+
+    @Test
+    void recordsSortFurthestFirst() {
+        final var echoes = randomEchoes(new Random(0x736f7274), 2000);
+        final var camera = new Vector3f(3.25F, -1.5F, 5.75F);
+        final var instances = new EchoInstances().begin(-4, 2, 1);
+        for (final var echo : echoes)
+            Assertions.assertTrue(instances.add(echo, 0));
+
+        final var before = new HashSet<String>();
+        for (int index = 0; index < instances.size(); ++index)
+            before.add(recordOf(instances, index));
+
+        instances.sortFurthestToClosest(camera);
+        Assertions.assertEquals(echoes.size(), instances.size());
+
+        final var after = new HashSet<String>();
+        var previous = Double.MAX_VALUE;
+        for (int index = 0; index < instances.size(); ++index) {
+            after.add(recordOf(instances, index));
+            final var records = instances.records();
+            final var dx = instances.originX() + EchoInstances.x(records, index) + .5 - camera.x;
+            final var dy = instances.originY() + EchoInstances.y(records, index) + .5 - camera.y;
+            final var dz = instances.originZ() + EchoInstances.z(records, index) + .5 - camera.z;
+            final var distance = dx * dx + dy * dy + dz * dz;
+            Assertions.assertTrue(distance <= previous, "at " + index);
+            previous = distance;
+        }
+        Assertions.assertEquals(before, after);
+
+        // the records keep growing after a sort, without losing any of them
+        Assertions.assertTrue(instances.add(0, 0, 0, Colors.ECHO_ALPHA, Pixel.ALL_SIDES, 0, 0));
+        Assertions.assertEquals(echoes.size() + 1, instances.size());
+        Assertions.assertEquals(4, EchoInstances.x(instances.records(), echoes.size()));
+    }
+
+    @Test
+    void sortFollowsTheCameraAcrossBatches() {
+        final var echoes = randomEchoes(new Random(0x63616d), 500);
+        final var instances = new EchoInstances();
+        final var camera = new Vector3f(.5F, 2.25F, -1.5F);
+
+        // the same blocks, seen from a camera walking through them, with the
+        // batch origin following the camera the way the renderer moves it
+        for (int step = 0; step < 40; ++step) {
+            camera.add(.375F, -.125F, .5F);
+            instances.begin((int) Math.floor(camera.x), (int) Math.floor(camera.y), (int) Math.floor(camera.z));
+            for (final var echo : echoes)
+                Assertions.assertTrue(instances.add(echo, 0));
+            instances.sortFurthestToClosest(camera);
+            assertFurthestFirst(instances, camera);
+        }
+
+        // a batch of other blocks is sorted on its own
+        instances.begin(0, 0, 0);
+        for (final var echo : randomEchoes(new Random(0x6f746872), 300))
+            Assertions.assertTrue(instances.add(echo, 0));
+        instances.sortFurthestToClosest(camera);
+        Assertions.assertEquals(300, instances.size());
+        assertFurthestFirst(instances, camera);
+    }
+
+    private static void assertFurthestFirst(EchoInstances instances, Vector3f camera) {
+        // a camera, which moved less than the threshold, may see a few
+        // blocks out of place by that much
+        final var slack = 2 * DepthOrder.THRESHOLD;
+        var previous = Double.MAX_VALUE;
+        for (int index = 0; index < instances.size(); ++index) {
+            final var records = instances.records();
+            final var dx = instances.originX() + EchoInstances.x(records, index) + .5 - camera.x;
+            final var dy = instances.originY() + EchoInstances.y(records, index) + .5 - camera.y;
+            final var dz = instances.originZ() + EchoInstances.z(records, index) + .5 - camera.z;
+            final var distance = Math.sqrt(dx * dx + dy * dy + dz * dz);
+            Assertions.assertTrue(distance <= previous + slack, "at " + index);
+            previous = Math.min(previous, distance);
+        }
+    }
+
+    private static String recordOf(EchoInstances instances, int index) {
+        final var records = instances.records();
+        return String.format("%d,%d,%d/%08X/%d/%d", EchoInstances.x(records, index), EchoInstances.y(records, index),
+                EchoInstances.z(records, index), EchoInstances.argb32(records, index),
+                EchoInstances.sides(records, index), EchoInstances.edges(records, index));
+    }
+}
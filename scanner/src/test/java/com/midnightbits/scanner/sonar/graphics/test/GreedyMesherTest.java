@@ -0,0 +1,277 @@
+// Copyright (c) 2024 Marcin Zdun
+// This code is licensed under MIT license (see LICENSE for details)
+
+package com.midnightbits.scanner.sonar.graphics.test;
+
+import com.midnightbits.scanner.rt.core.Id;
+import com.midnightbits.scanner.sonar.Echo;
+import com.midnightbits.scanner.sonar.EchoNugget;
+import com.midnightbits.scanner.sonar.EchoState;
+import com.midnightbits.scanner.sonar.graphics.Colors;
+import com.midnightbits.scanner.sonar.graphics.GreedyMesher;
+import com.midnightbits.scanner.sonar.graphics.MatrixStack;
+import com.midnightbits.scanner.sonar.graphics.NuggetMesh;
+import com.midnightbits.scanner.utils.test.gl.TestVertex;
+import com.midnightbits.scanner.utils.test.gl.VertexTape;
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+public class GreedyMesherTest {
+    private static final Colors.Proxy VANILLA = new Colors.DirectValue(Colors.VANILLA);
+    private static final Vector3f CAMERA = new Vector3f(-3, 2, -5);
+
+    private static Echo of(String path) {
+        return Echo.of(Id.ofVanilla(path), Colors.BLOCK_TAG_COLORS.getOrDefault(Id.of(path + "s"), VANILLA));
+    }
+
+    final static Echo coal_ore = of("coal_ore");
+    final static Echo iron_ore = of("iron_ore");
+
+    private static int round(float value) {
+        return Math.round(value);
+    }
+
+    private static int[] coords(TestVertex vertex) {
+        return new int[] { round(vertex.pos().x), round(vertex.pos().y), round(vertex.pos().z) };
+    }
+
+    /**
+     * Splits every rectangle drawn into unit squares, remembering which way
+     * each of them faces and what color it has. Squares drawn more than once
+     * are counted more than once.
+     */
+    private static Map<String, Integer> faceCells(VertexTape tape) {
+        final var vertices = tape.vertices();
+        Assertions.assertEquals(0, vertices.size() % 6);
+
+        final var cells = new HashMap<String, Integer>();
+        for (int quad = 0; quad < vertices.size(); quad += 6) {
+            final var min = new int[] { Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE };
+            final var max = new int[] { Integer.MIN_VALUE, Integer.MIN_VALUE, Integer.MIN_VALUE };
+            for (int vertex = quad; vertex < quad + 6; ++vertex) {
+                final var pos = coords(vertices.get(vertex));
+                for (int axis = 0; axis < 3; ++axis) {
+                    min[axis] = Math.min(min[axis], pos[axis]);
+                    max[axis] = Math.max(max[axis], pos[axis]);
+                }
+            }
+
+            final var a = vertices.get(quad).pos();
+            final var b = vertices.get(quad + 1).pos();
+            final var c = vertices.get(quad + 2).pos();
+            final var normal = new Vector3f(b).sub(a).cross(new Vector3f(c).sub(a));
+            final var facing = new float[] { normal.x, normal.y, normal.z };
+
+            var flat = 0;
+            while (min[flat] != max[flat])
+                ++flat;
+            final var u = (flat + 1) % 3;
+            final var v = (flat + 2) % 3;
+
+            for (int cu = min[u]; cu < max[u]; ++cu) {
+                for (int cv = min[v]; cv < max[v]; ++cv) {
+                    final var key = String.format("%d%s@%d:%d,%d/%08X", flat, facing[flat] > 0 ? "+" : "-",
+                            min[flat], cu, cv, vertices.get(quad).argb32());
+                    cells.merge(key, 1, Integer::sum);
+                }
+            }
+        }
+        return cells;
+    }
+
+    private static Map<String, Integer> lineUnits(VertexTape tape) {
+        final var vertices = tape.vertices();
+        Assertions.assertEquals(0, vertices.size() % 2);
+
+        final var units = new HashMap<String, Integer>();
+        for (int line = 0; line < vertices.size(); line += 2) {
+            final var from = coords(vertices.get(line));
+            final var to = coords(vertices.get(line + 1));
+
+            var axis = 0;
+            while (from[axis] == to[axis])
+                ++axis;
+            final var start = Math.min(from[axis], to[axis]);
+            final var end = Math.max(from[axis], to[axis]);
+            for (int t = start; t < end; ++t) {
+                final var pos = from.clone();
+                pos[axis] = t;
+                final var key = String.format("%d@%d,%d,%d/%08X", axis, pos[0], pos[1], pos[2],
+                        vertices.get(line).argb32());
+                units.merge(key, 1, Integer::sum);
+            }
+        }
+        return units;
+    }
+
+    private static VertexTape drawEchoes(EchoNugget nugget) {
+        return VertexTape.capture(context -> {
+            final var matrices = new MatrixStack(new Matrix4f());
+            for (final var echo : nugget.echoes())
+                echo.draw(context, matrices, CAMERA);
+        });
+    }
+
+    private static VertexTape sketchEchoes(EchoNugget nugget) {
+        return VertexTape.capture(context -> {
+            final var matrices = new MatrixStack(new Matrix4f());
+            for (final var echo : nugget.echoes())
+                echo.sketch(context, matrices, CAMERA);
+        });
+    }
+
+    private static VertexTape drawMesh(NuggetMesh mesh) {
+        return VertexTape.capture(context -> mesh.draw(context, new MatrixStack(new Matrix4f()), CAMERA));
+    }
+
+    private static VertexTape sketchMesh(NuggetMesh mesh) {
+        return VertexTape.capture(context -> mesh.sketch(context, new MatrixStack(new Matrix4f()), CAMERA));
+    }
+
+    private static void assertSameCoverage(EchoNugget nugget) {
+        final var mesh = nugget.mesh();
+        Assertions.assertEquals(faceCells(drawEchoes(nugget)), faceCells(drawMesh(mesh)));
+        // neighbours may both outline a shared edge; the mesh draws it once
+        Assertions.assertEquals(lineUnits(sketchEchoes(nugget)).keySet(), lineUnits(sketchMesh(mesh)).keySet());
+    }
+
+    @Test
+    void emptyNuggetHasEmptyMesh() {
+        Assertions.assertSame(NuggetMesh.EMPTY, GreedyMesher.mesh(List.of()));
+        Assertions.assertEquals(0, drawMesh(NuggetMesh.EMPTY).size());
+        Assertions.assertEquals(0, sketchMesh(NuggetMesh.EMPTY).size());
+    }
+
+    @Test
+    void singleBlockIsNotMerged() {
+        final var nuggets = EchoNugget.group(List.of(new EchoState(4, -2, 7, iron_ore, 0)));
+        Assertions.assertEquals(1, nuggets.size());
+        final var nugget = nuggets.getFirst();
+        final var mesh = nugget.mesh();
+
+        Assertions.assertEquals(6, mesh.quadCount());
+        Assertions.assertEquals(12, mesh.segmentCount());
+        Assertions.assertEquals(drawEchoes(nugget).size(), drawMesh(mesh).size());
+        Assertions.assertEquals(sketchEchoes(nugget).size(), sketchMesh(mesh).size());
+        assertSameCoverage(nugget);
+    }
+
+    @Test
+    void slabBecomesSixRectangles() {
+        final var size = 16;
+        final var height = 2;
+        final var echoes = new ArrayList<EchoState>();
+        for (int x = 0; x < size; ++x) {
+            for (int y = 0; y < height; ++y) {
+                for (int z = 0; z < size; ++z)
+                    echoes.add(new EchoState(x + 100, y - 30, z - 7, coal_ore, 0));
+            }
+        }
+
+        final var nuggets = EchoNugget.group(echoes);
+        Assertions.assertEquals(1, nuggets.size());
+        final var nugget = nuggets.getFirst();
+        final var mesh = nugget.mesh();
+
+        Assertions.assertEquals(6, mesh.quadCount());
+        Assertions.assertEquals(12, mesh.segmentCount());
+
+        final var faces = 2 * size * size + 4 * size * height;
+        final var edges = 8 * size + 4 * height;
+        final var before = drawEchoes(nugget).size() + sketchEchoes(nugget).size();
+        final var after = drawMesh(mesh).size() + sketchMesh(mesh).size();
+        Assertions.assertEquals(faces * 6 + edges * 2, before);
+        Assertions.assertEquals(6 * 6 + 12 * 2, after);
+        Assertions.assertTrue(before >= 10 * after);
+        assertSameCoverage(nugget);
+    }
+
+    @Test
+    void mergedMeshCoversTheSameSurface() {
+        final var random = new Random(0x6d657368);
+        for (int round = 0; round < 5; ++round) {
+            final var echoes = new ArrayList<EchoState>();
+            for (int x = 0; x < 6; ++x) {
+                for (int y = 0; y < 4; ++y) {
+                    for (int z = 0; z < 6; ++z) {
+                        if (random.nextInt(3) == 0)
+                            continue;
+                        final var echo = new EchoState(x, y, z, random.nextInt(4) == 0 ? iron_ore : coal_ore, 0);
+                        if (random.nextInt(10) == 0)
+                            echo.alpha = 0x40000000;
+                        echoes.add(echo);
+                    }
+                }
+            }
+
+            for (final var nugget : EchoNugget.group(echoes)) {
+                assertSameCoverage(nugget);
+                final var mesh = nugget.mesh();
+                Assertions.assertTrue(drawMesh(mesh).size() <= drawEchoes(nugget).size());
+                Assertions.assertTrue(sketchMesh(mesh).size() <= sketchEchoes(nugget).size());
+            }
+        }
+    }
+
+    @Test
+    void meshIsOnlyOffsetByTheCamera() {
+        final var echoes = new ArrayList<EchoState>();
+        for (int x = 0; x < 3; ++x)
+            echoes.add(new EchoState(x - 40, 70, 12, coal_ore, 0));
+        final var mesh = EchoNugget.group(echoes).getFirst().mesh();
+        Assertions.assertEquals(6, mesh.quadCount());
+
+        final var other = new Vector3f(CAMERA).add(7, -3, 11);
+        final var here = drawMesh(mesh).vertices();
+        final var there = VertexTape
+                .capture(context -> mesh.draw(context, new MatrixStack(new Matrix4f()), other)).vertices();
+
+        Assertions.assertEquals(here.size(), there.size());
+        for (int index = 0; index < here.size(); ++index) {
+            final var expected = new Vector3f(here.get(index).pos()).sub(7, -3, 11);
+            Assertions.assertTrue(expected.equals(there.get(index).pos(), 1e-4F),
+                    expected + " vs " + there.get(index).pos());
+            Assertions.assertEquals(here.get(index).argb32(), there.get(index).argb32());
+        }
+    }
+
+    @Test
+    void translucentFacesStayBackToFront() {
+        final var echoes = new ArrayList<EchoState>();
+        for (int x = 0; x < 8; ++x) {
+            final var echo = new EchoState(x, 0, 0, coal_ore, 0);
+            if (x % 2 == 0)
+                echo.alpha = 0x40000000;
+            echoes.add(echo);
+        }
+        final var mesh = EchoNugget.group(echoes).getFirst().mesh();
+        Assertions.assertTrue(mesh.quadCount() > 2);
+
+        // the same mesh, drawn while the camera walks past it, is sorted
+        // again for every step further than the order tolerates
+        for (int step = 0; step < 12; ++step) {
+            final var camera = new Vector3f(step - 2, 3, -1.5F);
+            final var vertices = VertexTape
+                    .capture(context -> mesh.draw(context, new MatrixStack(new Matrix4f()), camera)).vertices();
+            Assertions.assertEquals(mesh.quadCount() * 6, vertices.size());
+
+            var previous = Float.MAX_VALUE;
+            for (int quad = 0; quad < vertices.size(); quad += 6) {
+                final var center = new Vector3f();
+                for (int vertex = quad; vertex < quad + 6; ++vertex)
+                    center.add(vertices.get(vertex).pos());
+                final var distance = center.div(6).lengthSquared();
+                Assertions.assertTrue(distance <= previous + 1e-4F, "step " + step + ", quad " + quad / 6);
+                previous = distance;
+            }
+        }
+    }
+}
@@ -0,0 +1,206 @@
+// Copyright (c) 2024 Marcin Zdun
+// This code is licensed under MIT license (see LICENSE for details)
+
+package com.midnightbits.scanner.sonar.graphics.test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import com.midnightbits.scanner.rt.core.Id;
+import com.midnightbits.scanner.sonar.Echo;
+import com.midnightbits.scanner.sonar.EchoNugget;
+import com.midnightbits.scanner.sonar.EchoState;
+import com.midnightbits.scanner.sonar.NuggetCuller;
+import com.midnightbits.scanner.sonar.graphics.Colors;
+import com.midnightbits.scanner.sonar.graphics.EchoInstances;
+import com.midnightbits.scanner.sonar.graphics.LevelOfDetail;
+import com.midnightbits.scanner.sonar.graphics.MatrixStack;
+import com.midnightbits.scanner.utils.test.gl.VertexTape;
+
+public class LevelOfDetailTest {
+    private static final Echo coal = Echo.of(Id.ofVanilla("coal_ore"), new Colors.DirectValue(0x123456));
+    private static final LevelOfDetail LOD = new LevelOfDetail(10, 30, 50, 20_000);
+
+    /**
+     * Two by two by two clusters of coal, spaced apart, so every cluster is
+     * a nugget of its own, along the X axis.
+     */
+    private static List<EchoNugget> clusters(int count) {
+        final var echoes = new ArrayList<EchoState>();
+        for (int cluster = 0; cluster < count; ++cluster) {
+            final var x = cluster * 4;
+            for (int dx = 0; dx < 2; ++dx) {
+                for (int dy = 0; dy < 2; ++dy) {
+                    for (int dz = 0; dz < 2; ++dz)
+                        echoes.add(EchoState.echoFrom(x + dx, dy, dz, coal));
+                }
+            }
+        }
+        return EchoNugget.group(echoes);
+    }
+
+    private static NuggetCuller.Visible all(List<EchoNugget> nuggets) {
+        final var visible = new NuggetCuller.Visible();
+        new NuggetCuller(nuggets).cull((minX, minY, minZ, maxX, maxY, maxZ) -> true, visible);
+        return visible;
+    }
+
+    private static int drawn(LevelOfDetail.Plan plan, Vector3f camera) {
+        final var matrices = new MatrixStack(new Matrix4f());
+        return VertexTape.capture(buffer -> {
+            plan.draw(buffer, matrices, camera, true);
+            plan.sketch(buffer, matrices, camera, true, null, Colors.OPAQUE);
+        }).size();
+    }
+
+    @Test
+    void levelsFollowDistance() {
+        Assertions.assertEquals(LevelOfDetail.BLOCKS, LOD.levelFor(0));
+        Assertions.assertEquals(LevelOfDetail.BLOCKS, LOD.levelFor(9.9));
+        Assertions.assertEquals(LevelOfDetail.HULL, LOD.levelFor(10));
+        Assertions.assertEquals(LevelOfDetail.HULL, LOD.levelFor(29.9));
+        Assertions.assertEquals(LevelOfDetail.BOX, LOD.levelFor(30));
+        Assertions.assertEquals(LevelOfDetail.BOX, LOD.levelFor(1000));
+    }
+
+    @Test
+    void alphaFallsOffWithDistance() {
+        Assertions.assertEquals(1, LOD.fade(0));
+        Assertions.assertEquals(1, LOD.fade(10));
+        Assertions.assertEquals(LevelOfDetail.MIN_FADE, LOD.fade(50));
+        Assertions.assertEquals(LevelOfDetail.MIN_FADE, LOD.fade(500));
+
+        var previous = 1.0;
+        for (double distance = 10; distance <= 50; distance += .5) {
+            final var fade = LOD.fade(distance);
+            Assertions.assertTrue(fade <= previous, "at " + distance);
+            previous = fade;
+        }
+
+        Assertions.assertEquals(Colors.ECHO_ALPHA, LevelOfDetail.fadeAlpha(Colors.ECHO_ALPHA | Colors.WHITE, 1));
+        Assertions.assertEquals(0x40000000, LevelOfDetail.fadeAlpha(Colors.ECHO_ALPHA, .5));
+        Assertions.assertEquals(0, LevelOfDetail.fadeAlpha(Colors.OPAQUE, 0));
+    }
+
+    @Test
+    void distanceIsMeasuredToTheBounds() {
+        final var nugget = clusters(1).get(0);
+        Assertions.assertEquals(0, LevelOfDetail.distance(nugget, new Vector3f(1, 1, 1)));
+        Assertions.assertEquals(3, LevelOfDetail.distance(nugget, new Vector3f(5, 1, 1)), 1e-6);
+        Assertions.assertEquals(5, LevelOfDetail.distance(nugget, new Vector3f(-3, -4, 1)), 1e-6);
+    }
+
+    @Test
+    void farNuggetsAreBoxes() {
+        final var nuggets = clusters(20);
+        final var camera = new Vector3f(-1, 1, 1);
+        final var plan = new LevelOfDetail.Plan();
+        new LevelOfDetail(10, 30, 50, Integer.MAX_VALUE).plan(all(nuggets), camera, plan);
+
+        Assertions.assertEquals(nuggets.size(), plan.size());
+        for (int index = 0; index < plan.size(); ++index) {
+            final var distance = LevelOfDetail.distance(plan.get(index), camera);
+            Assertions.assertEquals(LOD.levelFor(distance), plan.level(index));
+            Assertions.assertEquals(LOD.fade(distance), plan.fade(index));
+        }
+
+        final var boxes = VertexTape.capture(buffer -> plan.draw(buffer, new MatrixStack(new Matrix4f()), camera,
+                false));
+        var expected = 0;
+        for (int index = 0; index < plan.size(); ++index) {
+            if (plan.level(index) == LevelOfDetail.HULL)
+                expected += plan.get(index).mesh().triangleVertices();
+            else if (plan.level(index) == LevelOfDetail.BOX)
+                expected += 36;
+        }
+        Assertions.assertEquals(expected, boxes.size());
+        Assertions.assertTrue(boxes.vertices().stream()
+                .allMatch(vertex -> (vertex.argb32() >>> 24) <= (Colors.ECHO_ALPHA >>> 24)));
+    }
+
+    @Test
+    void nuggetsAreDrawnFurthestFirst() {
+        final var nuggets = clusters(20);
+        final var camera = new Vector3f(37, 1, 1);
+        final var plan = new LevelOfDetail.Plan();
+        new LevelOfDetail(0, 0, 50, Integer.MAX_VALUE).plan(all(nuggets), camera, plan);
+
+        // every nugget is a box of 36 vertices, two blocks wide and with the
+        // camera level with it, so only X tells the distance
+        final var boxes = VertexTape.capture(buffer -> plan.draw(buffer, new MatrixStack(new Matrix4f()), camera,
+                true));
+        Assertions.assertEquals(nuggets.size() * 36, boxes.size());
+        var previous = Double.MAX_VALUE;
+        for (int box = 0; box < boxes.size(); box += 36) {
+            final var x = boxes.vertices().subList(box, box + 36).stream()
+                    .mapToDouble(vertex -> vertex.pos().x).min().orElseThrow();
+            final var distance = Math.max(0, Math.max(x, -(x + 2)));
+            Assertions.assertTrue(distance <= previous, "at " + box);
+            previous = distance;
+        }
+    }
+
+    @Test
+    void vertexCountStaysWithinBudget() {
+        final var camera = new Vector3f(-1, 1, 1);
+        final var plan = new LevelOfDetail.Plan();
+
+        final var counts = new ArrayList<Long>();
+        for (final var clusters : new int[] { 50, 500, 2000 }) {
+            LOD.plan(all(clusters(clusters)), camera, plan);
+            Assertions.assertTrue(plan.vertices() <= 20_000, clusters + ": " + plan.vertices());
+            Assertions.assertEquals(plan.vertices(), drawn(plan, camera));
+            counts.add(plan.vertices());
+        }
+
+        // once over the budget, more nuggets do not mean more vertices
+        Assertions.assertTrue(counts.get(1) > 15_000, "" + counts);
+        Assertions.assertTrue(counts.get(2) > 15_000, "" + counts);
+    }
+
+    @Test
+    void furthestNuggetsLoseDetailFirst() {
+        final var camera = new Vector3f(-1, 1, 1);
+        final var plan = new LevelOfDetail.Plan();
+        LOD.plan(all(clusters(1000)), camera, plan);
+
+        final var order = new ArrayList<Integer>();
+        for (int index = 0; index < plan.size(); ++index)
+            order.add(index);
+        order.sort((lhs, rhs) -> Double.compare(LevelOfDetail.distance(plan.get(lhs), camera),
+                LevelOfDetail.distance(plan.get(rhs), camera)));
+
+        var previous = LevelOfDetail.BLOCKS;
+        for (final var index : order) {
+            Assertions.assertTrue(plan.level(index) >= previous);
+            previous = plan.level(index);
+        }
+        Assertions.assertEquals(LevelOfDetail.BLOCKS, plan.level(order.get(0)));
+        Assertions.assertEquals(LevelOfDetail.HIDDEN, plan.level(order.get(order.size() - 1)));
+    }
+
+    @Test
+    void onlyNearEchoesBecomeInstances() {
+        final var camera = new Vector3f(-1, 1, 1);
+        final var plan = new LevelOfDetail.Plan();
+        LOD.plan(all(clusters(20)), camera, plan);
+
+        var expected = 0;
+        for (int index = 0; index < plan.size(); ++index) {
+            if (plan.level(index) == LevelOfDetail.BLOCKS)
+                expected += plan.get(index).echoes().size();
+        }
+        Assertions.assertTrue(expected > 0);
+
+        final var instances = new EchoInstances().begin(0, 0, 0);
+        instances.add(plan, null);
+        Assertions.assertEquals(expected, instances.size());
+        for (int index = 0; index < instances.size(); ++index)
+            Assertions.assertTrue(EchoInstances.x(instances.records(), index) < 12);
+    }
+}
@@ -3,12 +3,20 @@
 
 package com.midnightbits.scanner.sonar.graphics.test;
 
+import java.util.ArrayList;
 import java.util.List;
 
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
+import com.midnightbits.scanner.rt.math.V3i;
+import com.midnightbits.scanner.sonar.graphics.Colors;
+import com.midnightbits.scanner.sonar.graphics.MatrixStack;
+import com.midnightbits.scanner.sonar.graphics.NuggetMesh;
 import com.midnightbits.scanner.sonar.graphics.WaveAnimator;
+import com.midnightbits.scanner.utils.test.gl.VertexTape;
 
 public class SliceTest {
     @Test
@@ -16,6 +24,7 @@ public class SliceTest {
         final var shimmers = new WaveAnimator.Slice(List.of(), List.of(), null, 0).shimmers();
         Assertions.assertEquals(0.0, shimmers.alpha());
         Assertions.assertEquals(0, shimmers.blocks().size());
+        Assertions.assertSame(NuggetMesh.EMPTY, shimmers.mesh());
     }
 
     @Test
@@ -24,4 +33,41 @@ public class SliceTest {
         shimmers.setAlpha(.5);
         Assertions.assertEquals(.5, shimmers.alpha());
     }
+
+    @Test
+    void meshIsBuiltOnceAndFaded() {
+        final var blocks = new ArrayList<V3i>();
+        for (int x = 0; x < 4; ++x) {
+            for (int z = 0; z < 3; ++z)
+                blocks.add(new V3i(x, 60, z - 5));
+        }
+
+        final var shimmers = new WaveAnimator.Slice(blocks, List.of(), null, 0).shimmers();
+        final var mesh = shimmers.mesh();
+        Assertions.assertEquals(6, mesh.quadCount());
+        Assertions.assertEquals(12, mesh.segmentCount());
+
+        final var camera = new Vector3f(1, 2, 3);
+        final var hidden = VertexTape.capture(context -> {
+            shimmers.draw(context, new MatrixStack(new Matrix4f()), camera, .5);
+            shimmers.sketch(context, new MatrixStack(new Matrix4f()), camera, .5);
+        });
+        Assertions.assertEquals(0, hidden.size());
+
+        shimmers.setAlpha(.6);
+        Assertions.assertSame(mesh, shimmers.mesh());
+
+        final var faces = VertexTape
+                .capture(context -> shimmers.draw(context, new MatrixStack(new Matrix4f()), camera, .5));
+        Assertions.assertEquals(mesh.triangleVertices(), faces.size());
+        final var faded = (int) Math.round(255 * .3) << 24;
+        for (final var vertex : faces.vertices())
+            Assertions.assertEquals(faded | 0x8080FF, vertex.argb32());
+
+        final var lines = VertexTape
+                .capture(context -> shimmers.sketch(context, new MatrixStack(new Matrix4f()), camera, .5));
+        Assertions.assertEquals(mesh.lineVertices(), lines.size());
+        for (final var vertex : lines.vertices())
+            Assertions.assertEquals(Colors.OPAQUE | 0x8080FF, vertex.argb32());
+    }
 }
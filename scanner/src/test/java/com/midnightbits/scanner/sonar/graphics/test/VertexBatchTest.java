@@ -0,0 +1,109 @@
+// Copyright (c) 2024 Marcin Zdun
+// This code is licensed under MIT license (see LICENSE for details)
+
+package com.midnightbits.scanner.sonar.graphics.test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import org.joml.Matrix4f;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import com.midnightbits.scanner.sonar.graphics.GlProgramConsumer;
+import com.midnightbits.scanner.sonar.graphics.Pixel;
+import com.midnightbits.scanner.sonar.graphics.VertexBatch;
+import com.midnightbits.scanner.utils.test.gl.VertexTape;
+
+public class VertexBatchTest {
+    private static final Matrix4f SHIFTED = new Matrix4f().translate(10, -20, 30);
+    private static final Matrix4f SCALED = new Matrix4f().scale(2);
+
+    private static final class Calls implements GlProgramConsumer {
+        final List<Integer> runs = new ArrayList<>();
+
+        @Override
+        public void vertexColor(Matrix4f matrix, float x, float y, float z, int argb32) {
+            runs.add(1);
+        }
+
+        @Override
+        public void vertices(Matrix4f matrix, float[] xyz, int[] argb32, int count) {
+            runs.add(count);
+        }
+    }
+
+    private static void paint(GlProgramConsumer buffer) {
+        buffer.cube(SHIFTED, 1, 2, 3, Pixel.ALL_SIDES, 0x80FF0000);
+        buffer.cube(SHIFTED, 1, 3, 3, Pixel.SIDE_X0 | Pixel.SIDE_Y1, 0x8000FF00);
+        buffer.vertexColor(SHIFTED, .5F, .25F, .125F, 0xFF0000FF);
+        buffer.cubeEdges(SCALED, -4, 0, 7, Pixel.ALL_EDGES & ~Pixel.EDGE_BACK_TOP, 0xFFFFFFFF);
+        buffer.cube(SHIFTED, 0, 0, 0, 0, 0x80FFFFFF);
+    }
+
+    private static VertexTape batched(Consumer<GlProgramConsumer> painter) {
+        final var batch = new VertexBatch();
+        return VertexTape.capture(context -> {
+            painter.accept(batch.begin(context));
+            batch.end();
+        });
+    }
+
+    @Test
+    void batchEmitsTheSameVertices() {
+        final var direct = VertexTape.capture(VertexBatchTest::paint);
+        final var batched = batched(VertexBatchTest::paint);
+
+        Assertions.assertEquals(6 * 6 + 2 * 6 + 1 + 11 * 2, direct.size());
+        Assertions.assertEquals(direct.vertices(), batched.vertices());
+    }
+
+    @Test
+    void cubeFollowsPixelTables() {
+        final var expected = VertexTape.capture(context -> {
+            for (final var side : Pixel.triangles) {
+                for (final var vertex : side)
+                    context.vertexColor(SHIFTED, vertex.x() + 1, vertex.y() + 2, vertex.z() + 3, 0x80FF0000);
+            }
+            for (final var edge : Pixel.edges) {
+                context.vertexColor(SHIFTED, edge.start().x() + 1, edge.start().y() + 2, edge.start().z() + 3,
+                        0xFF000000);
+                context.vertexColor(SHIFTED, edge.end().x() + 1, edge.end().y() + 2, edge.end().z() + 3,
+                        0xFF000000);
+            }
+        });
+        final var actual = batched(context -> {
+            context.cube(SHIFTED, 1, 2, 3, Pixel.ALL_SIDES, 0x80FF0000);
+            context.cubeEdges(SHIFTED, 1, 2, 3, Pixel.ALL_EDGES, 0xFF000000);
+        });
+
+        Assertions.assertEquals(expected.vertices(), actual.vertices());
+    }
+
+    @Test
+    void batchIsHandedOverOncePerMatrix() {
+        final var calls = new Calls();
+        final var batch = new VertexBatch();
+
+        batch.begin(calls);
+        paint(batch);
+        Assertions.assertEquals(List.of(6 * 6 + 2 * 6 + 1), calls.runs);
+        batch.end();
+        Assertions.assertEquals(List.of(6 * 6 + 2 * 6 + 1, 11 * 2), calls.runs);
+        Assertions.assertEquals(0, batch.size());
+
+        calls.runs.clear();
+        batch.begin(calls);
+        for (int index = 0; index < 1000; ++index)
+            batch.cube(SHIFTED, index, 0, 0, Pixel.ALL_SIDES, 0x80FFFFFF);
+        Assertions.assertEquals(36000, batch.size());
+        batch.end();
+        Assertions.assertEquals(List.of(36000), calls.runs);
+
+        calls.runs.clear();
+        batch.begin(calls);
+        batch.end();
+        Assertions.assertEquals(List.of(), calls.runs);
+    }
+}
@@ -4,15 +4,28 @@
 package com.midnightbits.scanner.sonar.test;
 
 import com.midnightbits.scanner.rt.core.Id;
+import com.midnightbits.scanner.rt.math.PackedPos;
+import com.midnightbits.scanner.rt.math.V3i;
 import com.midnightbits.scanner.sonar.Echo;
 import com.midnightbits.scanner.sonar.EchoNugget;
 import com.midnightbits.scanner.sonar.EchoState;
+import com.midnightbits.scanner.sonar.NuggetCuller;
+import com.midnightbits.scanner.sonar.PickIndex;
+import com.midnightbits.scanner.sonar.Sonar;
 import com.midnightbits.scanner.sonar.graphics.Colors;
+import com.midnightbits.scanner.sonar.graphics.FrustumFilter;
 import com.midnightbits.scanner.sonar.graphics.Pixel;
 import com.midnightbits.scanner.utils.test.gl.*;
 import org.junit.jupiter.api.Assertions;
+import org.joml.Vector3f;
 import org.junit.jupiter.api.Test;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
 import java.util.Set;
 
 public class EchoNuggetTest {
@@ -235,4 +248,316 @@ public class EchoNuggetTest {
                 new FrameVerifier(3, 0, 0, Pixel.ALL_EDGES & ~(EDGES_X1 | EDGES_Y1 | EDGES_Z1), 0x4C4C4C),
         });
     }
+
+    @Test
+    void edgeTablesFollowEdgeDefinitions() {
+        Assertions.assertEquals(0, Pixel.FULL_EDGES[0]);
+        Assertions.assertEquals(0, Pixel.PARTIAL_EDGES[0]);
+        Assertions.assertEquals(Pixel.ALL_EDGES, Pixel.FULL_EDGES[Pixel.ALL_SIDES]);
+        Assertions.assertEquals(0, Pixel.PARTIAL_EDGES[Pixel.ALL_SIDES]);
+
+        for (int sides = 0; sides <= Pixel.ALL_SIDES; ++sides) {
+            Assertions.assertEquals(0, Pixel.FULL_EDGES[sides] & Pixel.PARTIAL_EDGES[sides]);
+            for (int edgeIndex = 0; edgeIndex < Pixel.edges.length; ++edgeIndex) {
+                final var touches = (Pixel.edges[edgeIndex].sides() & sides) != 0;
+                final var listed = ((Pixel.FULL_EDGES[sides] | Pixel.PARTIAL_EDGES[sides]) & (1 << edgeIndex)) != 0;
+                Assertions.assertEquals(touches, listed);
+            }
+        }
+
+        for (int edgeIndex = 0; edgeIndex < Pixel.edges.length; ++edgeIndex) {
+            final var opposite = Pixel.edges[edgeIndex].opposite();
+            for (int axis = 0; axis < 3; ++axis) {
+                Assertions.assertEquals(-Pixel.OPPOSITE_OFFSETS[edgeIndex * 3 + axis],
+                        Pixel.OPPOSITE_OFFSETS[opposite * 3 + axis]);
+            }
+        }
+    }
+
+    @Test
+    void groupsLargeVeins() {
+        final var echoes = new ArrayList<EchoState>();
+        for (int x = 0; x < 32; ++x) {
+            for (int y = 0; y < 8; ++y) {
+                for (int z = 0; z < 32; ++z) {
+                    final var iron = x % 4 == 0 && y % 4 == 0 && z % 4 == 0;
+                    echoes.add(new EchoState(x, y, z, iron ? iron_ore : coal_ore, 0));
+                }
+            }
+        }
+
+        final var nuggets = EchoNugget.group(echoes);
+        final var coal = nuggets.stream().filter(nugget -> nugget.id.equals(coal_ore.id())).toList();
+        Assertions.assertEquals(1, coal.size());
+        Assertions.assertEquals(echoes.stream().filter(echo -> echo.id().equals(coal_ore.id())).count(),
+                coal.getFirst().echoes().size());
+        Assertions.assertEquals(echoes.size(), nuggets.stream().mapToInt(nugget -> nugget.echoes().size()).sum());
+
+        // iron blocks are four blocks apart, so none of them touch by a face
+        for (final var echo : echoes) {
+            if (echo.id().equals(iron_ore.id()))
+                Assertions.assertEquals(Pixel.ALL_SIDES, echo.sides);
+        }
+    }
+
+    private static Set<Map<V3i, String>> describe(Iterable<EchoNugget> nuggets) {
+        final var result = new HashSet<Map<V3i, String>>();
+        for (final var nugget : nuggets) {
+            final var group = new HashMap<V3i, String>();
+            for (final var echo : nugget.echoes())
+                group.put(echo.position(), echo.id() + "/" + echo.sides + "/" + echo.edges);
+            result.add(group);
+        }
+        return result;
+    }
+
+    @Test
+    void incrementalGroupingMatchesFullGrouping() {
+        final var random = new Random(0x6e7567);
+        final var sonar = new Sonar();
+        final Echo[] kinds = { coal_ore, iron_ore };
+
+        // the same echoes, grouped all over again after every step
+        final var mirror = new HashMap<V3i, EchoState>();
+
+        for (int step = 0; step < 200; ++step) {
+            if (random.nextInt(4) == 0) {
+                final var pos = new V3i(random.nextInt(6), random.nextInt(6), random.nextInt(6));
+                sonar.invalidate(PackedPos.pack(pos));
+                mirror.remove(pos);
+            } else {
+                for (int count = random.nextInt(1, 5); count > 0; --count) {
+                    final var pos = new V3i(random.nextInt(6), random.nextInt(6), random.nextInt(6));
+                    final var echo = kinds[random.nextInt(kinds.length)];
+                    sonar.echoFrom(EchoState.Partial.of(pos, echo));
+                    mirror.put(pos, new EchoState(pos, echo, 0));
+                }
+            }
+            sonar.splitToNuggets();
+            final var expected = EchoNugget.group(mirror.values());
+
+            Assertions.assertEquals(expected.size(), sonar.nuggets().size(), "step " + step);
+            Assertions.assertEquals(describe(expected), describe(sonar.nuggets()), "step " + step);
+        }
+    }
+
+    @Test
+    void groupingDoesNotDependOnWhereTheEchoesAre() {
+        final var random = new Random(0x77686572);
+        final Echo[] kinds = { coal_ore, iron_ore };
+        final var here = new ArrayList<EchoState>();
+        final var there = new ArrayList<EchoState>();
+        final var shift = new V3i(-30_000_000, -2000, -12_345);
+        for (int count = 0; count < 400; ++count) {
+            final var pos = new V3i(random.nextInt(10), random.nextInt(10), random.nextInt(10));
+            final var echo = kinds[random.nextInt(kinds.length)];
+            // repeated positions are kept; the last echo given wins
+            here.add(new EchoState(pos, echo, 0));
+            there.add(new EchoState(pos.add(shift), echo, 0));
+        }
+
+        final var expected = describe(EchoNugget.group(here));
+        final var actual = new HashSet<Map<V3i, String>>();
+        for (final var group : describe(EchoNugget.group(there))) {
+            final var moved = new HashMap<V3i, String>();
+            group.forEach((pos, description) -> moved.put(pos.subtract(shift), description));
+            actual.add(moved);
+        }
+        Assertions.assertEquals(expected, actual);
+    }
+
+    @Test
+    void regroupingKeepsUntouchedNuggets() {
+        final var sonar = new Sonar();
+        sonar.echoFrom(EchoState.Partial.of(0, 0, 0, coal_ore));
+        sonar.echoFrom(EchoState.Partial.of(0, 0, 1, coal_ore));
+        sonar.echoFrom(EchoState.Partial.of(10, 0, 0, iron_ore));
+        sonar.splitToNuggets();
+        Assertions.assertEquals(2, sonar.nuggets().size());
+
+        final var version = sonar.nuggetsVersion();
+        final var nuggets = sonar.nuggets();
+        sonar.splitToNuggets();
+        Assertions.assertEquals(version, sonar.nuggetsVersion());
+        Assertions.assertSame(nuggets, sonar.nuggets());
+
+        // far away, nothing to join with
+        sonar.echoFrom(EchoState.Partial.of(20, 0, 0, gold_ore));
+        sonar.splitToNuggets();
+        Assertions.assertNotEquals(version, sonar.nuggetsVersion());
+        Assertions.assertEquals(3, sonar.nuggets().size());
+        Assertions.assertSame(nuggets.get(0), sonar.nuggets().get(0));
+        Assertions.assertSame(nuggets.get(1), sonar.nuggets().get(1));
+
+        // bridges the coal nugget, but not the iron one, next to it
+        sonar.echoFrom(EchoState.Partial.of(0, 0, 2, coal_ore));
+        sonar.echoFrom(EchoState.Partial.of(9, 0, 0, coal_ore));
+        sonar.splitToNuggets();
+        Assertions.assertEquals(4, sonar.nuggets().size());
+        Assertions.assertTrue(sonar.nuggets().stream().anyMatch(nugget -> nugget == nuggets.get(1)
+                || nugget == nuggets.get(0)));
+    }
+
+    @Test
+    void meshesAreKeptWithTheirNuggets() {
+        final var sonar = new Sonar();
+        sonar.echoFrom(EchoState.Partial.of(0, 0, 0, coal_ore));
+        sonar.echoFrom(EchoState.Partial.of(0, 0, 1, coal_ore));
+        sonar.echoFrom(EchoState.Partial.of(10, 0, 0, iron_ore));
+        sonar.splitToNuggets();
+
+        final var nuggets = sonar.nuggets();
+        final var coal = nuggets.get(0).mesh();
+        final var iron = nuggets.get(1).mesh();
+        Assertions.assertSame(coal, nuggets.get(0).mesh());
+
+        sonar.echoFrom(EchoState.Partial.of(20, 0, 0, gold_ore));
+        sonar.splitToNuggets();
+        Assertions.assertSame(coal, sonar.nuggets().get(0).mesh());
+        Assertions.assertSame(iron, sonar.nuggets().get(1).mesh());
+
+        // the coal nugget grows, so it gets a new mesh
+        sonar.echoFrom(EchoState.Partial.of(0, 0, 2, coal_ore));
+        sonar.splitToNuggets();
+        final var grown = sonar.nuggets().stream().filter(nugget -> nugget.id.equals(coal_ore.id())).findFirst()
+                .orElseThrow();
+        Assertions.assertNotSame(coal, grown.mesh());
+        Assertions.assertEquals(3, grown.echoes().size());
+        Assertions.assertTrue(sonar.nuggets().stream().anyMatch(nugget -> nugget.mesh() == iron));
+    }
+
+    @Test
+    void picksClosestVisibleEcho() {
+        final var echoes = new ArrayList<EchoState>();
+        echoes.add(new EchoState(0, 5, 0, iron_ore, 0));
+        echoes.add(new EchoState(0, 9, 0, coal_ore, 0));
+        echoes.add(new EchoState(0, -5, 0, gold_ore, 0));
+        for (int x = 10; x < 30; ++x) {
+            for (int z = 10; z < 30; ++z)
+                echoes.add(new EchoState(x, 0, z, coal_ore, 0));
+        }
+
+        final var nuggets = EchoNugget.group(echoes);
+        final var index = new PickIndex(nuggets);
+        Assertions.assertEquals(echoes.size(), index.size());
+
+        final var camera = new Vector3f(.5F, .5F, .5F);
+        final var culler = new NuggetCuller(nuggets);
+        final var all = new NuggetCuller.Visible();
+        culler.cull((minX, minY, minZ, maxX, maxY, maxZ) -> true, all);
+
+        final var up = index.pick(all, camera, -90, 0);
+        Assertions.assertNotNull(up);
+        Assertions.assertEquals(new V3i(0, 5, 0), up.echo().position());
+        Assertions.assertEquals(iron_ore.id(), up.nugget().id);
+        Assertions.assertTrue(up.nugget().echoes().contains(up.echo()));
+
+        final var down = index.pick(all, camera, 90, 0);
+        Assertions.assertNotNull(down);
+        Assertions.assertEquals(new V3i(0, -5, 0), down.echo().position());
+
+        // the iron block is out of view, so the line of sight goes through
+        final FrustumFilter noIron = (minX, minY, minZ, maxX, maxY, maxZ) -> minY != 5;
+        final var culled = new NuggetCuller.Visible();
+        culler.cull(noIron, culled);
+        final var past = index.pick(culled, camera, -90, 0);
+        Assertions.assertNotNull(past);
+        Assertions.assertEquals(new V3i(0, 9, 0), past.echo().position());
+        Assertions.assertEquals(coal_ore.id(), past.nugget().id);
+
+        Assertions.assertNull(index.pick(all, camera, 0, 45));
+        Assertions.assertNull(PickIndex.EMPTY.pick(all, camera, -90, 0));
+        Assertions.assertNull(index.pick(new NuggetCuller.Visible(), camera, -90, 0));
+    }
+
+    @Test
+    void pickIndexFollowsNuggets() {
+        final var sonar = new Sonar();
+        Assertions.assertEquals(0, sonar.pickIndex().size());
+
+        sonar.echoFrom(EchoState.Partial.of(0, 0, 0, coal_ore));
+        sonar.echoFrom(EchoState.Partial.of(0, 0, 1, coal_ore));
+        sonar.splitToNuggets();
+        final var index = sonar.pickIndex();
+        Assertions.assertEquals(2, index.size());
+        Assertions.assertSame(index, sonar.pickIndex());
+
+        sonar.echoFrom(EchoState.Partial.of(5, 0, 0, iron_ore));
+        sonar.splitToNuggets();
+        Assertions.assertNotSame(index, sonar.pickIndex());
+        Assertions.assertEquals(3, sonar.pickIndex().size());
+    }
+
+    @Test
+    void cullerAgreesWithTheFrustum() {
+        final var random = new Random(0x63756c6c);
+        final var ores = List.of(coal_ore, iron_ore, gold_ore);
+        final var echoes = new ArrayList<EchoState>();
+        final var taken = new HashSet<V3i>();
+        while (echoes.size() < 600) {
+            final var pos = new V3i(random.nextInt(40), random.nextInt(12), random.nextInt(40));
+            if (taken.add(pos))
+                echoes.add(new EchoState(pos.getX(), pos.getY(), pos.getZ(), ores.get(random.nextInt(3)), 0));
+        }
+
+        final var nuggets = EchoNugget.group(echoes);
+        final var culler = new NuggetCuller(nuggets);
+        final var culled = new NuggetCuller.Visible();
+
+        for (int round = 0; round < 50; ++round) {
+            final var x = random.nextInt(40) - 5;
+            final var y = random.nextInt(12) - 2;
+            final var z = random.nextInt(40) - 5;
+            final var w = random.nextInt(20);
+            final var h = random.nextInt(8);
+            final var d = random.nextInt(20);
+            final FrustumFilter frustum = (minX, minY, minZ, maxX, maxY, maxZ) -> maxX > x && minX < x + w
+                    && maxY > y && minY < y + h && maxZ > z && minZ < z + d;
+
+            culler.cull(frustum, culled);
+            final var expected = new ArrayList<EchoNugget>();
+            for (final var nugget : nuggets) {
+                if (!frustum.contains(nugget)) {
+                    Assertions.assertFalse(culled.isVisible(nugget), "round " + round);
+                    continue;
+                }
+
+                var item = 0;
+                var any = false;
+                for (final var echo : nugget.echoes()) {
+                    final var visible = frustum.contains(echo);
+                    Assertions.assertEquals(visible, culled.isVisible(nugget, item++), "round " + round);
+                    any |= visible;
+                }
+                if (any)
+                    expected.add(nugget);
+            }
+
+            final var actual = new ArrayList<EchoNugget>();
+            for (int index = 0; index < culled.size(); ++index)
+                actual.add(culled.get(index));
+            Assertions.assertEquals(expected, actual, "round " + round);
+        }
+    }
+
+    @Test
+    void cullerFollowsNuggets() {
+        final var sonar = new Sonar();
+        final var culled = new NuggetCuller.Visible();
+        sonar.culler().cull((minX, minY, minZ, maxX, maxY, maxZ) -> true, culled);
+        Assertions.assertEquals(0, culled.size());
+
+        sonar.echoFrom(EchoState.Partial.of(0, 0, 0, coal_ore));
+        sonar.echoFrom(EchoState.Partial.of(5, 0, 0, iron_ore));
+        sonar.splitToNuggets();
+        final var culler = sonar.culler();
+        Assertions.assertSame(culler, sonar.culler());
+        culler.cull((minX, minY, minZ, maxX, maxY, maxZ) -> minX < 3, culled);
+        Assertions.assertEquals(1, culled.size());
+        Assertions.assertEquals(coal_ore.id(), culled.get(0).id);
+
+        sonar.echoFrom(EchoState.Partial.of(0, 0, 1, coal_ore));
+        sonar.splitToNuggets();
+        Assertions.assertNotSame(culler, sonar.culler());
+    }
 }
@@ -4,15 +4,19 @@
 package com.midnightbits.scanner.sonar.test;
 
 import com.midnightbits.scanner.rt.core.Id;
+import com.midnightbits.scanner.rt.math.PackedPos;
 import com.midnightbits.scanner.rt.math.V3i;
 import com.midnightbits.scanner.sonar.Echoes;
 import com.midnightbits.scanner.sonar.Echo;
 import com.midnightbits.scanner.sonar.EchoState;
+import com.midnightbits.scanner.sonar.Sonar;
+import com.midnightbits.scanner.test.mocks.MockBlockInfo;
 import com.midnightbits.scanner.test.mocks.MockClientCore;
 import com.midnightbits.scanner.test.mocks.MockWorld;
 import com.midnightbits.scanner.test.mocks.MockedClock;
 import com.midnightbits.scanner.test.support.Iterables;
 
+import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
 public class EchoesTest {
@@ -86,4 +90,148 @@ public class EchoesTest {
                                 new EchoState(1, 2, 3, iron_ore, 0x123458),
                 }, echoes);
         }
+
+        @Test
+        public void removesExpiredEchoesInPingOrder() {
+                final var echoes = new Echoes(100);
+
+                clock.timeStamp = 1000;
+                echoes.echoFrom(1, 0, 55, stone);
+                clock.timeStamp = 1050;
+                echoes.echoFrom(1, 0, 56, diamond_ore);
+                clock.timeStamp = 1100;
+                echoes.echoFrom(1, 0, 57, gold_ore);
+
+                clock.timeStamp = 1100;
+                Assertions.assertFalse(echoes.removeExpired());
+                Assertions.assertEquals(3, echoes.size());
+
+                clock.timeStamp = 1140;
+                Assertions.assertTrue(echoes.removeExpired());
+                Iterables.assertEquals(new EchoState[] {
+                                new EchoState(1, 0, 56, diamond_ore, 1050),
+                                new EchoState(1, 0, 57, gold_ore, 1100),
+                }, echoes);
+                Assertions.assertNull(echoes.get(new V3i(1, 0, 55)));
+
+                // a renewed echo moves to the back of the queue
+                echoes.echoFrom(1, 0, 56, diamond_ore);
+                clock.timeStamp = 1220;
+                Assertions.assertTrue(echoes.removeExpired());
+                Iterables.assertEquals(new EchoState[] {
+                                new EchoState(1, 0, 56, diamond_ore, 1140),
+                }, echoes);
+        }
+
+        @Test
+        public void keepsPositionIndexInSync() {
+                final var echoes = new Echoes(Echoes.ECHO_LIFETIME);
+
+                clock.timeStamp = 0x123456;
+                echoes.echoFrom(1, 2, 3, coal_ore);
+                echoes.echoFrom(1, 1, 1, coal_ore);
+                echoes.echoFrom(1, 2, 3, iron_ore);
+                Assertions.assertEquals(2, echoes.size());
+                Assertions.assertEquals(iron_ore.id(), echoes.get(new V3i(1, 2, 3)).id());
+
+                Assertions.assertTrue(echoes.remove(echo -> echo.position().equals(new V3i(1, 1, 1))));
+                Assertions.assertFalse(echoes.remove(echo -> echo.position().equals(new V3i(1, 1, 1))));
+                Assertions.assertNull(echoes.get(new V3i(1, 1, 1)));
+
+                final var it = echoes.iterator();
+                it.next();
+                it.remove();
+                Assertions.assertEquals(0, echoes.size());
+                Assertions.assertNull(echoes.get(new V3i(1, 2, 3)));
+        }
+
+        @Test
+        public void revalidatesWithinBudgetRoundRobin() {
+                final var world = new MockWorld();
+                for (int z = 0; z < 10; ++z) {
+                        world.add(0, 0, z, MockBlockInfo.of(coal_ore.id()));
+                }
+                final var core = new MockClientCore(V3i.ZERO, 0, 0, world);
+                final var echoes = new Echoes(Echoes.ECHO_LIFETIME);
+
+                clock.timeStamp = 0x123456;
+                for (int z = 0; z < 10; ++z) {
+                        echoes.echoFrom(0, 0, z, coal_ore);
+                }
+
+                // mined out, replaced by stone
+                world.add(0, 0, 2, MockBlockInfo.ofAir());
+                world.add(0, 0, 7, MockBlockInfo.of(stone.id()));
+
+                Assertions.assertFalse(echoes.revalidate(core, 2));
+                Assertions.assertEquals(2, core.getBlockReads());
+                Assertions.assertTrue(echoes.revalidate(core, 4));
+                Assertions.assertEquals(6, core.getBlockReads());
+                Assertions.assertEquals(9, echoes.size());
+                Assertions.assertNull(echoes.get(new V3i(0, 0, 2)));
+                Assertions.assertNotNull(echoes.get(new V3i(0, 0, 7)));
+
+                Assertions.assertTrue(echoes.revalidate(core, 4));
+                Assertions.assertEquals(10, core.getBlockReads());
+                Assertions.assertNull(echoes.get(new V3i(0, 0, 7)));
+
+                // wraps around to the first echo
+                Assertions.assertFalse(echoes.revalidate(core, 100));
+                Assertions.assertEquals(18, core.getBlockReads());
+                Assertions.assertEquals(8, echoes.size());
+        }
+
+        @Test
+        public void invalidationRegroupsOnlyAffectedNuggets() {
+                final var sonar = new Sonar();
+
+                clock.timeStamp = 0x123456;
+                sonar.echoFrom(EchoState.Partial.of(0, 0, 0, coal_ore));
+                sonar.echoFrom(EchoState.Partial.of(0, 0, 1, coal_ore));
+                sonar.echoFrom(EchoState.Partial.of(0, 0, 2, coal_ore));
+                sonar.echoFrom(EchoState.Partial.of(20, 0, 0, iron_ore));
+                sonar.splitToNuggets();
+                Assertions.assertEquals(2, sonar.nuggets().size());
+                final var iron = sonar.nuggets().stream().filter(nugget -> nugget.id.equals(iron_ore.id()))
+                                .findFirst().orElseThrow();
+
+                Assertions.assertTrue(sonar.invalidate(PackedPos.pack(0, 0, 1)));
+                Assertions.assertFalse(sonar.invalidate(PackedPos.pack(0, 0, 1)));
+                Assertions.assertNull(sonar.echoAt(PackedPos.pack(0, 0, 1)));
+                Assertions.assertEquals(3, sonar.nuggets().size());
+                Assertions.assertTrue(sonar.nuggets().stream().anyMatch(nugget -> nugget == iron));
+
+                Assertions.assertFalse(sonar.invalidateChunk(-1, 0));
+                Assertions.assertTrue(sonar.invalidateChunk(0, 0));
+                Iterables.assertEquals(new EchoState[] {
+                                new EchoState(20, 0, 0, iron_ore, 0x123456).withAllEdges(),
+                }, sonar.echoes());
+                Assertions.assertEquals(1, sonar.nuggets().size());
+                Assertions.assertSame(iron, sonar.nuggets().getFirst());
+        }
+
+        @Test
+        public void chunkBucketsFollowEvictions() {
+                final var echoes = new Echoes(10000);
+
+                clock.timeStamp = 0x123456;
+                echoes.echoFrom(1, 0, 1, coal_ore);
+                echoes.echoFrom(-1, 0, -1, iron_ore);
+                echoes.echoFrom(17, 0, 1, gold_ore);
+
+                clock.timeStamp = 0x123457;
+                echoes.echoFrom(2, 5, 3, coal_ore);
+                echoes.echoFrom(1, 0, 1, diamond_ore);
+
+                clock.timeStamp = 0x123456 + 10001;
+                Assertions.assertTrue(echoes.removeExpired());
+                Assertions.assertFalse(echoes.invalidateChunk(-1, -1));
+                Assertions.assertFalse(echoes.invalidateChunk(1, 0));
+
+                Assertions.assertTrue(echoes.invalidateChunk(0, 0));
+                Assertions.assertFalse(echoes.invalidateChunk(0, 0));
+                Assertions.assertEquals(0, echoes.size());
+                Assertions.assertNull(echoes.get(PackedPos.pack(1, 0, 1)));
+                Assertions.assertNull(echoes.get(PackedPos.pack(2, 5, 3)));
+        }
 }
@@ -0,0 +1,89 @@
+// Copyright (c) 2024 Marcin Zdun
+// This code is licensed under MIT license (see LICENSE for details)
+
+package com.midnightbits.scanner.sonar.test;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import com.midnightbits.scanner.rt.math.V3i;
+import com.midnightbits.scanner.sonar.ScanPlan;
+import com.midnightbits.scanner.utils.ScanVolume;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class ScanPlanTest {
+    private static final class ManualExecutor implements Executor {
+        final List<Runnable> tasks = new ArrayList<>();
+
+        @Override
+        public void execute(Runnable task) {
+            tasks.add(task);
+        }
+
+        void runAll() {
+            tasks.forEach(Runnable::run);
+            tasks.clear();
+        }
+    }
+
+    @Test
+    void shellsAppearAfterPlanning() {
+        final var executor = new ManualExecutor();
+        final var plan = new ScanPlan(ScanVolume.fromCamera(V3i.ZERO, 0F, 0F, 8, 2), executor);
+
+        Assertions.assertNull(plan.poll());
+        Assertions.assertFalse(plan.isExhausted());
+
+        executor.runAll();
+        Assertions.assertTrue(plan.planned().isDone());
+
+        final List<ScanVolume.RangedPositions> expected = new ArrayList<>();
+        ScanVolume.fromCamera(V3i.ZERO, 0F, 0F, 8, 2).forEach(expected::add);
+
+        final List<ScanVolume.RangedPositions> actual = new ArrayList<>();
+        while (!plan.isExhausted())
+            actual.add(plan.poll());
+        Assertions.assertEquals(expected, actual);
+    }
+
+    @Test
+    void cancelledPlanIsExhausted() {
+        final var executor = new ManualExecutor();
+        final var plan = new ScanPlan(ScanVolume.fromCamera(V3i.ZERO, 0F, 0F, 8, 2), executor);
+
+        plan.cancel();
+        executor.runAll();
+        Assertions.assertTrue(plan.isExhausted());
+        Assertions.assertTrue(plan.planned().isCancelled());
+        Assertions.assertNull(plan.poll());
+    }
+
+    @Test
+    void shellQueuedAfterCancelIsDropped() {
+        final var executor = new ManualExecutor();
+        final var source = ScanVolume.fromCamera(V3i.ZERO, 0F, 0F, 8, 2);
+        final ScanPlan[] plan = { null };
+        final var shells = new Iterator<ScanVolume.RangedPositions>() {
+            @Override
+            public boolean hasNext() {
+                return source.hasNext();
+            }
+
+            @Override
+            public ScanVolume.RangedPositions next() {
+                // the ping is cancelled, while the worker is producing a shell
+                plan[0].cancel();
+                return source.next();
+            }
+        };
+        plan[0] = new ScanPlan(shells, executor);
+
+        executor.runAll();
+        Assertions.assertTrue(plan[0].isCancelled());
+        Assertions.assertTrue(plan[0].isExhausted());
+        Assertions.assertNull(plan[0].poll());
+    }
+}
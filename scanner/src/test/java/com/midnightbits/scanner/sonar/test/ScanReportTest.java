@@ -0,0 +1,62 @@
+// Copyright (c) 2024 Marcin Zdun
+// This code is licensed under MIT license (see LICENSE for details)
+
+package com.midnightbits.scanner.sonar.test;
+
+import com.midnightbits.scanner.rt.core.Id;
+import com.midnightbits.scanner.rt.core.Services;
+import com.midnightbits.scanner.rt.math.V3i;
+import com.midnightbits.scanner.sonar.ScanReport;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class ScanReportTest {
+    private static final Id DIAMOND_ORE = Id.ofVanilla("diamond_ore");
+    private static final Id IRON_ORE = Id.ofVanilla("iron_ore");
+
+    @Test
+    void emptyReportHasNoSummary() {
+        final var report = new ScanReport(V3i.ZERO);
+        Assertions.assertTrue(report.isEmpty());
+        Assertions.assertNull(report.summary());
+    }
+
+    @Test
+    void blocksAreCountedAndNearestIsKept() {
+        final var origin = new V3i(10, 64, 10);
+        final var report = new ScanReport(origin);
+        report.add(IRON_ORE, Services.TEXT.literal("iron_ore"), new V3i(10, 64, 0), 10);
+        report.add(DIAMOND_ORE, Services.TEXT.literal("diamond_ore"), new V3i(20, 64, 10), 10);
+        report.add(IRON_ORE, Services.TEXT.literal("iron_ore"), new V3i(10, 60, 10), 4);
+        report.add(IRON_ORE, Services.TEXT.literal("iron_ore"), new V3i(10, 64, 16), 6);
+
+        final var entries = report.entries();
+        Assertions.assertEquals(2, entries.size());
+
+        Assertions.assertEquals(IRON_ORE, entries.get(0).id());
+        Assertions.assertEquals(3, entries.get(0).count());
+        Assertions.assertEquals(4, entries.get(0).distance());
+        Assertions.assertEquals(new V3i(10, 60, 10), entries.get(0).nearest());
+
+        Assertions.assertEquals(DIAMOND_ORE, entries.get(1).id());
+        Assertions.assertEquals(1, entries.get(1).count());
+
+        final var summary = report.summary();
+        Assertions.assertNotNull(summary);
+        // the mocked translations show the keys and their arguments
+        Assertions.assertEquals("> " + ScanReport.ENTRY + "(3, iron_ore, 4, " + ScanReport.BELOW + "); "
+                + ScanReport.ENTRY + "(1, diamond_ore, 10, " + ScanReport.directionKey("e") + ")",
+                summary.getString());
+    }
+
+    @Test
+    void directions() {
+        Assertions.assertEquals(ScanReport.directionKey("n"), ScanReport.direction(new V3i(0, 0, -5)));
+        Assertions.assertEquals(ScanReport.directionKey("ne"), ScanReport.direction(new V3i(4, 1, -4)));
+        Assertions.assertEquals(ScanReport.directionKey("s"), ScanReport.direction(new V3i(1, -2, 7)));
+        Assertions.assertEquals(ScanReport.directionKey("w"), ScanReport.direction(new V3i(-3, 0, 0)));
+        Assertions.assertEquals(ScanReport.ABOVE, ScanReport.direction(new V3i(1, 12, 0)));
+        Assertions.assertEquals(ScanReport.HERE, ScanReport.direction(V3i.ZERO));
+        Assertions.assertEquals("report.resource-scanner.direction/below", ScanReport.direction(new V3i(0, -3, 1)));
+    }
+}
@@ -13,6 +13,7 @@ import com.midnightbits.scanner.sonar.graphics.*;
 import com.midnightbits.scanner.test.mocks.platform.MockAnimatorHost;
 import com.midnightbits.scanner.test.mocks.platform.MockPlatform;
 import com.midnightbits.scanner.utils.Clock;
+import com.midnightbits.scanner.utils.ScanVolume;
 import com.midnightbits.scanner.utils.Settings;
 import org.jetbrains.annotations.Nullable;
 import org.junit.jupiter.api.Assertions;
@@ -60,7 +61,7 @@ public class SonarTest {
 		}
 
 		Setup(Settings settings) {
-			this.sonar = new Sonar(settings);
+			this.sonar = new Sonar(settings.withVerbose(true));
 			((MockPlatform) Services.PLATFORM).setHostBackend((shimmers) -> {
 			});
 			this.animation = new SonarAnimation(sonar);
@@ -256,6 +257,9 @@ public class SonarTest {
 
 		((MockAnimatorHost) Services.PLATFORM.getAnimatorHost()).runAll(clock);
 
+		// the first unreadable batch ends the ping
+		Assertions.assertEquals(1, core.getBatchReads());
+
 		Iterables.assertEquals(new EchoState[] {
 		}, setup.sonar.echoes());
 
@@ -331,4 +335,34 @@ public class SonarTest {
 				"> 31m coal_ore", "> 32m iron_ore",
 		}, core.getPlayerMessages());
 	}
+
+	@Test
+	void pingReadsWholeShells() {
+		final var core = new MockClientCore(V3i.ZERO, -90, 0, MockWorld.TEST_WORLD);
+
+		clock.timeStamp = 0x123456;
+		final var setup = new Setup(narrowSonar());
+		setup.sendPingBlocking(core, clock);
+
+		var shells = 0;
+		for (final var ignored : ScanVolume.fromCamera(V3i.ZERO, -90, 0, TEST_BLOCK_DISTANCE, 0))
+			++shells;
+
+		Assertions.assertEquals(0, core.getBlockReads());
+		Assertions.assertTrue(core.getBatchReads() <= shells);
+	}
+
+	@Test
+	void pingSkipsUninterestingSections() {
+		final var core = new MockClientCore(V3i.ZERO, -90, 0, MockWorld.TEST_WORLD);
+
+		clock.timeStamp = 0x123456;
+		final var setup = new Setup(new Settings(TEST_BLOCK_DISTANCE, TEST_BLOCK_RADIUS, TEST_ECHO_LIFETIME,
+				Set.of(Id.of("resource_scanner:never_placed"))));
+		setup.sendPingBlocking(core, clock);
+
+		Assertions.assertTrue(core.getSectionChecks() > 0);
+		Assertions.assertEquals(0, core.getBatchedBlocks());
+		Iterables.assertEquals(new EchoState[] {}, setup.sonar.echoes());
+	}
 }
@@ -5,12 +5,14 @@ package com.midnightbits.scanner.test.mocks;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.midnightbits.scanner.rt.core.BlockInfo;
 import com.midnightbits.scanner.rt.core.ClientCore;
+import com.midnightbits.scanner.rt.core.Id;
 import com.midnightbits.scanner.rt.math.V3i;
 import com.midnightbits.scanner.rt.text.Text;
 
@@ -21,6 +23,10 @@ public final class MockClientCore implements ClientCore {
     final float cameraYaw;
     final MockWorld world;
     final List<String> messages = new ArrayList<>();
+    int blockReads = 0;
+    int batchReads = 0;
+    int batchedBlocks = 0;
+    int sectionChecks = 0;
 
     public MockClientCore(V3i playerPos, float cameraPitch, float cameraYaw, MockWorld world) {
         this.playerPos = playerPos;
@@ -31,9 +37,27 @@ public final class MockClientCore implements ClientCore {
 
     @Override
     public BlockInfo getBlockInfo(V3i pos) {
+        ++blockReads;
         return world != null ? world.getOrAir(pos) : null;
     }
 
+    @Override
+    public boolean getBlockInfos(long[] positions, int count, BlockSink sink) {
+        ++batchReads;
+        if (world == null)
+            return false;
+        batchedBlocks += count;
+        for (int index = 0; index < count; ++index)
+            sink.accept(index, world.getOrAir(positions[index]));
+        return true;
+    }
+
+    @Override
+    public boolean sectionMayContain(int sectionX, int sectionY, int sectionZ, Set<Id> blocks) {
+        ++sectionChecks;
+        return world == null || world.sectionContains(sectionX, sectionY, sectionZ, blocks);
+    }
+
     @Override
     public V3i getPlayerPos() {
         return playerPos;
@@ -62,4 +86,20 @@ public final class MockClientCore implements ClientCore {
     public void resetPlayerMessages() {
         messages.clear();
     }
+
+    public int getBlockReads() {
+        return blockReads;
+    }
+
+    public int getBatchReads() {
+        return batchReads;
+    }
+
+    public int getBatchedBlocks() {
+        return batchedBlocks;
+    }
+
+    public int getSectionChecks() {
+        return sectionChecks;
+    }
 }
@@ -5,9 +5,12 @@ package com.midnightbits.scanner.test.mocks;
 
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.util.Set;
 import java.util.TreeMap;
 
 import com.midnightbits.scanner.rt.core.BlockInfo;
+import com.midnightbits.scanner.rt.core.Id;
+import com.midnightbits.scanner.rt.math.PackedPos;
 import com.midnightbits.scanner.rt.math.V3i;
 
 public final class MockWorld {
@@ -103,10 +106,14 @@ public final class MockWorld {
     }
 
     public BlockInfo get(V3i pos) {
-        int i = pos.getX();
-        int j = pos.getY();
-        int k = pos.getZ();
+        return get(pos.getX(), pos.getY(), pos.getZ());
+    }
+
+    public BlockInfo get(long packed) {
+        return get(PackedPos.x(packed), PackedPos.y(packed), PackedPos.z(packed));
+    }
 
+    public BlockInfo get(int i, int j, int k) {
         final var layer = layers.getOrDefault(j, null);
         if (layer == null)
             return null;
@@ -118,8 +125,28 @@ public final class MockWorld {
         return line.getOrDefault(k, null);
     }
 
+    public boolean sectionContains(int sectionX, int sectionY, int sectionZ, Set<Id> blocks) {
+        final var x = sectionX << 4;
+        final var y = sectionY << 4;
+        final var z = sectionZ << 4;
+        for (final var layer : layers.subMap(y, y + 16).values()) {
+            for (final var line : layer.subMap(x, x + 16).values()) {
+                for (final var info : line.subMap(z, z + 16).values()) {
+                    if (blocks.contains(info.getId()))
+                        return true;
+                }
+            }
+        }
+        return false;
+    }
+
     public BlockInfo getOrAir(V3i pos) {
         final var block = get(pos);
         return block == null ? AIR : block;
     }
+
+    public BlockInfo getOrAir(long packed) {
+        final var block = get(packed);
+        return block == null ? AIR : block;
+    }
 }
@@ -9,6 +9,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.Executor;
 
 import com.midnightbits.scanner.platform.KeyBinder;
 import com.midnightbits.scanner.platform.PlatformInterface;
@@ -99,6 +100,11 @@ public final class MockPlatform implements PlatformInterface, KeyBinder {
     public void playSample(Sample id) {
     }
 
+    @Override
+    public Executor getBackgroundExecutor() {
+        return Runnable::run;
+    }
+
     public interface ScanDrawer {
         void drawScan(Iterable<EchoState> echoes, List<Shimmers> shimmers);
     }
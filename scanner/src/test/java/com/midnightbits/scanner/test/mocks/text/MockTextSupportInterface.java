@@ -16,6 +16,15 @@ public final class MockTextSupportInterface implements TextSupportInterface {
         return new MockText(new LiteralSegment(string));
     }
 
+    /**
+     * There are no translations in tests; the text shows the key, followed
+     * by the arguments in parentheses, if there are any.
+     */
+    @Override
+    public MutableText translatable(String key, Object... args) {
+        return new MockText(new TranslatableSegment(key, args));
+    }
+
     private interface Segment {
         String getString();
     }
@@ -36,6 +45,23 @@ public final class MockTextSupportInterface implements TextSupportInterface {
         }
     }
 
+    private record TranslatableSegment(String key, Object[] args) implements Segment {
+
+        @Override
+        public String getString() {
+            if (args.length == 0)
+                return key;
+
+            final var builder = new StringBuilder(key).append('(');
+            for (int index = 0; index < args.length; ++index) {
+                if (index > 0)
+                    builder.append(", ");
+                builder.append(args[index] instanceof Text text ? text.getString() : String.valueOf(args[index]));
+            }
+            return builder.append(')').toString();
+        }
+    }
+
     private static class MockText implements MutableText {
         private final List<Segment> segments = new ArrayList<>();
 
@@ -0,0 +1,89 @@
+// Copyright (c) 2024 Marcin Zdun
+// This code is licensed under MIT license (see LICENSE for details)
+
+package com.midnightbits.scanner.utils.test;
+
+import com.midnightbits.scanner.rt.math.V3i;
+import com.midnightbits.scanner.utils.ConeTemplateCache;
+import com.midnightbits.scanner.utils.ScanVolume;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class ConeTemplateCacheTest {
+    @Test
+    void templateMatchesFreshCone() {
+        final var origin = new V3i(-60, -60, -51);
+        final var cache = new ConeTemplateCache();
+
+        final List<ScanVolume.RangedPositions> expected = new ArrayList<>();
+        ScanVolume.fromCamera(origin, -75f, 180f, 16, 4).forEach(expected::add);
+
+        final List<ScanVolume.RangedPositions> actual = new ArrayList<>();
+        cache.get(16, 4, -75f, 180f).translated(origin).forEachRemaining(actual::add);
+
+        Assertions.assertEquals(expected, actual);
+    }
+
+    @Test
+    void cursorsShareRasterizedShells() {
+        final var cache = new ConeTemplateCache();
+        final var template = cache.get(12, 3, 20f, -45f);
+        final var first = template.translated(V3i.ZERO);
+        first.next();
+        first.next();
+        Assertions.assertFalse(template.isComplete());
+
+        final List<ScanVolume.RangedPositions> expected = new ArrayList<>();
+        ScanVolume.fromCamera(V3i.ZERO, 20f, -45f, 12, 3).forEach(expected::add);
+
+        final List<ScanVolume.RangedPositions> actual = new ArrayList<>();
+        template.translated(V3i.ZERO).forEachRemaining(actual::add);
+        Assertions.assertEquals(expected, actual);
+        Assertions.assertTrue(template.isComplete());
+
+        final List<ScanVolume.RangedPositions> rest = new ArrayList<>();
+        first.forEachRemaining(rest::add);
+        Assertions.assertEquals(expected.subList(2, expected.size()), rest);
+    }
+
+    @Test
+    void directionIsQuantized() {
+        Assertions.assertEquals(ConeTemplateCache.Key.of(32, 4, -75.2f, 179.9f),
+                ConeTemplateCache.Key.of(32, 4, -74.9f, -180.1f));
+        Assertions.assertEquals(ConeTemplateCache.Key.of(32, 4, 0f, 90f),
+                ConeTemplateCache.Key.of(32, 4, 0f, 450f));
+        Assertions.assertNotEquals(ConeTemplateCache.Key.of(32, 4, 0f, 90f),
+                ConeTemplateCache.Key.of(32, 5, 0f, 90f));
+    }
+
+    @Test
+    void sameKeyReusesTemplate() {
+        final var cache = new ConeTemplateCache();
+        final var first = cache.get(8, 2, 10f, 20f);
+        final var second = cache.get(8, 2, 10.3f, 19.8f);
+        Assertions.assertSame(first, second);
+        Assertions.assertEquals(1, cache.size());
+    }
+
+    @Test
+    void leastRecentlyUsedIsEvicted() {
+        final var cache = new ConeTemplateCache();
+        for (int yaw = 0; yaw < ConeTemplateCache.CAPACITY; ++yaw) {
+            cache.get(4, 0, 0f, yaw);
+        }
+        Assertions.assertEquals(ConeTemplateCache.CAPACITY, cache.size());
+
+        cache.get(4, 0, 0f, 0f);
+        cache.get(4, 0, 0f, ConeTemplateCache.CAPACITY);
+
+        Assertions.assertEquals(ConeTemplateCache.CAPACITY, cache.size());
+        Assertions.assertTrue(cache.contains(ConeTemplateCache.Key.of(4, 0, 0f, 0f)));
+        Assertions.assertFalse(cache.contains(ConeTemplateCache.Key.of(4, 0, 0f, 1f)));
+
+        cache.clear();
+        Assertions.assertEquals(0, cache.size());
+    }
+}
@@ -0,0 +1,61 @@
+// Copyright (c) 2024 Marcin Zdun
+// This code is licensed under MIT license (see LICENSE for details)
+
+package com.midnightbits.scanner.utils.test;
+
+import com.midnightbits.scanner.rt.math.PackedPos;
+import com.midnightbits.scanner.utils.LongHashSet;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class LongHashSetTest {
+    @Test
+    void addsOnlyOnce() {
+        final var set = new LongHashSet();
+        Assertions.assertTrue(set.isEmpty());
+        Assertions.assertTrue(set.add(PackedPos.pack(1, 2, 3)));
+        Assertions.assertFalse(set.add(PackedPos.pack(1, 2, 3)));
+        Assertions.assertTrue(set.add(0));
+        Assertions.assertFalse(set.add(0));
+        Assertions.assertEquals(2, set.size());
+        Assertions.assertTrue(set.contains(0));
+        Assertions.assertFalse(set.contains(PackedPos.pack(3, 2, 1)));
+    }
+
+    @Test
+    void survivesGrowing() {
+        final var set = new LongHashSet(4);
+        for (int x = -20; x < 20; ++x) {
+            for (int y = -20; y < 20; ++y) {
+                for (int z = -5; z < 5; ++z) {
+                    Assertions.assertTrue(set.add(PackedPos.pack(x, y, z)));
+                }
+            }
+        }
+        Assertions.assertEquals(40 * 40 * 10, set.size());
+        for (int x = -20; x < 20; ++x) {
+            for (int y = -20; y < 20; ++y) {
+                Assertions.assertTrue(set.contains(PackedPos.pack(x, y, 0)));
+                Assertions.assertFalse(set.contains(PackedPos.pack(x, y, 5)));
+            }
+        }
+
+        set.clear();
+        Assertions.assertEquals(0, set.size());
+        Assertions.assertFalse(set.contains(PackedPos.pack(0, 0, 0)));
+    }
+
+    @Test
+    void packedPositionsRoundTrip() {
+        final int[][] points = {
+                { 0, 0, 0 }, { -1, -1, -1 }, { 29999999, 2047, -29999999 }, { -30000000, -2048, 30000000 },
+        };
+        for (final var pt : points) {
+            final var packed = PackedPos.pack(pt[0], pt[1], pt[2]);
+            Assertions.assertEquals(pt[0], PackedPos.x(packed));
+            Assertions.assertEquals(pt[1], PackedPos.y(packed));
+            Assertions.assertEquals(pt[2], PackedPos.z(packed));
+        }
+        Assertions.assertEquals(PackedPos.pack(4, -5, 6), PackedPos.add(PackedPos.pack(5, -7, 9), -1, 2, -3));
+    }
+}
@@ -0,0 +1,53 @@
+// Copyright (c) 2024 Marcin Zdun
+// This code is licensed under MIT license (see LICENSE for details)
+
+package com.midnightbits.scanner.utils.test;
+
+import com.midnightbits.scanner.rt.math.PackedPos;
+import com.midnightbits.scanner.utils.LongIntHashMap;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class LongIntHashMapTest {
+    @Test
+    void storesValues() {
+        final var map = new LongIntHashMap();
+        Assertions.assertTrue(map.isEmpty());
+        map.put(PackedPos.pack(1, 2, 3), 7);
+        map.put(PackedPos.pack(1, 2, 3), 8);
+        map.put(0, 0);
+        Assertions.assertEquals(2, map.size());
+        Assertions.assertEquals(8, map.get(PackedPos.pack(1, 2, 3), -1));
+        Assertions.assertEquals(0, map.get(0, -1));
+        Assertions.assertEquals(-1, map.get(PackedPos.pack(3, 2, 1), -1));
+        Assertions.assertTrue(map.containsKey(0));
+        Assertions.assertFalse(map.containsKey(PackedPos.pack(3, 2, 1)));
+    }
+
+    @Test
+    void survivesGrowing() {
+        final var map = new LongIntHashMap(4);
+        var value = 0;
+        for (int x = -20; x < 20; ++x) {
+            for (int y = -20; y < 20; ++y) {
+                for (int z = -5; z < 5; ++z) {
+                    map.put(PackedPos.pack(x, y, z), value++);
+                }
+            }
+        }
+        Assertions.assertEquals(40 * 40 * 10, map.size());
+
+        value = 0;
+        for (int x = -20; x < 20; ++x) {
+            for (int y = -20; y < 20; ++y) {
+                for (int z = -5; z < 5; ++z) {
+                    Assertions.assertEquals(value++, map.get(PackedPos.pack(x, y, z), -1));
+                }
+            }
+        }
+
+        map.clear();
+        Assertions.assertEquals(0, map.size());
+        Assertions.assertEquals(-1, map.get(PackedPos.pack(0, 0, 0), -1));
+    }
+}
@@ -0,0 +1,59 @@
+// Copyright (c) 2024 Marcin Zdun
+// This code is licensed under MIT license (see LICENSE for details)
+
+package com.midnightbits.scanner.utils.test;
+
+import java.util.HashMap;
+import java.util.Random;
+
+import com.midnightbits.scanner.rt.math.PackedPos;
+import com.midnightbits.scanner.utils.LongObjectHashMap;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class LongObjectHashMapTest {
+    @Test
+    void replacesValues() {
+        final var map = new LongObjectHashMap<String>();
+        Assertions.assertTrue(map.isEmpty());
+        Assertions.assertNull(map.put(PackedPos.pack(1, 2, 3), "a"));
+        Assertions.assertEquals("a", map.put(PackedPos.pack(1, 2, 3), "b"));
+        Assertions.assertNull(map.put(0, "zero"));
+        Assertions.assertEquals("zero", map.put(0, "origin"));
+        Assertions.assertEquals(2, map.size());
+        Assertions.assertEquals("b", map.get(PackedPos.pack(1, 2, 3)));
+        Assertions.assertEquals("origin", map.get(0));
+        Assertions.assertNull(map.get(PackedPos.pack(3, 2, 1)));
+
+        Assertions.assertEquals("origin", map.remove(0));
+        Assertions.assertNull(map.remove(0));
+        Assertions.assertFalse(map.containsKey(0));
+        Assertions.assertEquals(1, map.size());
+    }
+
+    @Test
+    void matchesHashMapUnderChurn() {
+        final var random = new Random(0x5eed);
+        final var map = new LongObjectHashMap<Integer>(4);
+        final var expected = new HashMap<Long, Integer>();
+
+        for (int step = 0; step < 20000; ++step) {
+            final var key = PackedPos.pack(random.nextInt(-16, 16), random.nextInt(-8, 8), random.nextInt(-16, 16));
+            if (random.nextInt(3) == 0) {
+                Assertions.assertEquals(expected.remove(key), map.remove(key));
+            } else {
+                Assertions.assertEquals(expected.put(key, step), map.put(key, step));
+            }
+        }
+
+        Assertions.assertEquals(expected.size(), map.size());
+        expected.forEach((key, value) -> Assertions.assertEquals(value, map.get(key)));
+        final var seen = new HashMap<Long, Integer>();
+        map.forEach(seen::put);
+        Assertions.assertEquals(expected, seen);
+
+        map.clear();
+        Assertions.assertTrue(map.isEmpty());
+        Assertions.assertFalse(map.containsKey(PackedPos.pack(0, 0, 1)));
+    }
+}
@@ -138,6 +138,24 @@ public class OptionsTest {
         Assertions.assertEquals(1, counter.get());
     }
 
+    @Test
+    void verboseIsStored() {
+        final var opts = Options.getInstance();
+        opts.setDirectory(configDir);
+        opts.setAll(new Settings(16, 2, 1000, Set.of(), false).withVerbose(true), false);
+        Options.resetInstance();
+
+        final List<Settings> settings = new ArrayList<>();
+        final var reloaded = Options.getInstance();
+        reloaded.addEventListener((e) -> settings.add(e.settings()));
+        reloaded.setDirectory(configDir);
+        reloaded.load();
+        Options.resetInstance();
+
+        Assertions.assertEquals(1, settings.size());
+        Assertions.assertTrue(settings.getFirst().verbose());
+    }
+
     static Stream<Arguments> provideBrokenJsons() {
         return Stream.of(
                 Arguments.of(""),
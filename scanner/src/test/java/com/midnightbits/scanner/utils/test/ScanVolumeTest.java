@@ -0,0 +1,76 @@
+// Copyright (c) 2024 Marcin Zdun
+// This code is licensed under MIT license (see LICENSE for details)
+
+package com.midnightbits.scanner.utils.test;
+
+import java.util.HashSet;
+
+import com.midnightbits.scanner.rt.math.V3i;
+import com.midnightbits.scanner.utils.ScanVolume;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class ScanVolumeTest {
+    @Test
+    void narrowVolumeFollowsTheAxis() {
+        var expectedDistance = 0;
+        for (final var shell : ScanVolume.fromCamera(V3i.ZERO, 0F, 0F, 4, 0)) {
+            Assertions.assertEquals(expectedDistance * ScanVolume.PRECISION, shell.distance());
+            Assertions.assertEquals(1, shell.items().size());
+            expectedDistance++;
+        }
+        Assertions.assertEquals(5, expectedDistance);
+    }
+
+    @Test
+    void shellsMatchTheVolume() {
+        final var origin = new V3i(100, -30, 7);
+        final var volume = ScanVolume.fromCamera(V3i.ZERO, -30F, 120F, 16, 5);
+        final var seen = new HashSet<V3i>();
+
+        var prevDistance = -1;
+        for (final var shell : ScanVolume.fromCamera(origin, -30F, 120F, 16, 5)) {
+            Assertions.assertTrue(prevDistance < shell.distance());
+            prevDistance = shell.distance();
+
+            for (final var pos : shell.items()) {
+                final var local = pos.subtract(origin);
+                Assertions.assertTrue(seen.add(local), () -> local + " seen twice");
+                Assertions.assertTrue(volume.contains(local.getX(), local.getY(), local.getZ()));
+                final long distance2 = (long) local.getX() * local.getX() + (long) local.getY() * local.getY()
+                        + (long) local.getZ() * local.getZ();
+                Assertions.assertEquals(shell.distance(), ScanVolume.distanceKey(distance2));
+            }
+        }
+
+        var inside = 0;
+        for (int x = -30; x <= 30; ++x) {
+            for (int y = -30; y <= 30; ++y) {
+                for (int z = -30; z <= 30; ++z) {
+                    if (volume.contains(x, y, z))
+                        ++inside;
+                }
+            }
+        }
+        Assertions.assertEquals(inside, seen.size());
+    }
+
+    @Test
+    void everyBlockIsReachable() {
+        final var volume = ScanVolume.fromCamera(V3i.ZERO, 15F, -60F, 24, 6);
+        for (final var shell : ScanVolume.fromCamera(V3i.ZERO, 15F, -60F, 24, 6)) {
+            for (final var pos : shell.items()) {
+                if (pos.equals(V3i.ZERO))
+                    continue;
+
+                final var x = pos.getX();
+                final var y = pos.getY();
+                final var z = pos.getZ();
+                final var reachable = (x != 0 && volume.contains(x - Integer.signum(x), y, z))
+                        || (y != 0 && volume.contains(x, y - Integer.signum(y), z))
+                        || (z != 0 && volume.contains(x, y, z - Integer.signum(z)));
+                Assertions.assertTrue(reachable, () -> pos + " is cut off from the operator");
+            }
+        }
+    }
+}
@@ -0,0 +1,99 @@
+// Copyright (c) 2024 Marcin Zdun
+// This code is licensed under MIT license (see LICENSE for details)
+
+package com.midnightbits.scanner.utils.test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.midnightbits.scanner.rt.math.V3i;
+import com.midnightbits.scanner.utils.VoxelRay;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class VoxelRayTest {
+    private static List<V3i> trace(V3i from, V3i to) {
+        final var result = new ArrayList<V3i>();
+        VoxelRay.trace(from, to, (x, y, z) -> {
+            result.add(new V3i(x, y, z));
+            return true;
+        });
+        return result;
+    }
+
+    @Test
+    void singleBlock() {
+        Assertions.assertEquals(List.of(new V3i(3, 4, 5)), trace(new V3i(3, 4, 5), new V3i(3, 4, 5)));
+    }
+
+    @Test
+    void alongAxis() {
+        Assertions.assertEquals(List.of(
+                new V3i(0, 0, 0),
+                new V3i(0, 0, -1),
+                new V3i(0, 0, -2),
+                new V3i(0, 0, -3)), trace(V3i.ZERO, new V3i(0, 0, -3)));
+    }
+
+    @Test
+    void diagonalVisitsBothNeighbours() {
+        Assertions.assertEquals(List.of(
+                new V3i(0, 0, 0),
+                new V3i(1, 0, 0),
+                new V3i(0, 1, 0),
+                new V3i(1, 1, 0),
+                new V3i(2, 1, 0),
+                new V3i(1, 2, 0),
+                new V3i(2, 2, 0)), trace(V3i.ZERO, new V3i(2, 2, 0)));
+    }
+
+    @Test
+    void corner() {
+        Assertions.assertEquals(List.of(
+                new V3i(0, 0, 0),
+                new V3i(1, 0, 0),
+                new V3i(0, 1, 0),
+                new V3i(0, 0, 1),
+                new V3i(1, 1, 0),
+                new V3i(1, 0, 1),
+                new V3i(0, 1, 1),
+                new V3i(1, 1, 1)), trace(V3i.ZERO, new V3i(1, 1, 1)));
+    }
+
+    @Test
+    void noGapsOnSkewedRays() {
+        final var targets = new V3i[] {
+                new V3i(17, -5, 3),
+                new V3i(-64, 12, -33),
+                new V3i(7, 64, -1),
+                new V3i(-2, -3, 50),
+        };
+        final var from = new V3i(1, 2, 3);
+        for (final var target : targets) {
+            final var to = from.add(target);
+            final var blocks = trace(from, to);
+            Assertions.assertEquals(from, blocks.get(0));
+            Assertions.assertEquals(to, blocks.get(blocks.size() - 1));
+
+            for (int index = 1; index < blocks.size(); ++index) {
+                final var next = blocks.get(index);
+                final var touching = blocks.subList(0, index).stream().anyMatch(prev -> {
+                    final var step = next.subtract(prev);
+                    return Math.abs(step.getX()) + Math.abs(step.getY()) + Math.abs(step.getZ()) == 1;
+                });
+                Assertions.assertTrue(touching, () -> "gap before " + next);
+            }
+        }
+    }
+
+    @Test
+    void visitorStopsTraversal() {
+        final var seen = new ArrayList<V3i>();
+        final var visited = VoxelRay.trace(V3i.ZERO, new V3i(10, 0, 0), (x, y, z) -> {
+            seen.add(new V3i(x, y, z));
+            return x < 3;
+        });
+        Assertions.assertEquals(4, visited);
+        Assertions.assertEquals(new V3i(3, 0, 0), seen.get(seen.size() - 1));
+    }
+}
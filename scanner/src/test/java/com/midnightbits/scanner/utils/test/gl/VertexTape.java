@@ -4,13 +4,17 @@
 package com.midnightbits.scanner.utils.test.gl;
 
 import com.midnightbits.scanner.sonar.EchoNugget;
+import com.midnightbits.scanner.sonar.graphics.GlProgramConsumer;
 import com.midnightbits.scanner.sonar.graphics.MatrixStack;
 import org.joml.Matrix4f;
 import org.joml.Vector3f;
 import org.junit.jupiter.api.Assertions;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.function.Consumer;
 
 public class VertexTape {
     private final List<TestVertex> items;
@@ -45,6 +49,10 @@ public class VertexTape {
         return items.size();
     }
 
+    public List<TestVertex> vertices() {
+        return Collections.unmodifiableList(items);
+    }
+
     public void assertPlayback(VertexVerifier[] template) {
         for (final var verifier : template) {
             final int pos = pos();
@@ -60,12 +68,22 @@ public class VertexTape {
         Assertions.assertFalse(stillHas(1), "at: " + pos);
     }
 
+    /**
+     * Draws the nuggets echo by echo, with {@link EchoNugget#draw} and
+     * {@link EchoNugget#sketch}, the furthest nugget first, followed by their
+     * edges in the same order. Markers separate the nuggets.
+     */
     public static VertexTape record(List<EchoNugget> nuggets) {
         final var context = new VerticesSink();
         final var matrices = new MatrixStack(new Matrix4f());
         final var camera = new Vector3f(-3, 0, 0);
 
-        final var sorted = EchoNugget.sortForCamera(nuggets, camera);
+        final var furthest = new IdentityHashMap<EchoNugget, Float>(nuggets.size());
+        for (final var nugget : nuggets)
+            furthest.put(nugget, furthestDistanceSquared(nugget, camera));
+
+        final var sorted = new ArrayList<>(nuggets);
+        sorted.sort((lhs, rhs) -> Float.compare(furthest.get(rhs), furthest.get(lhs)));
 
         for (final var nugget : sorted) {
             nugget.draw(context, matrices, camera);
@@ -79,4 +97,19 @@ public class VertexTape {
 
         return context.items();
     }
+
+    private static float furthestDistanceSquared(EchoNugget nugget, Vector3f camera) {
+        var result = 0F;
+        for (final var echo : nugget.echoes()) {
+            final var pos = echo.position();
+            result = Math.max(result, camera.distanceSquared(pos.getX() + .5F, pos.getY() + .5F, pos.getZ() + .5F));
+        }
+        return result;
+    }
+
+    public static VertexTape capture(Consumer<GlProgramConsumer> painter) {
+        final var context = new VerticesSink();
+        painter.accept(context);
+        return context.items();
+    }
 }